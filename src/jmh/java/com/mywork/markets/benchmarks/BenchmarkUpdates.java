@@ -0,0 +1,88 @@
+package com.mywork.markets.benchmarks;
+
+import java.util.Random;
+import java.util.function.Function;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.Instruments;
+import com.mywork.markets.Listings;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.Side;
+import com.mywork.markets.SymbolRegistry;
+import com.mywork.markets.providers.Provider;
+import com.mywork.markets.providers.SubscriptionException;
+
+/**
+ * Pre-created updates for the benchmarks so that creating 
+ * updates is not part of what is measured.
+ */
+final class BenchmarkUpdates {
+
+	private BenchmarkUpdates() {}
+	
+	/**
+	 * creates updates spread over the first <code>keys</code> instrument/market pairs
+	 * @param keys - number of distinct instrument/market pairs, capped at Instruments.SIZE * Markets.SIZE
+	 * @param count - number of updates to create
+	 */
+	static MarketUpdate[] create(int keys, int count) {
+		
+		int maxKeys = Math.min(keys, Instruments.SIZE * Markets.SIZE);
+		Random random = new Random(42);
+		MarketUpdate[] updates = new MarketUpdate[count];
+		for(int i = 0; i < count; i++) {
+			int key = i % maxKeys;
+			updates[i] = new DefaultMarketUpdate().set(
+								Markets.getMarketById(key % Markets.SIZE),
+								Instruments.getInstrumentById(key / Markets.SIZE),
+								Side.getSideById(i % Side.SIZE),
+								1.0 + random.nextDouble(), random.nextDouble() * 1_00_000,
+								1.0 + random.nextDouble(), random.nextDouble() * 1_00_000);
+		}
+		return updates;
+	}
+	
+	/**
+	 * creates updates spread at random over <code>keys</code> instrument/market pairs - runtime instruments,
+	 * registered here, on the enum markets - so that state per pair is not read in the order it is laid out
+	 * @param keys - number of distinct instrument/market pairs
+	 * @param count - number of updates to create
+	 */
+	static MarketUpdate[] createListings(int keys, int count) {
+		
+		int[] instrumentIds = new int[(keys + Markets.SIZE - 1) / Markets.SIZE];
+		for(int i = 0; i < instrumentIds.length; i++) {
+			instrumentIds[i] = SymbolRegistry.INSTRUMENTS.intern("BENCHMARK." + i);
+			//keys are given out on subscribe
+			for(int m = 0; m < Markets.SIZE; m++) {
+				Listings.key(instrumentIds[i], m);
+			}
+		}
+		Random random = new Random(42);
+		MarketUpdate[] updates = new MarketUpdate[count];
+		for(int i = 0; i < count; i++) {
+			int key = random.nextInt(keys);
+			updates[i] = new DefaultMarketUpdate().set(
+								key % Markets.SIZE,
+								instrumentIds[key / Markets.SIZE],
+								Side.getSideById(i % Side.SIZE),
+								1.0 + random.nextDouble(), random.nextDouble() * 1_00_000,
+								1.0 + random.nextDouble(), random.nextDouble() * 1_00_000);
+		}
+		return updates;
+	}
+	
+	/**
+	 * subscribe the given function to the first <code>keys</code> instrument/market pairs
+	 */
+	static void subscribe(Provider provider, int keys,
+			Function<? extends MarketUpdate, ? extends MarketUpdate> function) throws SubscriptionException {
+		
+		int maxKeys = Math.min(keys, Instruments.SIZE * Markets.SIZE);
+		for(int key = 0; key < maxKeys; key++) {
+			provider.subscribe(Instruments.getInstrumentById(key / Markets.SIZE), 
+								Markets.getMarketById(key % Markets.SIZE), function);
+		}
+	}
+}
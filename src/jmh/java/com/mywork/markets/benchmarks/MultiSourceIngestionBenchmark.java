@@ -0,0 +1,124 @@
+package com.mywork.markets.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.metrics.Metrics;
+import com.mywork.markets.providers.MultiThreadProvider;
+import com.mywork.markets.providers.SubscriberConfig;
+import com.mywork.markets.providers.SubscriptionException;
+import com.mywork.markets.providers.WaitStrategies;
+import com.mywork.markets.utils.UpdatesProvider;
+
+/**
+ * Ingestion from several venue feed threads into {@link MultiThreadProvider MultiThreadProvider}:
+ * updates per second the venues get through to one busy-spinning subscriber, with multi-producer
+ * queues or per-venue rings merged by one thread.
+ *
+ * Each JMH thread is a venue's feed thread, so run with the thread counts to compare, eg
+ * <code>java -jar target/benchmarks.jar MultiSourceIngestion -t 1 -t 2 -t 4</code>.
+ * Needs at least threads + 2 cores to give meaningful numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(2)
+@Fork(1)
+public class MultiSourceIngestionBenchmark {
+
+	@Param({"MULTI_PRODUCER", "MERGED"})
+	MultiThreadProvider.Ingestion ingestion;
+
+	@Param({"PER_SUBSCRIBER", "SHARED"})
+	MultiThreadProvider.Topology topology;
+
+	//number of distinct instrument/market pairs subscribed and updated
+	@Param({"16"})
+	int keys;
+
+	private MultiThreadProvider provider;
+
+	//the consumer each venue's feed thread publishes to
+	private Consumer<MarketUpdate>[] inputs;
+
+	private final AtomicInteger venues = new AtomicInteger();
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup(BenchmarkParams params) throws SubscriptionException {
+		int sources = params.getThreads();
+		inputs = new Consumer[sources];
+		List<Function<Consumer<MarketUpdate>, UpdatesProvider>> feeds = new ArrayList<>();
+		for(int i = 0; i < sources; i++) {
+			final int venue = i;
+			//the benchmark threads are the feeds - the provider's own source threads do nothing
+			feeds.add(consumer -> {
+				inputs[venue] = consumer;
+				return new UpdatesProvider(consumer) {
+					@Override
+					public void run() {}
+				};
+			});
+		}
+		provider = new MultiThreadProvider(topology, SubscriberConfig.DEFAULT.withWaitStrategy(WaitStrategies.BUSY_SPIN),
+											ingestion, feeds, update -> {}, new Metrics());
+		BenchmarkUpdates.subscribe(provider, keys, (MarketUpdate update) -> update);
+		provider.start();
+		venues.set(0);
+	}
+
+	@TearDown
+	public void tearDown() {
+		provider.stop();
+	}
+
+	/**
+	 * A venue's feed thread and its updates
+	 */
+	@State(Scope.Thread)
+	public static class Venue {
+
+		private Consumer<MarketUpdate> input;
+
+		private MarketUpdate[] updates;
+
+		private int next;
+
+		@Setup
+		public void setup(MultiSourceIngestionBenchmark benchmark) {
+			input = benchmark.inputs[benchmark.venues.getAndIncrement()];
+			updates = BenchmarkUpdates.create(benchmark.keys, 1024);
+		}
+	}
+
+	/**
+	 * one update from the venue's feed thread - waits only when the queues are full
+	 */
+	@Benchmark
+	public void ingest(Venue venue) {
+		venue.input.accept(venue.updates[venue.next]);
+		venue.next = (venue.next + 1) & (venue.updates.length - 1);
+	}
+}
@@ -0,0 +1,122 @@
+package com.mywork.markets.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.providers.MultiThreadProvider;
+import com.mywork.markets.providers.SubscriberConfig;
+import com.mywork.markets.providers.SubscriptionException;
+import com.mywork.markets.providers.WaitStrategies;
+
+/**
+ * End-to-end hand-off through {@link MultiThreadProvider MultiThreadProvider}:
+ * time from <code>accept</code> on the feed thread until every subscriber thread has seen the update(s).
+ * 
+ * Busy-spin runs one spinning thread per subscriber, so needs at least subscribers + 1 cores 
+ * to give meaningful numbers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiThreadProviderBenchmark {
+
+	private static final int BURST = 256;
+	
+	@Param({"1", "4"})
+	int subscribers;
+
+	//number of distinct instrument/market pairs subscribed and updated
+	@Param({"1", "16"})
+	int keys;
+	
+	@Param({"BLOCKING", "SLEEPING", "YIELDING", "BUSY_SPIN", "PHASED_BACKOFF"})
+	WaitStrategies waitStrategy;
+	
+	@Param({"PER_SUBSCRIBER", "SHARED"})
+	MultiThreadProvider.Topology topology;
+	
+	private MultiThreadProvider provider;
+	
+	private AtomicLong[] received;
+	
+	private MarketUpdate[] updates;
+	
+	private int next;
+	
+	private long published;
+	
+	@Setup
+	public void setup() throws SubscriptionException {
+		provider = new MultiThreadProvider(topology, SubscriberConfig.DEFAULT.withWaitStrategy(waitStrategy));
+		received = new AtomicLong[subscribers];
+		for(int i = 0; i < subscribers; i++) {
+			final AtomicLong counter = new AtomicLong();
+			received[i] = counter;
+			//single writer per counter, so an ordered store is enough
+			BenchmarkUpdates.subscribe(provider, keys, (MarketUpdate update) -> {
+				counter.lazySet(counter.get() + 1);
+				return update;
+			});
+		}
+		updates = BenchmarkUpdates.create(keys, 1024);
+		published = 0;
+	}
+	
+	@TearDown
+	public void tearDown() {
+		provider.stop();
+	}
+	
+	/**
+	 * one update, waiting for it to reach every subscriber
+	 */
+	@Benchmark
+	public void handOff() {
+		publish();
+		awaitSubscribers();
+	}
+
+	/**
+	 * a burst of updates, waiting for the whole burst to reach every subscriber
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BURST)
+	public void burst() {
+		for(int i = 0; i < BURST; i++) {
+			publish();
+		}
+		awaitSubscribers();
+	}
+	
+	private void publish() {
+		provider.accept(updates[next]);
+		next = (next + 1) & (updates.length - 1);
+		published++;
+	}
+	
+	private void awaitSubscribers() {
+		for(int i = 0; i < received.length; i++) {
+			while(received[i].get() < published) {
+				//spin
+			}
+		}
+	}
+}
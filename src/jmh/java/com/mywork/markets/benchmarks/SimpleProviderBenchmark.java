@@ -0,0 +1,65 @@
+package com.mywork.markets.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.providers.SimpleProvider;
+import com.mywork.markets.providers.SubscriptionException;
+
+/**
+ * Cost of fanning one update out to all subscribers of
+ * an instrument/market in {@link SimpleProvider#accept(MarketUpdate) SimpleProvider.accept}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleProviderBenchmark {
+
+	@Param({"1", "4", "16"})
+	int subscribers;
+
+	//number of distinct instrument/market pairs subscribed and updated
+	@Param({"1", "16"})
+	int keys;
+	
+	private SimpleProvider provider;
+	
+	private MarketUpdate[] updates;
+	
+	private int next;
+	
+	@Setup
+	public void setup(Blackhole blackhole) throws SubscriptionException {
+		provider = new SimpleProvider();
+		for(int i = 0; i < subscribers; i++) {
+			BenchmarkUpdates.subscribe(provider, keys, (MarketUpdate update) -> {
+				blackhole.consume(update);
+				return update;
+			});
+		}
+		updates = BenchmarkUpdates.create(keys, 1024);
+	}
+	
+	@Benchmark
+	public void accept() {
+		MarketUpdate update = updates[next];
+		next = (next + 1) & (updates.length - 1);
+		provider.accept(update);
+	}
+}
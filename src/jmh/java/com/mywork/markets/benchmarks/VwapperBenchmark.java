@@ -0,0 +1,73 @@
+package com.mywork.markets.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mywork.markets.Instruments;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.vwap.VwapMarketUpdate;
+import com.mywork.markets.vwap.Vwapper;
+
+/**
+ * Cost of one {@link Vwapper#apply(MarketUpdate) Vwapper.apply} call.
+ * SampleTime mode reports latency percentiles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VwapperBenchmark {
+
+	//updates per batch delivered to onUpdate
+	private static final int BATCH = 64;
+	
+	//number of distinct instrument/market pairs updated - more than the enum pairs are runtime
+	//instruments updated in random order, so their totals no longer fit in the cache
+	@Param({"1", "4", "16", "65536"})
+	int keys;
+	
+	private Vwapper vwapper;
+	
+	private MarketUpdate[] updates;
+	
+	private int next;
+	
+	@Setup
+	public void setup() {
+		//not started, so the provider is never used
+		vwapper = new Vwapper(null, update -> {});
+		updates = keys <= Instruments.SIZE * Markets.SIZE
+					? BenchmarkUpdates.create(keys, 1024) : BenchmarkUpdates.createListings(keys, 1 << 18);
+	}
+	
+	@Benchmark
+	public VwapMarketUpdate apply() {
+		MarketUpdate update = updates[next];
+		next = (next + 1) & (updates.length - 1);
+		return vwapper.apply(update);
+	}
+	
+	/**
+	 * one update delivered in batches, as by a queueing provider - the vwaps are published at the end of each batch
+	 */
+	@Benchmark
+	public void onUpdate() {
+		MarketUpdate update = updates[next];
+		next = (next + 1) & (updates.length - 1);
+		vwapper.onUpdate(update, (next & (BATCH - 1)) == 0);
+	}
+}
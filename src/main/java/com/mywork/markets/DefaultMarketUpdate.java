@@ -1,14 +1,26 @@
 package com.mywork.markets;
 
+/**
+ * Flyweight update - the tick is embedded in the update and {@link #setTick(Tick) setTick}
+ * copies values into it rather than keeping a reference to the given tick.
+ * This lets disruptor slots and producer side updates be reused without allocating a tick per quote.
+ * An update always has a tick, so a null tick is rejected.
+ */
 public class DefaultMarketUpdate implements MarketUpdate{
 	
 	private Markets market;
-	private Tick tick;
+	private int marketId = -1;
+	private long sequence;
+	private long ingressNanos;
+	private final Tick tick = new Tick();
 	
 	public DefaultMarketUpdate() {}
+	/**
+	 * @throws IllegalArgumentException if the tick is null
+	 */
 	public DefaultMarketUpdate(final Markets market, final Tick tick) {
-		this.market = market;
-		this.tick = tick;
+		setMarket(market);
+		setTick(tick);
 	}
 	
 	public Markets getMarket() {
@@ -20,16 +32,96 @@ public class DefaultMarketUpdate implements MarketUpdate{
 	}
 	
 	public String toString() {
-		return "Market : [" + market + " Tick : [" + tick + "]";
+		return "Market : [" + (marketId < 0 ? null : SymbolRegistry.MARKETS.getNameOrId(marketId)) + " Tick : [" + tick + "]";
 	}
 	@Override
 	public void setMarket(Markets market) {
 		this.market = market;
+		this.marketId = null == market ? -1 : market.ordinal();
 		
 	}
 	@Override
+	public int getMarketId() {
+		return marketId;
+	}
+	@Override
+	public void setMarketId(int marketId) {
+		this.marketId = marketId;
+		this.market = marketId >= 0 && marketId < Markets.SIZE ? Markets.getMarketById(marketId) : null;
+	}
+	@Override
+	public long getSequence() {
+		return sequence;
+	}
+	@Override
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+	@Override
+	public long getIngressNanos() {
+		return ingressNanos;
+	}
+	@Override
+	public void setIngressNanos(long ingressNanos) {
+		this.ingressNanos = ingressNanos;
+	}
+	/**
+	 * @throws IllegalArgumentException if the tick is null
+	 */
+	@Override
 	public void setTick(Tick tick) {
-		this.tick = tick;
+		if(null == tick) {
+			throw new IllegalArgumentException("Cannot set null tick");
+		}
+		this.tick.set(tick);
 		
 	}
+	
+	/**
+	 * overwrite this update in place from primitives
+	 * @return this update
+	 */
+	public DefaultMarketUpdate set(Markets market,
+			Instruments instrument, 
+			Side side,
+			double bidPrice, 
+			double bidAmount,
+			double offerPrice,
+			double offerAmount) {
+		setMarket(market);
+		this.tick.set(instrument, side, bidPrice, bidAmount, offerPrice, offerAmount);
+		return this;
+	}
+	
+	/**
+	 * overwrite this update in place from symbol ids and primitives
+	 * @return this update
+	 */
+	public DefaultMarketUpdate set(int marketId,
+			int instrumentId, 
+			Side side,
+			double bidPrice, 
+			double bidAmount,
+			double offerPrice,
+			double offerAmount) {
+		setMarketId(marketId);
+		this.tick.set(instrumentId, side, bidPrice, bidAmount, offerPrice, offerAmount);
+		return this;
+	}
+	
+	/**
+	 * overwrite this update in place from symbol ids and {@link FixedPoint FixedPoint} units
+	 * @return this update
+	 */
+	public DefaultMarketUpdate setScaled(int marketId,
+			int instrumentId, 
+			Side side,
+			long bidPrice, 
+			long bidAmount,
+			long offerPrice,
+			long offerAmount) {
+		setMarketId(marketId);
+		this.tick.setScaled(instrumentId, side, bidPrice, bidAmount, offerPrice, offerAmount);
+		return this;
+	}
 }
@@ -0,0 +1,147 @@
+package com.mywork.markets;
+
+/**
+ * Fixed-point prices and amounts.
+ * Prices are held as longs scaled by {@link #PRICE_SCALE PRICE_SCALE} (8 decimal places) and amounts
+ * as longs scaled by {@link #AMOUNT_SCALE AMOUNT_SCALE} (4 decimal places), so sums of them are exact and
+ * the same on every run whatever order they are added in. A price * amount is scaled by
+ * PRICE_SCALE * AMOUNT_SCALE and can need up to 128 bits - it is kept as a high and a low long,
+ * see {@link #multiplyHigh(long, long) multiplyHigh} and {@link #divide(long, long, long) divide}.
+ *
+ * Converting from a double rounds to the nearest unit, so prices/amounts with more decimal places
+ * than the scale lose them. Prices must be below about 9.2e10 and amounts below about 9.2e14, and neither
+ * negative - the 128 bit products and totals are unsigned.
+ */
+public final class FixedPoint {
+
+	public static final long PRICE_SCALE = 100_000_000L;
+
+	public static final long AMOUNT_SCALE = 10_000L;
+
+	private static final long LOW_32 = 0xFFFFFFFFL;
+
+	private static final long MAX_ESTIMATED_DIVISOR = 1L << 61;
+
+	private FixedPoint() {}
+
+	public static long toPrice(double price) {
+		return Math.round(price * PRICE_SCALE);
+	}
+
+	public static double fromPrice(long price) {
+		return price / (double)PRICE_SCALE;
+	}
+
+	public static long toAmount(double amount) {
+		return Math.round(amount * AMOUNT_SCALE);
+	}
+
+	public static double fromAmount(long amount) {
+		return amount / (double)AMOUNT_SCALE;
+	}
+
+	/**
+	 * @return the high 64 bits of the unsigned 128 bit product of x and y - the low 64 bits are x * y
+	 */
+	public static long multiplyHigh(long x, long y) {
+		if(Long.numberOfLeadingZeros(x) + Long.numberOfLeadingZeros(y) >= 64) {
+			//the product fits 64 bits - the usual case for a price * amount
+			return 0;
+		}
+		long x0 = x & LOW_32;
+		long x1 = x >>> 32;
+		long y0 = y & LOW_32;
+		long y1 = y >>> 32;
+
+		long t = x1 * y0 + ((x0 * y0) >>> 32);
+		long w1 = x0 * y1 + (t & LOW_32);
+		return x1 * y1 + (t >>> 32) + (w1 >>> 32);
+	}
+
+	/**
+	 * @return the carry out of adding the unsigned low words a and b, 0 or 1
+	 */
+	public static long carry(long a, long b) {
+		return Long.compareUnsigned(a + b, a) < 0 ? 1 : 0;
+	}
+
+	/**
+	 * Divides the unsigned 128 bit value high:low by the divisor, rounding half up.
+	 * @return the unsigned quotient
+	 * @throws ArithmeticException if the divisor is 0 or the quotient does not fit in 64 bits
+	 */
+	public static long divide(long high, long low, long divisor) {
+		if(high >= 0 && high < divisor && divisor < MAX_ESTIMATED_DIVISOR) {
+			//estimate the rounded quotient in floating point - within 2 of it when it is below 2^49, so
+			//the remainder fits a signed long and corrections, rarely needed, make it exact. Covers vwap prices.
+			double estimate = (high * 0x1p64 + (low >>> 1) * 2.0) / divisor;
+			if(estimate < 0x1p49) {
+				long quotient = (long)(estimate + 0.5);
+				long remainder = low - quotient * divisor;
+				//rounded half up when -divisor <= 2 * remainder < divisor
+				while(remainder + remainder + divisor < 0) {
+					quotient--;
+					remainder += divisor;
+				}
+				while(remainder + remainder - divisor >= 0) {
+					quotient++;
+					remainder -= divisor;
+				}
+				return quotient;
+			}
+		}
+		return divideLong(high, low, divisor);
+	}
+
+	/**
+	 * Knuth's algorithm D on two 32 bit digits, after Hacker's Delight divlu - 
+	 * kept out of {@link #divide(long, long, long) divide} so the estimate there inlines.
+	 */
+	private static long divideLong(long high, long low, long divisor) {
+		if(Long.compareUnsigned(high, divisor) >= 0) {
+			throw new ArithmeticException("Quotient of [" + high + ":" + low + "] / [" + divisor + "] overflows");
+		}
+
+		//normalise so the divisor's top bit is set
+		int shift = Long.numberOfLeadingZeros(divisor);
+		long v = divisor << shift;
+		long vn1 = v >>> 32;
+		long vn0 = v & LOW_32;
+		long un32 = shift == 0 ? high : (high << shift) | (low >>> (64 - shift));
+		long un10 = low << shift;
+		long un1 = un10 >>> 32;
+		long un0 = un10 & LOW_32;
+
+		long q1 = divideUnsigned(un32, vn1);
+		long rhat = un32 - q1 * vn1;
+		while(q1 > LOW_32 || Long.compareUnsigned(q1 * vn0, (rhat << 32) | un1) > 0) {
+			q1--;
+			rhat += vn1;
+			if(rhat > LOW_32) {
+				break;
+			}
+		}
+
+		long un21 = (un32 << 32) + un1 - q1 * v;
+		long q0 = divideUnsigned(un21, vn1);
+		rhat = un21 - q0 * vn1;
+		while(q0 > LOW_32 || Long.compareUnsigned(q0 * vn0, (rhat << 32) | un0) > 0) {
+			q0--;
+			rhat += vn1;
+			if(rhat > LOW_32) {
+				break;
+			}
+		}
+
+		long quotient = (q1 << 32) + q0;
+		long remainder = ((un21 << 32) + un0 - q0 * v) >>> shift;
+		return Long.compareUnsigned(remainder, divisor - remainder) >= 0 ? quotient + 1 : quotient;
+	}
+
+	//unsigned n / d for a positive d - Long.divideUnsigned goes through BigInteger on java 8
+	private static long divideUnsigned(long n, long d) {
+		long quotient = ((n >>> 1) / d) << 1;
+		long remainder = n - quotient * d;
+		return Long.compareUnsigned(remainder, d) >= 0 ? quotient + 1 : quotient;
+	}
+}
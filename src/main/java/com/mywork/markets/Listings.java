@@ -0,0 +1,116 @@
+package com.mywork.markets;
+
+import java.util.Arrays;
+
+/**
+ * Dense keys for instrument/market pairs (listings), so that per instrument/market state can 
+ * be held in one flat array. Keys are given out in the order pairs are first seen. The 
+ * instrument/market enum pairs are seeded first so their key stays 
+ * <code>instrument * Markets.SIZE + market</code>.
+ * 
+ * Looking up a known pair is two array reads and does not lock. A new pair is added under a lock,
+ * so keys are expected to be given out when subscribing - paths that see every update use 
+ * {@link #find(int, int) find}, which never adds. The instrument and market of a key are one array read each.
+ */
+public final class Listings {
+
+	//key + 1 per instrument id/market id. 0 means the pair has no key yet.
+	private static volatile int[][] keys = new int[0][];
+	
+	//instrument and market id per key - written before the key is published in keys
+	private static volatile int[] instrumentIds = new int[0];
+	private static volatile int[] marketIds = new int[0];
+
+	private static int size;
+	
+	static {
+		for(int i = 0; i < Instruments.SIZE; i++) {
+			for(int m = 0; m < Markets.SIZE; m++) {
+				key(i, m);
+			}
+		}
+	}
+	
+	private Listings() {}
+
+	/**
+	 * @return the key of the instrument/market - adding it if not known yet
+	 * @throws IllegalArgumentException if either id is negative
+	 */
+	public static int key(int instrumentId, int marketId) {
+		int[][] rows = keys;
+		if(instrumentId >= 0 && instrumentId < rows.length) {
+			int[] row = rows[instrumentId];
+			if(marketId >= 0 && marketId < row.length && row[marketId] != 0) {
+				return row[marketId] - 1;
+			}
+		}
+		return add(instrumentId, marketId);
+	}
+	
+	/**
+	 * @return the key of the instrument/market or -1 if it has not been given one - never adds
+	 */
+	public static int find(int instrumentId, int marketId) {
+		int[][] rows = keys;
+		if(instrumentId >= 0 && instrumentId < rows.length) {
+			int[] row = rows[instrumentId];
+			if(marketId >= 0 && marketId < row.length) {
+				return row[marketId] - 1;
+			}
+		}
+		return -1;
+	}
+	
+	private static synchronized int add(int instrumentId, int marketId) {
+		if(instrumentId < 0 || marketId < 0) {
+			throw new IllegalArgumentException(String.format("Invalid instrument [%d] or market [%d] id", 
+																instrumentId, marketId));
+		}
+		
+		int[][] rows = keys;
+		if(instrumentId < rows.length && marketId < rows[instrumentId].length 
+				&& rows[instrumentId][marketId] != 0) {
+			return rows[instrumentId][marketId] - 1;
+		}
+		
+		//copy on write so readers never see a partly filled row
+		int[][] updated = Arrays.copyOf(rows, Math.max(rows.length, instrumentId + 1));
+		for(int i = rows.length; i < updated.length; i++) {
+			updated[i] = new int[0];
+		}
+		int[] row = Arrays.copyOf(updated[instrumentId], 
+								Math.max(updated[instrumentId].length, marketId + 1));
+		if(size == instrumentIds.length) {
+			instrumentIds = Arrays.copyOf(instrumentIds, Math.max(16, size * 2));
+			marketIds = Arrays.copyOf(marketIds, instrumentIds.length);
+		}
+		instrumentIds[size] = instrumentId;
+		marketIds[size] = marketId;
+		row[marketId] = ++size;
+		updated[instrumentId] = row;
+		keys = updated;
+		return size - 1;
+	}
+	
+	/**
+	 * @return instrument id of a key given out by {@link #key(int, int) key}
+	 */
+	public static int instrumentId(int key) {
+		return instrumentIds[key];
+	}
+	
+	/**
+	 * @return market id of a key given out by {@link #key(int, int) key}
+	 */
+	public static int marketId(int key) {
+		return marketIds[key];
+	}
+	
+	/**
+	 * @return number of keys given out - keys are 0 to size - 1
+	 */
+	public static synchronized int size() {
+		return size;
+	}
+}
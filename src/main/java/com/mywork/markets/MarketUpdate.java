@@ -7,5 +7,27 @@ public interface MarketUpdate {
 	Markets 	getMarket();
 	Tick getTick();
 	void setMarket(Markets market);
+	/**
+	 * @return id from {@link SymbolRegistry#MARKETS SymbolRegistry.MARKETS} or -1 if there is no market.
+	 *         {@link #getMarket() getMarket} is null for markets added at runtime.
+	 */
+	int getMarketId();
+	void setMarketId(int marketId);
+	/**
+	 * @return journal sequence of the update, 0 if it has not been journaled.
+	 *         See {@link com.mywork.markets.journal.JournalWriter JournalWriter}.
+	 */
+	long getSequence();
+	void setSequence(long sequence);
+	/**
+	 * @return System.nanoTime when the update entered the process, 0 if not stamped.
+	 *         Used to measure latency through each stage.
+	 */
+	long getIngressNanos();
+	void setIngressNanos(long ingressNanos);
+	/**
+	 * copies the given tick into this update. Implementations own their tick
+	 * so that the given tick can be reused by the caller.
+	 */
 	void setTick(Tick tick);
 }
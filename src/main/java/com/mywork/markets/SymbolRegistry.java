@@ -0,0 +1,99 @@
+package com.mywork.markets;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns symbol names (instruments or venues) to dense integer ids - 0, 1, 2... in the order 
+ * they are first seen - so that state can be held in arrays indexed by id instead of maps.
+ * 
+ * {@link #INSTRUMENTS INSTRUMENTS} and {@link #MARKETS MARKETS} are seeded from the 
+ * {@link Instruments Instruments} and {@link Markets Markets} enums, so the id of an enum 
+ * value is its ordinal and symbols added at runtime get ids after the enum values.
+ * 
+ * Interning a new name is serialized on the registry and is expected when reference data loads,
+ * not per update. Lookups by id or of known names do not lock.
+ */
+public class SymbolRegistry {
+	
+	public static final SymbolRegistry INSTRUMENTS = new SymbolRegistry(Instruments.values());
+	
+	public static final SymbolRegistry MARKETS = new SymbolRegistry(Markets.values());
+
+	private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+	
+	//names by id, replaced when full. Only slots below size are used.
+	private volatile String[] names = new String[16];
+	
+	private volatile int size;
+	
+	/**
+	 * @param seeds - symbols interned first, so that each gets its ordinal as id
+	 */
+	public SymbolRegistry(Enum<?>... seeds) {
+		for(Enum<?> seed : seeds) {
+			intern(seed.name());
+		}
+	}
+	
+	/**
+	 * @return the id of the name - adding it if not known yet
+	 * @throws NullPointerException if the name is null
+	 */
+	public int intern(String name) {
+		Integer id = ids.get(name);
+		if(null != id) {
+			return id;
+		}
+		return add(name);
+	}
+	
+	private synchronized int add(String name) {
+		Integer id = ids.get(name);
+		if(null != id) {
+			return id;
+		}
+		
+		int next = size;
+		if(next == names.length) {
+			names = Arrays.copyOf(names, next * 2);
+		}
+		names[next] = name;
+		//publish the name before the id can be seen
+		size = next + 1;
+		ids.put(name, next);
+		return next;
+	}
+	
+	/**
+	 * @return the id of the name or -1 if it has not been interned
+	 */
+	public int getId(String name) {
+		Integer id = ids.get(name);
+		return null == id ? -1 : id;
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if no name has the id
+	 */
+	public String getName(int id) {
+		if(id < 0 || id >= size) {
+			throw new IllegalArgumentException("Unknown symbol id [" + id + "]");
+		}
+		return names[id];
+	}
+	
+	/**
+	 * @return the name of the id, or the id itself if no name has it - for log and error messages
+	 */
+	public String getNameOrId(int id) {
+		return id >= 0 && id < size ? names[id] : String.valueOf(id);
+	}
+	
+	/**
+	 * @return number of symbols - ids are 0 to size - 1
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -1,12 +1,26 @@
 package com.mywork.markets;
 
+/**
+ * Quote for one instrument.
+ * Mutable so that instances can be pre-allocated and reused on the hot path,
+ * see {@link #set(Instruments, Side, double, double, double, double) set}.
+ * 
+ * The instrument is held as an id from {@link SymbolRegistry#INSTRUMENTS SymbolRegistry.INSTRUMENTS}.
+ * {@link #getInstrument() getInstrument} is null for instruments added at runtime.
+ * 
+ * Prices and amounts are held in {@link FixedPoint FixedPoint} units - the double getters and setters 
+ * convert, the scaled ones read and write the units as they are.
+ */
 public class Tick {
-	private final Instruments instrument;
-	private final Side side;
-	private final double bidPrice;
-	private final double bidAmount;	
-	private final double offerAmount;
-	private final double offerPrice;
+	private Instruments instrument;
+	private int instrumentId = -1;
+	private Side side;
+	private long bidPrice;
+	private long bidAmount;
+	private long offerAmount;
+	private long offerPrice;
+	
+	public Tick() {}
 	
 	public Tick(
 			Instruments instrument, 
@@ -16,41 +30,148 @@ public class Tick {
 			double offerPrice,
 			double offerAmount
 			) {
-		this.instrument = instrument;
+		set(instrument, side, bidPrice, bidAmount, offerPrice, offerAmount);
+	}
+
+	/**
+	 * overwrite all fields of this tick in place
+	 * @return this tick
+	 */
+	public Tick set(
+			Instruments instrument, 
+			Side side,
+			double bidPrice, 
+			double bidAmount,
+			double offerPrice,
+			double offerAmount
+			) {
+		return set(null == instrument ? -1 : instrument.ordinal(), 
+				side, bidPrice, bidAmount, offerPrice, offerAmount);
+	}
+
+	/**
+	 * overwrite all fields of this tick in place
+	 * @param instrumentId - id from {@link SymbolRegistry#INSTRUMENTS SymbolRegistry.INSTRUMENTS}, -1 for none
+	 * @return this tick
+	 */
+	public Tick set(
+			int instrumentId, 
+			Side side,
+			double bidPrice, 
+			double bidAmount,
+			double offerPrice,
+			double offerAmount
+			) {
+		return setScaled(instrumentId, side, 
+						FixedPoint.toPrice(bidPrice), FixedPoint.toAmount(bidAmount), 
+						FixedPoint.toPrice(offerPrice), FixedPoint.toAmount(offerAmount));
+	}
+
+	/**
+	 * overwrite all fields of this tick in place, with prices and amounts in {@link FixedPoint FixedPoint} units
+	 * @param instrumentId - id from {@link SymbolRegistry#INSTRUMENTS SymbolRegistry.INSTRUMENTS}, -1 for none
+	 * @return this tick
+	 */
+	public Tick setScaled(
+			int instrumentId, 
+			Side side,
+			long bidPrice, 
+			long bidAmount,
+			long offerPrice,
+			long offerAmount
+			) {
+		this.instrumentId = instrumentId;
+		this.instrument = instrumentId >= 0 && instrumentId < Instruments.SIZE 
+							? Instruments.getInstrumentById(instrumentId) : null;
 		this.side = side;
 		this.bidPrice = bidPrice;
 		this.offerAmount = offerAmount;
 		this.offerPrice = offerPrice;
 		this.bidAmount = bidAmount;
+		return this;
+	}
+
+	/**
+	 * copy all fields of the given tick into this tick
+	 * @return this tick
+	 */
+	public Tick set(Tick other) {
+		return setScaled(other.instrumentId, other.side, 
+				other.bidPrice, other.bidAmount, 
+				other.offerPrice, other.offerAmount);
+	}
+
+	/**
+	 * overwrite the side in place, leaving the prices and amounts
+	 * @return this tick
+	 */
+	public Tick setSide(Side side) {
+		this.side = side;
+		return this;
 	}
 
 	public Instruments getInstrument() {
 		return instrument;
 	}
 
+	/**
+	 * @return id from {@link SymbolRegistry#INSTRUMENTS SymbolRegistry.INSTRUMENTS} or -1 if there is no instrument
+	 */
+	public int getInstrumentId() {
+		return instrumentId;
+	}
+
 	public Side getSide() {
 		return side;
 	}
 
 	public double getBidPrice() {
-		return bidPrice;
+		return FixedPoint.fromPrice(bidPrice);
 	}
 
 	public double getOfferAmount() {
-		return offerAmount;
+		return FixedPoint.fromAmount(offerAmount);
 	}
 
 	public double getOfferPrice() {
-		return offerPrice;
+		return FixedPoint.fromPrice(offerPrice);
 	}
 
 	public double getBidAmount() {
+		return FixedPoint.fromAmount(bidAmount);
+	}
+
+	/**
+	 * @return bid price in units of {@link FixedPoint#PRICE_SCALE FixedPoint.PRICE_SCALE}
+	 */
+	public long getScaledBidPrice() {
+		return bidPrice;
+	}
+
+	/**
+	 * @return bid amount in units of {@link FixedPoint#AMOUNT_SCALE FixedPoint.AMOUNT_SCALE}
+	 */
+	public long getScaledBidAmount() {
 		return bidAmount;
 	}
+
+	/**
+	 * @return offer price in units of {@link FixedPoint#PRICE_SCALE FixedPoint.PRICE_SCALE}
+	 */
+	public long getScaledOfferPrice() {
+		return offerPrice;
+	}
+
+	/**
+	 * @return offer amount in units of {@link FixedPoint#AMOUNT_SCALE FixedPoint.AMOUNT_SCALE}
+	 */
+	public long getScaledOfferAmount() {
+		return offerAmount;
+	}
 	
 	public String toString() {
-		return "Instrument : [" + instrument + "] Side : [" + side + "]"
-				+ " bidPrice: [" + bidPrice + "] bidAmount : [" + bidAmount + "]"
-				+ " offerPrice: [" + offerPrice + "] offerAmount : [" + offerAmount + "]";
+		return "Instrument : [" + (instrumentId < 0 ? null : SymbolRegistry.INSTRUMENTS.getNameOrId(instrumentId)) + "] Side : [" + side + "]"
+				+ " bidPrice: [" + getBidPrice() + "] bidAmount : [" + getBidAmount() + "]"
+				+ " offerPrice: [" + getOfferPrice() + "] offerAmount : [" + getOfferAmount() + "]";
 	}
 }
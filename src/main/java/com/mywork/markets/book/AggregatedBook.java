@@ -0,0 +1,220 @@
+package com.mywork.markets.book;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.SymbolRegistry;
+import com.mywork.markets.Tick;
+import com.mywork.markets.providers.Provider;
+import com.mywork.markets.providers.SubscriptionException;
+import com.mywork.markets.services.Lifecycle;
+
+/**
+ * Aggregated book of one instrument across all {@link Markets Markets}.
+ * Keeps the latest best bid/offer of each venue, replaced by each update from it, and ranks the
+ * venues per side into a consolidated ladder - see {@link VenueLadder VenueLadder}.
+ *
+ * The consolidated top - the best bid and offer prices and the total amount at each across venues -
+ * is handed to the listener only when it changes. Updates that only move venues below the top
+ * are applied without notifying. Prices and amounts are in {@link com.mywork.markets.FixedPoint FixedPoint} units.
+ *
+ * No objects are created per update - the top is written into one pre-allocated
+ * {@link BookMarketUpdate BookMarketUpdate}, which the listener must copy if it needs to keep it.
+ *
+ * This class is NOT thread-safe. It is meant to be called on the provider's subscriber thread
+ * and its getters read from the same thread, eg in the listener.
+ */
+public class AggregatedBook implements Function<MarketUpdate, BookMarketUpdate>, Lifecycle {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AggregatedBook.class);
+
+	private final Provider provider;
+
+	private final int instrumentId;
+
+	private final Consumer<? super BookMarketUpdate> listener;
+
+	private final VenueLadder bids = new VenueLadder(Markets.SIZE, true);
+
+	private final VenueLadder offers = new VenueLadder(Markets.SIZE, false);
+
+	private final BookMarketUpdate top = new BookMarketUpdate();
+
+	//markets subscribed to by start, so that stop unsubscribes only those
+	private final boolean[] subscribed = new boolean[Markets.SIZE];
+
+	/**
+	 * @param provider - the provider to subscribe to
+	 * @param instrumentId - id from {@link SymbolRegistry#INSTRUMENTS SymbolRegistry.INSTRUMENTS}
+	 * @param listener - receives the consolidated top whenever it changes
+	 * @throws IllegalArgumentException if the instrument id is not known
+	 */
+	public AggregatedBook(Provider provider, int instrumentId, Consumer<? super BookMarketUpdate> listener) {
+		if(instrumentId < 0 || instrumentId >= SymbolRegistry.INSTRUMENTS.size()) {
+			throw new IllegalArgumentException("Unknown instrument id [" + instrumentId + "]");
+		}
+		this.provider = provider;
+		this.instrumentId = instrumentId;
+		this.listener = listener;
+		top.getTick().setScaled(instrumentId, null, 0, 0, 0, 0);
+	}
+
+	/**
+	 * subscribe to the instrument from all markets
+	 */
+	@Override
+	public void start() {
+		for(Markets market : Markets.values()) {
+			try {
+				provider.subscribe(instrumentId, market.ordinal(), this);
+				subscribed[market.ordinal()] = true;
+			//one market may not provide the instrument - the others still make up the book
+			} catch(SubscriptionException e) {
+				LOG.warn("Could not subscribe to [{}] for [{}]", SymbolRegistry.INSTRUMENTS.getNameOrId(instrumentId), market);
+			}
+		}
+	}
+
+	/**
+	 * unsubscribe from all markets subscribed to by start
+	 */
+	@Override
+	public void stop() {
+		for(Markets market : Markets.values()) {
+			if(subscribed[market.ordinal()]) {
+				try {
+					provider.unsubscribe(instrumentId, market.ordinal(), this);
+					subscribed[market.ordinal()] = false;
+				} catch(SubscriptionException e) {
+					LOG.warn("Could not unsubscribe from [{}] for [{}]", SymbolRegistry.INSTRUMENTS.getNameOrId(instrumentId), market);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces the best bid/offer of the update's venue and notifies the listener if the
+	 * consolidated top changed. A side with a price or amount that is not positive takes
+	 * the venue off that side.
+	 * @return the consolidated top - pre-allocated and overwritten by the next change
+	 * @throws IllegalArgumentException if the update, tick or market is null or the instrument is not this book's
+	 */
+	@Override
+	public BookMarketUpdate apply(MarketUpdate update) {
+		if(null == update || null == update.getTick() || update.getMarketId() < 0) {
+			throw new IllegalArgumentException("Invalid update [" + update + "]");
+		}
+		Tick tick = update.getTick();
+		if(tick.getInstrumentId() != instrumentId) {
+			throw new IllegalArgumentException("Update [" + update + "] is not for instrument [" + instrumentId + "]");
+		}
+
+		int venue = update.getMarketId();
+		bids.update(venue, tick.getScaledBidPrice(), tick.getScaledBidAmount());
+		offers.update(venue, tick.getScaledOfferPrice(), tick.getScaledOfferAmount());
+
+		Tick topTick = top.getTick();
+		long bidPrice = bids.bestPrice();
+		long bidAmount = bids.bestAmount();
+		long offerPrice = offers.bestPrice();
+		long offerAmount = offers.bestAmount();
+		if(bidPrice != topTick.getScaledBidPrice() || bidAmount != topTick.getScaledBidAmount()
+				|| offerPrice != topTick.getScaledOfferPrice() || offerAmount != topTick.getScaledOfferAmount()) {
+			topTick.setScaled(instrumentId, tick.getSide(), bidPrice, bidAmount, offerPrice, offerAmount);
+			top.setSequence(update.getSequence());
+			top.setIngressNanos(update.getIngressNanos());
+			listener.accept(top);
+		}
+		return top;
+	}
+
+	/**
+	 * @return the consolidated top as last notified
+	 */
+	public BookMarketUpdate getTop() {
+		return top;
+	}
+
+	public int getInstrumentId() {
+		return instrumentId;
+	}
+
+	/**
+	 * @return number of venues with a bid
+	 */
+	public int getBidDepth() {
+		return bids.depth();
+	}
+
+	/**
+	 * @return market id of the venue with the bid at the rank, 0 being the best
+	 * @throws ArrayIndexOutOfBoundsException if the rank is not below {@link #getBidDepth() getBidDepth}
+	 */
+	public int getBidVenue(int rank) {
+		checkRank(rank, bids);
+		return bids.venue(rank);
+	}
+
+	/**
+	 * @return rank of the venue's bid or -1 if it has none
+	 */
+	public int getBidRank(int marketId) {
+		return bids.rank(marketId);
+	}
+
+	/**
+	 * @return the venue's bid price in FixedPoint units, 0 if it has none
+	 */
+	public long getBidPrice(int marketId) {
+		return bids.price(marketId);
+	}
+
+	public long getBidAmount(int marketId) {
+		return bids.amount(marketId);
+	}
+
+	/**
+	 * @return number of venues with an offer
+	 */
+	public int getOfferDepth() {
+		return offers.depth();
+	}
+
+	/**
+	 * @return market id of the venue with the offer at the rank, 0 being the best
+	 * @throws ArrayIndexOutOfBoundsException if the rank is not below {@link #getOfferDepth() getOfferDepth}
+	 */
+	public int getOfferVenue(int rank) {
+		checkRank(rank, offers);
+		return offers.venue(rank);
+	}
+
+	/**
+	 * @return rank of the venue's offer or -1 if it has none
+	 */
+	public int getOfferRank(int marketId) {
+		return offers.rank(marketId);
+	}
+
+	/**
+	 * @return the venue's offer price in FixedPoint units, 0 if it has none
+	 */
+	public long getOfferPrice(int marketId) {
+		return offers.price(marketId);
+	}
+
+	public long getOfferAmount(int marketId) {
+		return offers.amount(marketId);
+	}
+
+	private static void checkRank(int rank, VenueLadder ladder) {
+		if(rank < 0 || rank >= ladder.depth()) {
+			throw new ArrayIndexOutOfBoundsException("No venue at rank [" + rank + "] of [" + ladder.depth() + "]");
+		}
+	}
+}
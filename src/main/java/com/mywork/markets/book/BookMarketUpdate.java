@@ -0,0 +1,15 @@
+package com.mywork.markets.book;
+
+import com.mywork.markets.DefaultMarketUpdate;
+
+/**
+ * Consolidated top of book of an instrument across all the markets it is subscribed on -
+ * the tick holds the best bid and offer prices and the total amount at each across venues.
+ * The market is always null as the prices are not from any single market.
+ */
+public class BookMarketUpdate extends DefaultMarketUpdate {
+
+	public String toString() {
+		return "Top Of Book Tick : [" + getTick() + "]";
+	}
+}
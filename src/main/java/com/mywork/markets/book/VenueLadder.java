@@ -0,0 +1,172 @@
+package com.mywork.markets.book;
+
+import java.util.Arrays;
+
+/**
+ * One side of an {@link AggregatedBook AggregatedBook} - the best price and amount of each venue,
+ * and the venues that have one ranked best first. All held in primitive arrays indexed by
+ * market id or rank, allocated up front and grown only when a market id past the end is seen.
+ *
+ * A venue's price changing finds its new rank by binary search and moves only the venues ranked
+ * between its old and new rank. Venues at the same price are ranked by market id so the order
+ * does not depend on the order of updates.
+ *
+ * Not thread-safe - owned by the book's subscriber thread.
+ */
+final class VenueLadder {
+
+	//bids rank the highest price first, offers the lowest
+	private final boolean highestFirst;
+
+	//per market id, in FixedPoint units. 0 when the venue has no price on this side.
+	private long[] prices;
+	private long[] amounts;
+
+	//rank per market id, -1 if the venue has no price on this side
+	private int[] ranks;
+
+	//market ids by rank - only the first depth are used
+	private int[] ranked;
+
+	private int depth;
+
+	/**
+	 * @param venues - number of market ids to hold up front
+	 * @param highestFirst - true for bids, false for offers
+	 */
+	VenueLadder(int venues, boolean highestFirst) {
+		this.highestFirst = highestFirst;
+		this.prices = new long[venues];
+		this.amounts = new long[venues];
+		this.ranks = new int[venues];
+		this.ranked = new int[venues];
+		Arrays.fill(ranks, -1);
+	}
+
+	/**
+	 * Replaces the venue's price and amount. A price or amount that is not positive takes the venue
+	 * off the ladder.
+	 */
+	void update(int venue, long price, long amount) {
+		if(venue >= ranks.length) {
+			grow(Math.max(venue + 1, ranks.length * 2));
+		}
+		boolean valid = price > 0 && amount > 0;
+		prices[venue] = valid ? price : 0;
+		amounts[venue] = valid ? amount : 0;
+
+		int from = ranks[venue];
+		if(!valid) {
+			if(from >= 0) {
+				System.arraycopy(ranked, from + 1, ranked, from, depth - from - 1);
+				depth--;
+				ranks[venue] = -1;
+				rerank(from, depth);
+			}
+		} else if(from < 0) {
+			int to = search(venue, 0, depth);
+			System.arraycopy(ranked, to, ranked, to + 1, depth - to);
+			ranked[to] = venue;
+			depth++;
+			rerank(to, depth);
+		} else if(from > 0 && before(venue, ranked[from - 1])) {
+			//moved up - shift the venues it passed down one
+			int to = search(venue, 0, from);
+			System.arraycopy(ranked, to, ranked, to + 1, from - to);
+			ranked[to] = venue;
+			rerank(to, from + 1);
+		} else if(from < depth - 1 && before(ranked[from + 1], venue)) {
+			//moved down - shift the venues it fell behind up one
+			int to = search(venue, from + 1, depth) - 1;
+			System.arraycopy(ranked, from + 1, ranked, from, to - from);
+			ranked[to] = venue;
+			rerank(from, to + 1);
+		}
+	}
+
+	//true if venue a ranks before venue b
+	private boolean before(int a, int b) {
+		long priceA = prices[a];
+		long priceB = prices[b];
+		if(priceA != priceB) {
+			return highestFirst ? priceA > priceB : priceA < priceB;
+		}
+		return a < b;
+	}
+
+	//first rank from lo to hi whose venue does not rank before the venue
+	private int search(int venue, int lo, int hi) {
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(before(ranked[mid], venue)) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private void rerank(int from, int to) {
+		for(int rank = from; rank < to; rank++) {
+			ranks[ranked[rank]] = rank;
+		}
+	}
+
+	private void grow(int venues) {
+		int old = ranks.length;
+		prices = Arrays.copyOf(prices, venues);
+		amounts = Arrays.copyOf(amounts, venues);
+		ranks = Arrays.copyOf(ranks, venues);
+		ranked = Arrays.copyOf(ranked, venues);
+		Arrays.fill(ranks, old, venues, -1);
+	}
+
+	/**
+	 * @return number of venues with a price on this side
+	 */
+	int depth() {
+		return depth;
+	}
+
+	/**
+	 * @return market id of the venue at the rank, 0 being the best
+	 */
+	int venue(int rank) {
+		return ranked[rank];
+	}
+
+	/**
+	 * @return rank of the venue or -1 if it has no price on this side
+	 */
+	int rank(int venue) {
+		return venue < ranks.length ? ranks[venue] : -1;
+	}
+
+	long price(int venue) {
+		return venue < prices.length ? prices[venue] : 0;
+	}
+
+	long amount(int venue) {
+		return venue < amounts.length ? amounts[venue] : 0;
+	}
+
+	/**
+	 * @return the best price across venues, 0 if none
+	 */
+	long bestPrice() {
+		return depth == 0 ? 0 : prices[ranked[0]];
+	}
+
+	/**
+	 * @return the total amount of the venues at the best price, 0 if none
+	 */
+	long bestAmount() {
+		long best = bestPrice();
+		long total = 0;
+		for(int rank = 0; rank < depth && prices[ranked[rank]] == best; rank++) {
+			total += amounts[ranked[rank]];
+		}
+		return total;
+	}
+}
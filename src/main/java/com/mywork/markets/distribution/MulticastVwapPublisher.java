@@ -0,0 +1,126 @@
+package com.mywork.markets.distribution;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.function.Consumer;
+
+import com.mywork.markets.vwap.VwapMarketUpdate;
+
+/**
+ * Publishes vwaps to a multicast group - a sink for {@link com.mywork.markets.vwap.Vwapper Vwapper},
+ * for both its market and consolidated vwaps.
+ * Each vwap is encoded with {@link VwapCodec VwapCodec} straight into one pre-allocated datagram buffer,
+ * which is sent when it is full or on {@link #flush() flush} - eg at the end of each batch, see
+ * {@link com.mywork.markets.vwap.Vwapper#setEndOfBatchAction(Runnable) Vwapper.setEndOfBatchAction}.
+ * Nothing is allocated per vwap or datagram.
+ *
+ * Datagrams are numbered so receivers can tell when they lost some - UDP does not resend them.
+ * A datagram that cannot be sent is dropped and counted rather than stopping the vwapper.
+ *
+ * NOT thread-safe - meant to be called on the vwapper's thread.
+ */
+public class MulticastVwapPublisher implements Consumer<VwapMarketUpdate>, AutoCloseable {
+
+	/** ethernet MTU less IP and UDP headers, so datagrams are not fragmented */
+	public static final int DEFAULT_DATAGRAM_SIZE = 1472;
+
+	private final DatagramChannel channel;
+
+	private final InetSocketAddress group;
+
+	private final ByteBuffer buffer;
+
+	private final int maxMessages;
+
+	//messages encoded into the buffer and not yet sent
+	private int messages;
+
+	//sequence of the last datagram sent
+	private long sequence;
+
+	private long failed;
+
+	/**
+	 * @param group - multicast group address and port to send to
+	 * @param networkInterface - interface to send on, eg the loopback interface for processes on the same host
+	 * @param datagramSize - largest datagram sent, in bytes
+	 * @param ttl - multicast time to live, 0 to stay on the host, 1 for the local network
+	 * @throws IllegalArgumentException if a datagram cannot hold one message or the group is not multicast
+	 */
+	public MulticastVwapPublisher(InetSocketAddress group, NetworkInterface networkInterface,
+									int datagramSize, int ttl) throws IOException {
+		if(VwapCodec.maxMessages(datagramSize) < 1 || datagramSize > 65507) {
+			throw new IllegalArgumentException("Invalid datagram size of [" + datagramSize + "] bytes");
+		}
+		if(!group.getAddress().isMulticastAddress()) {
+			throw new IllegalArgumentException("Not a multicast group [" + group + "]");
+		}
+		this.group = group;
+		this.maxMessages = Math.min(VwapCodec.maxMessages(datagramSize), Short.MAX_VALUE);
+		this.buffer = VwapCodec.allocate(datagramSize);
+		this.channel = DatagramChannel.open(StandardProtocolFamily.INET)
+							.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface)
+							.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl)
+							.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+	}
+
+	/**
+	 * encodes the vwap into the current datagram, sending it if it is full
+	 */
+	@Override
+	public void accept(VwapMarketUpdate vwap) {
+		VwapCodec.encode(buffer, messages++, vwap);
+		if(messages == maxMessages) {
+			flush();
+		}
+	}
+
+	/**
+	 * sends the vwaps encoded since the last datagram, if any
+	 */
+	public void flush() {
+		if(messages == 0) {
+			return;
+		}
+		VwapCodec.encodeHeader(buffer, ++sequence, messages);
+		buffer.limit(VwapCodec.HEADER_SIZE + messages * VwapCodec.MESSAGE_SIZE).position(0);
+		try {
+			channel.send(buffer, group);
+		} catch (IOException e) {
+			//the sequence has moved on, so receivers see the datagram as lost
+			failed++;
+			System.err.println("Could not send vwap datagram [" + sequence + "] - " + e);
+		} finally {
+			buffer.clear();
+			messages = 0;
+		}
+	}
+
+	/**
+	 * @return sequence of the last datagram sent, 0 if none
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return number of datagrams that could not be sent
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * sends any vwaps not yet sent and closes the channel
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+}
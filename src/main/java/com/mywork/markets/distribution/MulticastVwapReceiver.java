@@ -0,0 +1,153 @@
+package com.mywork.markets.distribution;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.function.Consumer;
+
+import com.mywork.markets.vwap.ConsolidatedVwapMarketUpdate;
+import com.mywork.markets.vwap.VwapMarketUpdate;
+
+/**
+ * Receives vwaps published by {@link MulticastVwapPublisher MulticastVwapPublisher} from a multicast group.
+ * Each message is decoded with {@link VwapCodec VwapCodec} into one of two pre-allocated updates - market
+ * or consolidated - and handed to the matching consumer, which must copy it if it needs to keep it.
+ *
+ * Lost datagrams are counted from gaps in their sequence. A sequence going back is taken as the
+ * publisher restarting. Datagrams that are not vwap datagrams are counted and skipped.
+ *
+ * {@link #run() run} receives until the receiver is closed, eg on a thread of its own. NOT thread-safe
+ * otherwise - {@link #receive() receive} must be called on one thread.
+ */
+public class MulticastVwapReceiver implements Runnable, AutoCloseable {
+
+	private final DatagramChannel channel;
+
+	private final ByteBuffer buffer;
+
+	private final Consumer<? super VwapMarketUpdate> consumer;
+
+	private final Consumer<? super ConsolidatedVwapMarketUpdate> consolidatedConsumer;
+
+	private final VwapMarketUpdate vwap = new VwapMarketUpdate();
+
+	private final ConsolidatedVwapMarketUpdate consolidatedVwap = new ConsolidatedVwapMarketUpdate();
+
+	//sequence of the last datagram received, 0 if none
+	private long sequence;
+
+	private long lost;
+
+	private long invalid;
+
+	/**
+	 * Joins the group - other receivers on the host can join the same group and port.
+	 * @param group - multicast group address and port to receive from
+	 * @param networkInterface - interface to join the group on
+	 * @param datagramSize - largest datagram expected, as given to the publisher
+	 * @param consumer - receives market vwaps
+	 * @param consolidatedConsumer - receives consolidated vwaps
+	 * @throws IllegalArgumentException if the group is not multicast
+	 */
+	public MulticastVwapReceiver(InetSocketAddress group, NetworkInterface networkInterface, int datagramSize,
+								Consumer<? super VwapMarketUpdate> consumer,
+								Consumer<? super ConsolidatedVwapMarketUpdate> consolidatedConsumer) throws IOException {
+		if(!group.getAddress().isMulticastAddress()) {
+			throw new IllegalArgumentException("Not a multicast group [" + group + "]");
+		}
+		this.buffer = VwapCodec.allocate(datagramSize);
+		this.consumer = consumer;
+		this.consolidatedConsumer = consolidatedConsumer;
+		this.channel = DatagramChannel.open(StandardProtocolFamily.INET)
+							.setOption(StandardSocketOptions.SO_REUSEADDR, true)
+							.bind(new InetSocketAddress(group.getPort()));
+		try {
+			channel.join(group.getAddress(), networkInterface);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits for the next datagram and hands its vwaps to the consumers.
+	 * @return number of vwaps in the datagram, 0 if it was not a vwap datagram
+	 * @throws ClosedChannelException if the receiver is closed, including while waiting
+	 */
+	public int receive() throws IOException {
+		buffer.clear();
+		channel.receive(buffer);
+		int messages = VwapCodec.messages(buffer, buffer.position());
+		if(messages < 0) {
+			invalid++;
+			return 0;
+		}
+
+		long received = VwapCodec.sequence(buffer);
+		if(sequence != 0 && received > sequence + 1) {
+			lost += received - sequence - 1;
+		}
+		sequence = received;
+
+		for(int i = 0; i < messages; i++) {
+			if(VwapCodec.template(buffer, i) == VwapCodec.CONSOLIDATED_VWAP) {
+				VwapCodec.decode(buffer, i, consolidatedVwap);
+				consolidatedConsumer.accept(consolidatedVwap);
+			} else {
+				VwapCodec.decode(buffer, i, vwap);
+				consumer.accept(vwap);
+			}
+		}
+		return messages;
+	}
+
+	/**
+	 * receives until closed
+	 */
+	@Override
+	public void run() {
+		while(channel.isOpen()) {
+			try {
+				receive();
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				System.err.println("Could not receive vwap datagram - " + e);
+			}
+		}
+	}
+
+	/**
+	 * @return sequence of the last datagram received, 0 if none
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return number of datagrams missing from the sequence
+	 */
+	public long getLost() {
+		return lost;
+	}
+
+	/**
+	 * @return number of datagrams received that were not vwap datagrams
+	 */
+	public long getInvalid() {
+		return invalid;
+	}
+
+	/**
+	 * leaves the group - {@link #run() run} returns
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,154 @@
+package com.mywork.markets.distribution;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.mywork.markets.Side;
+import com.mywork.markets.Tick;
+import com.mywork.markets.vwap.ConsolidatedVwapMarketUpdate;
+import com.mywork.markets.vwap.VwapMarketUpdate;
+
+/**
+ * Fixed layout binary encoding of vwaps for distribution - every field at a fixed offset,
+ * little-endian, no strings, so encoding and decoding are a few puts/gets on a buffer.
+ * A datagram is a header followed by up to {@link #maxMessages(int) maxMessages} messages:
+ *
+ * Header
+ * offset 0  int    magic
+ * offset 4  short  schema version
+ * offset 6  short  number of messages
+ * offset 8  long   datagram sequence - starts at 1 per publisher, so receivers can spot lost datagrams
+ *
+ * Message
+ * offset 0  short  template - {@link #VWAP VWAP} or {@link #CONSOLIDATED_VWAP CONSOLIDATED_VWAP}
+ * offset 2  short  side ordinal, -1 for none
+ * offset 4  int    market id, -1 for consolidated vwaps
+ * offset 8  int    instrument id
+ * offset 12 int    reserved
+ * offset 16 long   journal sequence of the last update in the vwap, 0 if not journaled
+ * offset 24 long   bid vwap
+ * offset 32 long   bid amount
+ * offset 40 long   offer vwap
+ * offset 48 long   offer amount
+ * offset 56 long   ingress nanos of the last update in the vwap - only comparable on the same host
+ *
+ * Prices and amounts are {@link com.mywork.markets.FixedPoint FixedPoint} units. Market/instrument ids
+ * are {@link com.mywork.markets.SymbolRegistry SymbolRegistry} ids - receivers must add symbols
+ * added at runtime in the same order.
+ */
+public final class VwapCodec {
+
+	public static final int MAGIC = 0x56574150;
+
+	public static final short SCHEMA_VERSION = 1;
+
+	public static final int HEADER_SIZE = 16;
+
+	static final int HEADER_MAGIC = 0;
+	static final int HEADER_VERSION = 4;
+	static final int HEADER_COUNT = 6;
+	static final int HEADER_SEQUENCE = 8;
+
+	public static final int MESSAGE_SIZE = 64;
+
+	static final int TEMPLATE = 0;
+	static final int SIDE = 2;
+	static final int MARKET = 4;
+	static final int INSTRUMENT = 8;
+	static final int RESERVED = 12;
+	static final int SEQUENCE = 16;
+	static final int BID_PRICE = 24;
+	static final int BID_AMOUNT = 32;
+	static final int OFFER_PRICE = 40;
+	static final int OFFER_AMOUNT = 48;
+	static final int INGRESS_NANOS = 56;
+
+	public static final short VWAP = 1;
+
+	public static final short CONSOLIDATED_VWAP = 2;
+
+	private static final Side[] SIDES = Side.values();
+
+	private VwapCodec() {}
+
+	/**
+	 * @return number of messages that fit a datagram of the size, eg 22 for 1472 bytes - an ethernet MTU less IP/UDP headers
+	 */
+	public static int maxMessages(int datagramSize) {
+		return (datagramSize - HEADER_SIZE) / MESSAGE_SIZE;
+	}
+
+	/**
+	 * writes the header at the start of the buffer
+	 */
+	public static void encodeHeader(ByteBuffer buffer, long sequence, int messages) {
+		buffer.putInt(HEADER_MAGIC, MAGIC);
+		buffer.putShort(HEADER_VERSION, SCHEMA_VERSION);
+		buffer.putShort(HEADER_COUNT, (short)messages);
+		buffer.putLong(HEADER_SEQUENCE, sequence);
+	}
+
+	/**
+	 * writes the vwap as the message at the index
+	 */
+	public static void encode(ByteBuffer buffer, int index, VwapMarketUpdate vwap) {
+		int offset = HEADER_SIZE + index * MESSAGE_SIZE;
+		Tick tick = vwap.getTick();
+		buffer.putShort(offset + TEMPLATE, vwap instanceof ConsolidatedVwapMarketUpdate ? CONSOLIDATED_VWAP : VWAP);
+		buffer.putShort(offset + SIDE, (short)(null == tick.getSide() ? -1 : tick.getSide().ordinal()));
+		buffer.putInt(offset + MARKET, vwap.getMarketId());
+		buffer.putInt(offset + INSTRUMENT, tick.getInstrumentId());
+		buffer.putInt(offset + RESERVED, 0);
+		buffer.putLong(offset + SEQUENCE, vwap.getSequence());
+		buffer.putLong(offset + BID_PRICE, tick.getScaledBidPrice());
+		buffer.putLong(offset + BID_AMOUNT, tick.getScaledBidAmount());
+		buffer.putLong(offset + OFFER_PRICE, tick.getScaledOfferPrice());
+		buffer.putLong(offset + OFFER_AMOUNT, tick.getScaledOfferAmount());
+		buffer.putLong(offset + INGRESS_NANOS, vwap.getIngressNanos());
+	}
+
+	/**
+	 * @return number of messages in the datagram, -1 if it is too short, not a vwap datagram,
+	 *         of another schema version or shorter than its messages
+	 */
+	public static int messages(ByteBuffer buffer, int length) {
+		if(length < HEADER_SIZE || buffer.getInt(HEADER_MAGIC) != MAGIC
+				|| buffer.getShort(HEADER_VERSION) != SCHEMA_VERSION) {
+			return -1;
+		}
+		int messages = buffer.getShort(HEADER_COUNT);
+		return messages < 0 || HEADER_SIZE + messages * MESSAGE_SIZE > length ? -1 : messages;
+	}
+
+	public static long sequence(ByteBuffer buffer) {
+		return buffer.getLong(HEADER_SEQUENCE);
+	}
+
+	public static short template(ByteBuffer buffer, int index) {
+		return buffer.getShort(HEADER_SIZE + index * MESSAGE_SIZE + TEMPLATE);
+	}
+
+	/**
+	 * reads the message at the index into the vwap
+	 */
+	public static void decode(ByteBuffer buffer, int index, VwapMarketUpdate vwap) {
+		int offset = HEADER_SIZE + index * MESSAGE_SIZE;
+		short side = buffer.getShort(offset + SIDE);
+		vwap.setMarketId(buffer.getInt(offset + MARKET));
+		vwap.setSequence(buffer.getLong(offset + SEQUENCE));
+		vwap.setIngressNanos(buffer.getLong(offset + INGRESS_NANOS));
+		vwap.getTick().setScaled(buffer.getInt(offset + INSTRUMENT),
+							side >= 0 && side < SIDES.length ? SIDES[side] : null,
+							buffer.getLong(offset + BID_PRICE),
+							buffer.getLong(offset + BID_AMOUNT),
+							buffer.getLong(offset + OFFER_PRICE),
+							buffer.getLong(offset + OFFER_AMOUNT));
+	}
+
+	/**
+	 * @return a buffer for a datagram of the size in the codec's byte order
+	 */
+	public static ByteBuffer allocate(int datagramSize) {
+		return ByteBuffer.allocateDirect(datagramSize).order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
@@ -0,0 +1,129 @@
+package com.mywork.markets.feed;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Side;
+import com.mywork.markets.SymbolRegistry;
+import com.mywork.markets.Tick;
+
+/**
+ * Length-prefixed binary quote protocol read by {@link TcpFeedHandler TcpFeedHandler}.
+ * A stream of frames, little-endian, each an int length of the body followed by the body.
+ * Bodies start with a short template. Frames of templates a reader does not know are skipped
+ * by their length, so templates can be added without breaking readers.
+ *
+ * Quote body - {@link #QUOTE_SIZE QUOTE_SIZE} bytes
+ * offset 0  short  template - {@link #QUOTE QUOTE}
+ * offset 2  short  side ordinal, -1 for none
+ * offset 4  int    market id
+ * offset 8  int    instrument id
+ * offset 12 int    reserved
+ * offset 16 long   bid price
+ * offset 24 long   bid amount
+ * offset 32 long   offer price
+ * offset 40 long   offer amount
+ *
+ * Heartbeat body - a short template {@link #HEARTBEAT HEARTBEAT}, sent by the venue when quiet.
+ *
+ * Prices and amounts are {@link com.mywork.markets.FixedPoint FixedPoint} units, ids are
+ * {@link com.mywork.markets.SymbolRegistry SymbolRegistry} ids agreed with the venue - quotes with ids
+ * not in the registry are not decoded.
+ */
+public final class QuoteCodec {
+
+	public static final int LENGTH_SIZE = 4;
+
+	public static final short QUOTE = 1;
+
+	public static final short HEARTBEAT = 2;
+
+	public static final int QUOTE_SIZE = 48;
+
+	static final int TEMPLATE = 0;
+	static final int SIDE = 2;
+	static final int MARKET = 4;
+	static final int INSTRUMENT = 8;
+	static final int RESERVED = 12;
+	static final int BID_PRICE = 16;
+	static final int BID_AMOUNT = 24;
+	static final int OFFER_PRICE = 32;
+	static final int OFFER_AMOUNT = 40;
+
+	private static final Side[] SIDES = Side.values();
+
+	private QuoteCodec() {}
+
+	/**
+	 * writes a quote frame at the buffer's position and moves the position past it
+	 * @throws BufferOverflowException if the frame does not fit
+	 */
+	public static void encodeQuote(ByteBuffer buffer, MarketUpdate update) {
+		if(buffer.remaining() < LENGTH_SIZE + QUOTE_SIZE) {
+			throw new BufferOverflowException();
+		}
+		int offset = buffer.position() + LENGTH_SIZE;
+		Tick tick = update.getTick();
+		buffer.putInt(buffer.position(), QUOTE_SIZE);
+		buffer.putShort(offset + TEMPLATE, QUOTE);
+		buffer.putShort(offset + SIDE, (short)(null == tick.getSide() ? -1 : tick.getSide().ordinal()));
+		buffer.putInt(offset + MARKET, update.getMarketId());
+		buffer.putInt(offset + INSTRUMENT, tick.getInstrumentId());
+		buffer.putInt(offset + RESERVED, 0);
+		buffer.putLong(offset + BID_PRICE, tick.getScaledBidPrice());
+		buffer.putLong(offset + BID_AMOUNT, tick.getScaledBidAmount());
+		buffer.putLong(offset + OFFER_PRICE, tick.getScaledOfferPrice());
+		buffer.putLong(offset + OFFER_AMOUNT, tick.getScaledOfferAmount());
+		buffer.position(offset + QUOTE_SIZE);
+	}
+
+	/**
+	 * writes a heartbeat frame at the buffer's position and moves the position past it
+	 */
+	public static void encodeHeartbeat(ByteBuffer buffer) {
+		buffer.putInt(2);
+		buffer.putShort(HEARTBEAT);
+	}
+
+	/**
+	 * @return a buffer of the size in the codec's byte order
+	 */
+	public static ByteBuffer allocate(int size) {
+		return ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @return template of the body at the offset
+	 */
+	static short template(ByteBuffer buffer, int offset) {
+		return buffer.getShort(offset + TEMPLATE);
+	}
+
+	/**
+	 * reads the quote body at the offset into the update, in place from the buffer
+	 * @return false, leaving the update as it was, if the market or instrument id is not in the
+	 *         {@link SymbolRegistry SymbolRegistry} or the side is not -1 or a side ordinal
+	 */
+	static boolean decodeQuote(ByteBuffer buffer, int offset, DefaultMarketUpdate update) {
+		short side = buffer.getShort(offset + SIDE);
+		int marketId = buffer.getInt(offset + MARKET);
+		int instrumentId = buffer.getInt(offset + INSTRUMENT);
+		if(side < -1 || side >= SIDES.length
+				|| marketId < 0 || marketId >= SymbolRegistry.MARKETS.size()
+				|| instrumentId < 0 || instrumentId >= SymbolRegistry.INSTRUMENTS.size()) {
+			return false;
+		}
+		update.setMarketId(marketId);
+		update.setSequence(0);
+		update.getTick().setScaled(instrumentId,
+							side >= 0 ? SIDES[side] : null,
+							buffer.getLong(offset + BID_PRICE),
+							buffer.getLong(offset + BID_AMOUNT),
+							buffer.getLong(offset + OFFER_PRICE),
+							buffer.getLong(offset + OFFER_AMOUNT));
+		return true;
+	}
+}
@@ -0,0 +1,200 @@
+package com.mywork.markets.feed;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.utils.UpdatesProvider;
+
+/**
+ * Feeds the quotes of a venue's TCP feed, in the {@link QuoteCodec QuoteCodec} protocol, to the consumer
+ * instead of creating random updates. Plugs into any provider taking an update source, eg
+ * <code>new MultiThreadProvider(topology, config, consumer -> new TcpFeedHandler(consumer, address), journal)</code>.
+ *
+ * The channel is non-blocking and read through a selector, into one direct buffer reused for the life of
+ * the handler. Quotes are decoded in place from that buffer into one reused update handed to the consumer -
+ * the provider copies it into its ring slots - so nothing is copied or allocated per quote. A frame split
+ * across reads stays in the buffer, compacted to its start, until the rest arrives.
+ *
+ * When the venue closes the connection, or it fails or sends a frame that cannot be read, the handler
+ * reconnects - after the reconnect interval, doubling up to {@link #MAX_RECONNECT_NANOS MAX_RECONNECT_NANOS}
+ * while connecting keeps failing. Quotes with a market or instrument id not in the
+ * {@link com.mywork.markets.SymbolRegistry SymbolRegistry}, or an unknown side, are skipped and counted
+ * as rejected - the rest of the feed is still good. So are quotes that fail to decode or that the consumer
+ * throws on. Updates are stamped with the time of the read they arrived in.
+ */
+public class TcpFeedHandler extends UpdatesProvider {
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	public static final long DEFAULT_RECONNECT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	public static final long MAX_RECONNECT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	//longest wait for the channel before checking if we have to stop
+	private static final long SELECT_MILLIS = 100;
+
+	private final InetSocketAddress address;
+
+	private final long reconnectNanos;
+
+	private final ByteBuffer buffer;
+
+	//reused for every update - consumers copy what they need before returning
+	private final DefaultMarketUpdate update = new DefaultMarketUpdate();
+
+	private volatile long connections;
+
+	private volatile long quotes;
+
+	private volatile long rejected;
+
+	public TcpFeedHandler(Consumer<MarketUpdate> consumer, InetSocketAddress address) {
+		this(consumer, address, DEFAULT_BUFFER_SIZE, DEFAULT_RECONNECT_NANOS);
+	}
+
+	/**
+	 * @param address - the venue's feed
+	 * @param bufferSize - bytes read at most at once, also the largest frame that can be read
+	 * @param reconnectNanos - time waited before reconnecting
+	 */
+	public TcpFeedHandler(Consumer<MarketUpdate> consumer, InetSocketAddress address, int bufferSize,
+							long reconnectNanos) {
+		super(consumer);
+		if(bufferSize < QuoteCodec.LENGTH_SIZE + QuoteCodec.QUOTE_SIZE) {
+			throw new IllegalArgumentException("Buffer of " + bufferSize + " bytes cannot hold a quote");
+		}
+		if(reconnectNanos <= 0) {
+			throw new IllegalArgumentException("Reconnect interval must be positive - " + reconnectNanos);
+		}
+		this.address = address;
+		this.reconnectNanos = reconnectNanos;
+		this.buffer = QuoteCodec.allocate(bufferSize);
+	}
+
+	@Override
+	public void run() {
+		long backoff = reconnectNanos;
+		while(!stop && !Thread.currentThread().isInterrupted()) {
+			backoff = connect() ? reconnectNanos : Math.min(backoff * 2, MAX_RECONNECT_NANOS);
+			if(!stop) {
+				LockSupport.parkNanos(backoff);
+			}
+		}
+		stop = true;
+		System.out.println("Updates Provider shut down");
+	}
+
+	//reads the feed until it is closed, fails or we have to stop - returns whether it connected
+	private boolean connect() {
+		boolean connected = false;
+		buffer.clear();
+		try(SocketChannel channel = SocketChannel.open(); Selector selector = Selector.open()) {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			connected = channel.connect(address);
+			if(connected) {
+				connections++;
+			}
+			SelectionKey key = channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT);
+			while(!stop && !Thread.currentThread().isInterrupted()) {
+				if(selector.select(SELECT_MILLIS) == 0) {
+					continue;
+				}
+				selector.selectedKeys().clear();
+				if(!connected) {
+					if(channel.finishConnect()) {
+						connected = true;
+						connections++;
+						key.interestOps(SelectionKey.OP_READ);
+					}
+					continue;
+				}
+
+				int read = channel.read(buffer);
+				if(read < 0) {
+					System.err.println("Feed closed by " + address);
+					break;
+				}
+				long ingressNanos = System.nanoTime();
+				buffer.flip();
+				quotes += decode(buffer, ingressNanos);
+				buffer.compact();
+			}
+		} catch(IOException | RuntimeException ex) {
+			//unchecked too, eg an address that does not resolve - the next attempt may do better
+			System.err.println("Feed from " + address + " failed - " + ex);
+		}
+		return connected;
+	}
+
+	/**
+	 * decodes the whole frames between the buffer's position and limit, handing each quote to the consumer,
+	 * and moves the position to the start of the first partial frame
+	 * @return number of quotes decoded - quotes that cannot be decoded, or that the consumer throws on,
+	 *         are counted as rejected instead
+	 * @throws IOException if a frame's length cannot be right
+	 */
+	int decode(ByteBuffer buffer, long ingressNanos) throws IOException {
+		int decoded = 0;
+		while(buffer.remaining() >= QuoteCodec.LENGTH_SIZE) {
+			int position = buffer.position();
+			int length = buffer.getInt(position);
+			if(length < 2 || length > buffer.capacity() - QuoteCodec.LENGTH_SIZE) {
+				throw new IOException("Frame of " + length + " bytes cannot be read");
+			}
+			if(buffer.remaining() < QuoteCodec.LENGTH_SIZE + length) {
+				break;
+			}
+			int offset = position + QuoteCodec.LENGTH_SIZE;
+			//unknown templates and heartbeats are skipped
+			if(QuoteCodec.template(buffer, offset) == QuoteCodec.QUOTE && length >= QuoteCodec.QUOTE_SIZE) {
+				try {
+					if(QuoteCodec.decodeQuote(buffer, offset, update)) {
+						update.setIngressNanos(ingressNanos);
+						consumer.accept(update);
+						decoded++;
+					} else {
+						rejected++;
+					}
+				} catch(RuntimeException ex) {
+					//the frame was read whole, so the next one is still good
+					rejected++;
+					System.err.println("Skipped quote from " + address + " - " + ex);
+				}
+			}
+			buffer.position(offset + length);
+		}
+		return decoded;
+	}
+
+	/**
+	 * @return number of times the feed was connected to
+	 */
+	public long getConnections() {
+		return connections;
+	}
+
+	/**
+	 * @return number of quotes decoded
+	 */
+	public long getQuotes() {
+		return quotes;
+	}
+
+	/**
+	 * @return number of quotes skipped for an unknown market, instrument or side, or as decoding or consuming them failed
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+}
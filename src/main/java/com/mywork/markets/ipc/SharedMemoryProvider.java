@@ -0,0 +1,47 @@
+package com.mywork.markets.ipc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import com.mywork.markets.metrics.Metrics;
+import com.mywork.markets.providers.SimpleProvider;
+
+/**
+ * Provider for a process on the same host as the one publishing market data into a shared memory ring
+ * with a {@link SharedMemoryPublisher SharedMemoryPublisher}. Subscribers are called on the provider's
+ * thread as with {@link SimpleProvider SimpleProvider}, with updates read straight from the shared memory -
+ * no socket or kernel network stack in between.
+ *
+ * The ring is attached to when the provider is created, and updates published from then on are delivered
+ * once it is started.
+ */
+public class SharedMemoryProvider extends SimpleProvider {
+
+	/** parks for 50us between polls once the ring has been empty for a while */
+	public static final long DEFAULT_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	/**
+	 * @throws UncheckedIOException if the file does not exist or is not a ring
+	 */
+	public SharedMemoryProvider(Path file) {
+		this(file, DEFAULT_IDLE_NANOS, Metrics.DEFAULT);
+	}
+
+	/**
+	 * @param file - the ring file, eg {@link SharedMemoryPublisher#file(String) SharedMemoryPublisher.file}
+	 * @param idleNanos - time parked between polls of an empty ring, 0 to spin
+	 * @param metrics - where the dispatch latency is recorded - from ingress in the publishing process
+	 * @throws UncheckedIOException if the file does not exist or is not a ring
+	 */
+	public SharedMemoryProvider(Path file, long idleNanos, Metrics metrics) {
+		super(consumer -> {
+				try {
+					return new SharedMemoryUpdatesProvider(consumer, file, idleNanos);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Could not attach to shared memory ring [" + file + "]", e);
+				}
+			}, update -> {}, metrics);
+	}
+}
@@ -0,0 +1,84 @@
+package com.mywork.markets.ipc;
+
+import static com.mywork.markets.ipc.SharedMemoryRing.UNSAFE;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Tick;
+
+/**
+ * Publishes every update it is given into a shared memory ring - see {@link SharedMemoryRing SharedMemoryRing}
+ * for the format - for {@link SharedMemoryProvider SharedMemoryProvider}s in other processes on the host.
+ * Plugs into a provider as its journal tee, eg
+ * <code>new SimpleProvider(UpdatesProvider::new, new SharedMemoryPublisher(SharedMemoryPublisher.file("md"), 4096))</code>.
+ *
+ * Publishing writes the update into its slot and moves the cursor on with ordered puts - no system call,
+ * lock or allocation - and never waits for readers. Readers a whole ring behind lose updates.
+ *
+ * NOT thread-safe - the ring has one writer, eg the provider's feed thread.
+ */
+public class SharedMemoryPublisher implements Consumer<MarketUpdate>, AutoCloseable {
+
+	private final SharedMemoryRing ring;
+
+	//sequence of the last update published
+	private long sequence;
+
+	/**
+	 * @param file - the ring file, created if it does not exist. An existing ring carries on after its cursor.
+	 * @param capacity - number of updates the ring holds, a power of 2
+	 * @throws IllegalArgumentException if the capacity is not a power of 2
+	 * @throws IOException if the file is not a ring of the same capacity
+	 */
+	public SharedMemoryPublisher(Path file, int capacity) throws IOException {
+		this.ring = SharedMemoryRing.create(file, capacity);
+		this.sequence = ring.cursor();
+	}
+
+	/**
+	 * @return the file of the named ring under /dev/shm
+	 */
+	public static Path file(String name) {
+		return SharedMemoryRing.DEFAULT_DIRECTORY.resolve(name);
+	}
+
+	@Override
+	public void accept(MarketUpdate update) {
+		long next = sequence + 1;
+		long slot = ring.slot(next);
+		Tick tick = update.getTick();
+
+		//readers that see the negated sequence, or another one, know the slot is not the update they want
+		UNSAFE.putOrderedLong(null, slot + SharedMemoryRing.SEQUENCE, -next);
+		UNSAFE.storeFence();
+		UNSAFE.putLong(slot + SharedMemoryRing.INGRESS_NANOS, update.getIngressNanos());
+		UNSAFE.putInt(slot + SharedMemoryRing.MARKET, update.getMarketId());
+		UNSAFE.putInt(slot + SharedMemoryRing.INSTRUMENT, tick.getInstrumentId());
+		UNSAFE.putInt(slot + SharedMemoryRing.SIDE, null == tick.getSide() ? -1 : tick.getSide().ordinal());
+		UNSAFE.putLong(slot + SharedMemoryRing.BID_PRICE, tick.getScaledBidPrice());
+		UNSAFE.putLong(slot + SharedMemoryRing.BID_AMOUNT, tick.getScaledBidAmount());
+		UNSAFE.putLong(slot + SharedMemoryRing.OFFER_PRICE, tick.getScaledOfferPrice());
+		UNSAFE.putLong(slot + SharedMemoryRing.OFFER_AMOUNT, tick.getScaledOfferAmount());
+		UNSAFE.putOrderedLong(null, slot + SharedMemoryRing.SEQUENCE, next);
+
+		ring.publishCursor(next);
+		sequence = next;
+	}
+
+	/**
+	 * @return sequence of the last update published, 0 if none
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * the file stays for readers still attached - delete it once they have stopped
+	 */
+	@Override
+	public void close() {
+	}
+}
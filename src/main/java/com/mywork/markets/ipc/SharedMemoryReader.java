@@ -0,0 +1,108 @@
+package com.mywork.markets.ipc;
+
+import static com.mywork.markets.ipc.SharedMemoryRing.UNSAFE;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.Side;
+
+/**
+ * Reads the updates a {@link SharedMemoryPublisher SharedMemoryPublisher} publishes into a shared memory ring,
+ * from the first one published after the reader attaches. Each update is read straight from the shared
+ * memory into an update given by the caller - no copy through buffers, system call or allocation.
+ *
+ * The slot's sequence is read before and after the update: if either is not the sequence wanted, the writer
+ * has lapped the reader and it skips to the oldest update still in the ring, counting the ones it lost.
+ *
+ * NOT thread-safe - one reader per thread. Any number of readers can attach to the same ring.
+ */
+public class SharedMemoryReader {
+
+	private static final Side[] SIDES = Side.values();
+
+	private final SharedMemoryRing ring;
+
+	//sequence of the last update read
+	private long sequence;
+
+	//cursor as last read from the ring - read again only when caught up with it
+	private long cursor;
+
+	private long lost;
+
+	/**
+	 * @throws IOException if the file does not exist or is not a ring
+	 */
+	public SharedMemoryReader(Path file) throws IOException {
+		this.ring = SharedMemoryRing.attach(file);
+		this.cursor = ring.cursor();
+		this.sequence = cursor;
+	}
+
+	/**
+	 * reads the next update into the given update
+	 * @return false if there is no update after the last one read yet
+	 */
+	public boolean read(DefaultMarketUpdate update) {
+		while(true) {
+			long next = sequence + 1;
+			if(next > cursor) {
+				cursor = ring.cursor();
+				if(next > cursor) {
+					return false;
+				}
+			}
+
+			long slot = ring.slot(next);
+			if(UNSAFE.getLongVolatile(null, slot + SharedMemoryRing.SEQUENCE) == next) {
+				long ingressNanos = UNSAFE.getLong(slot + SharedMemoryRing.INGRESS_NANOS);
+				int market = UNSAFE.getInt(slot + SharedMemoryRing.MARKET);
+				int instrument = UNSAFE.getInt(slot + SharedMemoryRing.INSTRUMENT);
+				int side = UNSAFE.getInt(slot + SharedMemoryRing.SIDE);
+				long bidPrice = UNSAFE.getLong(slot + SharedMemoryRing.BID_PRICE);
+				long bidAmount = UNSAFE.getLong(slot + SharedMemoryRing.BID_AMOUNT);
+				long offerPrice = UNSAFE.getLong(slot + SharedMemoryRing.OFFER_PRICE);
+				long offerAmount = UNSAFE.getLong(slot + SharedMemoryRing.OFFER_AMOUNT);
+				UNSAFE.loadFence();
+				//still the same update - the writer did not start overwriting the slot while it was read
+				if(UNSAFE.getLongVolatile(null, slot + SharedMemoryRing.SEQUENCE) == next) {
+					update.setMarketId(market);
+					update.setIngressNanos(ingressNanos);
+					update.setSequence(0);
+					update.getTick().setScaled(instrument, side >= 0 && side < SIDES.length ? SIDES[side] : null,
+												bidPrice, bidAmount, offerPrice, offerAmount);
+					sequence = next;
+					return true;
+				}
+			}
+			skip();
+		}
+	}
+
+	//lapped - on to the oldest update still in the ring. That is the slot the writer overwrites next,
+	//so if it is overwritten before it is read the sequence check fails and the reader skips again
+	private void skip() {
+		cursor = ring.cursor();
+		long oldest = cursor - ring.capacity() + 1;
+		if(oldest > sequence + 1) {
+			lost += oldest - sequence - 1;
+			sequence = oldest - 1;
+		}
+	}
+
+	/**
+	 * @return ring sequence of the last update read
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return number of updates the writer overwrote before they were read
+	 */
+	public long getLost() {
+		return lost;
+	}
+}
@@ -0,0 +1,179 @@
+package com.mywork.markets.ipc;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import com.lmax.disruptor.util.Util;
+
+import sun.misc.Unsafe;
+
+/**
+ * Layout of and access to a shared memory ring file - one writer, any number of readers in other processes.
+ * The file is a header followed by a power of 2 number of 64 byte slots, in native byte order as
+ * it is only read on the same host:
+ *
+ * Header - 128 bytes, the cursor on a cache line of its own
+ * offset 0  int    magic
+ * offset 4  int    version
+ * offset 8  int    capacity in slots
+ * offset 64 long   cursor - sequence of the last update published, starting at 1
+ *
+ * Slot - update with sequence s is in slot (s - 1) &amp; (capacity - 1)
+ * offset 0  long   sequence - negated while the slot is being written
+ * offset 8  long   ingress nanos - System.nanoTime is comparable across processes on the host
+ * offset 16 int    market id
+ * offset 20 int    instrument id
+ * offset 24 int    side ordinal, -1 for none
+ * offset 28 int    reserved
+ * offset 32 long   bid price
+ * offset 40 long   bid amount
+ * offset 48 long   offer price
+ * offset 56 long   offer amount
+ *
+ * Prices and amounts are {@link com.mywork.markets.FixedPoint FixedPoint} units, ids are
+ * {@link com.mywork.markets.SymbolRegistry SymbolRegistry} ids. Journal sequences are not carried.
+ *
+ * The writer never waits for readers. A reader that falls a whole ring behind sees slot sequences
+ * past the one it wants and skips ahead, see {@link SharedMemoryReader SharedMemoryReader}.
+ * Ordering between the writer and readers uses ordered puts and volatile gets on the mapped memory.
+ */
+final class SharedMemoryRing {
+
+	/** tmpfs on linux - memory that other processes can map without going to disk */
+	static final Path DEFAULT_DIRECTORY = Paths.get("/dev/shm");
+
+	static final int MAGIC = 0x56524E47;
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 128;
+	static final int HEADER_MAGIC = 0;
+	static final int HEADER_VERSION = 4;
+	static final int HEADER_CAPACITY = 8;
+	static final int HEADER_CURSOR = 64;
+
+	static final int SLOT_SIZE = 64;
+	static final int SEQUENCE = 0;
+	static final int INGRESS_NANOS = 8;
+	static final int MARKET = 16;
+	static final int INSTRUMENT = 20;
+	static final int SIDE = 24;
+	static final int BID_PRICE = 32;
+	static final int BID_AMOUNT = 40;
+	static final int OFFER_PRICE = 48;
+	static final int OFFER_AMOUNT = 56;
+
+	//the one place Unsafe is named - the publisher and reader import this field
+	static final Unsafe UNSAFE = Util.getUnsafe();
+
+	private static final long ADDRESS_OFFSET;
+
+	static {
+		try {
+			ADDRESS_OFFSET = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+		} catch (NoSuchFieldException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	//kept so the mapping is not unmapped while the address is in use
+	private final MappedByteBuffer buffer;
+
+	private final long address;
+
+	private final int capacity;
+
+	private final long mask;
+
+	private SharedMemoryRing(MappedByteBuffer buffer, int capacity) {
+		this.buffer = buffer;
+		this.address = UNSAFE.getLong(buffer, ADDRESS_OFFSET);
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Maps the ring for the writer - creating the file if it does not exist. An existing ring is
+	 * kept as it is so attached readers carry on.
+	 * @throws IllegalArgumentException if the capacity is not a power of 2
+	 * @throws IOException if the file is not a ring of the same capacity
+	 */
+	static SharedMemoryRing create(Path file, int capacity) throws IOException {
+		if(capacity < 1 || Integer.bitCount(capacity) != 1 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE) {
+			throw new IllegalArgumentException("Ring capacity must be a power of 2 - " + capacity);
+		}
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+													StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			boolean exists = channel.size() > 0;
+			SharedMemoryRing ring = new SharedMemoryRing(channel.map(FileChannel.MapMode.READ_WRITE, 0,
+															HEADER_SIZE + (long)capacity * SLOT_SIZE), capacity);
+			if(!exists) {
+				UNSAFE.putInt(ring.address + HEADER_CAPACITY, capacity);
+				UNSAFE.putInt(ring.address + HEADER_VERSION, VERSION);
+				//magic last - readers check it to see the header is written
+				UNSAFE.putOrderedInt(null, ring.address + HEADER_MAGIC, MAGIC);
+			} else {
+				ring.check(file);
+				if(UNSAFE.getInt(ring.address + HEADER_CAPACITY) != capacity) {
+					throw new IOException("Ring [" + file + "] has capacity [" + UNSAFE.getInt(ring.address + HEADER_CAPACITY)
+											+ "] not [" + capacity + "]");
+				}
+			}
+			return ring;
+		}
+	}
+
+	/**
+	 * Maps an existing ring for a reader
+	 * @throws IOException if the file does not exist or is not a ring
+	 */
+	static SharedMemoryRing attach(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			if(channel.size() < HEADER_SIZE) {
+				throw new IOException("Not a shared memory ring [" + file + "]");
+			}
+			//map the header to find the capacity, then the whole ring
+			SharedMemoryRing header = new SharedMemoryRing(channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE), 1);
+			header.check(file);
+			int capacity = UNSAFE.getInt(header.address + HEADER_CAPACITY);
+			if(Integer.bitCount(capacity) != 1 || channel.size() < HEADER_SIZE + (long)capacity * SLOT_SIZE) {
+				throw new IOException("Shared memory ring [" + file + "] is truncated");
+			}
+			return new SharedMemoryRing(channel.map(FileChannel.MapMode.READ_WRITE, 0,
+											HEADER_SIZE + (long)capacity * SLOT_SIZE), capacity);
+		}
+	}
+
+	private void check(Path file) throws IOException {
+		if(UNSAFE.getIntVolatile(null, address + HEADER_MAGIC) != MAGIC) {
+			throw new IOException("Not a shared memory ring [" + file + "]");
+		}
+		if(UNSAFE.getInt(address + HEADER_VERSION) != VERSION) {
+			throw new IOException("Unknown shared memory ring version [" + UNSAFE.getInt(address + HEADER_VERSION)
+									+ "] in [" + file + "]");
+		}
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return address of the slot of the sequence
+	 */
+	long slot(long sequence) {
+		return address + HEADER_SIZE + ((sequence - 1) & mask) * SLOT_SIZE;
+	}
+
+	long cursor() {
+		return UNSAFE.getLongVolatile(null, address + HEADER_CURSOR);
+	}
+
+	void publishCursor(long sequence) {
+		UNSAFE.putOrderedLong(null, address + HEADER_CURSOR, sequence);
+	}
+}
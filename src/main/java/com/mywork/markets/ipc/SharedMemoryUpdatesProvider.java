@@ -0,0 +1,67 @@
+package com.mywork.markets.ipc;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.utils.UpdatesProvider;
+
+/**
+ * Feeds the updates of a shared memory ring, published by a {@link SharedMemoryPublisher SharedMemoryPublisher}
+ * in another process, to the consumer instead of creating random updates.
+ * Polls the ring - spinning for a while when it is empty, then parking for the idle time between polls.
+ * An idle time of 0 spins without parking, for the lowest latency on a core of its own.
+ */
+public class SharedMemoryUpdatesProvider extends UpdatesProvider {
+
+	//empty polls before parking
+	private static final int SPINS = 10_000;
+
+	private final SharedMemoryReader reader;
+
+	private final long idleNanos;
+
+	//reused for every update - consumers copy what they need before returning
+	private final DefaultMarketUpdate update = new DefaultMarketUpdate();
+
+	/**
+	 * Attaches to the ring - updates published from then on are fed once run starts.
+	 * @param file - the ring file
+	 * @param idleNanos - time parked between polls of an empty ring, 0 to spin
+	 * @throws IOException if the file does not exist or is not a ring
+	 */
+	public SharedMemoryUpdatesProvider(Consumer<MarketUpdate> consumer, Path file, long idleNanos) throws IOException {
+		super(consumer);
+		this.reader = new SharedMemoryReader(file);
+		this.idleNanos = idleNanos;
+	}
+
+	@Override
+	public void run() {
+		try {
+			int empty = 0;
+			while(!stop && !Thread.currentThread().isInterrupted()) {
+				if(reader.read(update)) {
+					empty = 0;
+					consumer.accept(update);
+				} else if(idleNanos > 0 && ++empty > SPINS) {
+					LockSupport.parkNanos(idleNanos);
+				}
+			}
+		} catch(Exception ex) {
+			System.err.println("Caught exception, quitting - " + ex);
+		}
+		stop = true;
+		System.out.println("Updates Provider shut down");
+	}
+
+	/**
+	 * @return number of updates lost by falling a whole ring behind - read on the provider's thread
+	 */
+	public long getLost() {
+		return reader.getLost();
+	}
+}
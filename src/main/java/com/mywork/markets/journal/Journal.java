@@ -0,0 +1,94 @@
+package com.mywork.markets.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Layout of the journal files.
+ * A journal is a directory of segment files named by the sequence of their first record, 
+ * zero padded so that names sort in sequence order. A segment is an array of fixed width 
+ * little-endian records:
+ * 
+ * offset 0  long   sequence - starts at 1, 0 marks the end of the written records
+ * offset 8  long   timestamp in nanos from the writer's clock
+ * offset 16 int    market id
+ * offset 20 int    instrument id
+ * offset 24 int    side ordinal, -1 for none
+ * offset 28 int    format - {@link #FIXED_POINT FIXED_POINT}, 0 in journals written before it
+ * offset 32 long   bid price
+ * offset 40 long   bid amount
+ * offset 48 long   offer price
+ * offset 56 long   offer amount
+ * 
+ * Prices and amounts are {@link com.mywork.markets.FixedPoint FixedPoint} units. Records of format 0
+ * hold them as doubles and are converted when read.
+ * 
+ * Market/instrument ids are {@link com.mywork.markets.SymbolRegistry SymbolRegistry} ids - symbols 
+ * added at runtime must be added in the same order when replaying.
+ */
+final class Journal {
+
+	static final int RECORD_SIZE = 64;
+	
+	static final int SEQUENCE = 0;
+	static final int TIMESTAMP = 8;
+	static final int MARKET = 16;
+	static final int INSTRUMENT = 20;
+	static final int SIDE = 24;
+	static final int FORMAT = 28;
+	static final int BID_PRICE = 32;
+	static final int BID_AMOUNT = 40;
+	static final int OFFER_PRICE = 48;
+	static final int OFFER_AMOUNT = 56;
+	
+	//format of records with fixed-point prices and amounts
+	static final int FIXED_POINT = 1;
+	
+	private static final String SUFFIX = ".journal";
+	
+	private Journal() {}
+	
+	static Path segment(Path directory, long firstSequence) {
+		return directory.resolve(String.format("%020d%s", firstSequence, SUFFIX));
+	}
+	
+	static long firstSequence(Path segment) {
+		String name = segment.getFileName().toString();
+		return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+	}
+	
+	/**
+	 * @return segments of the journal in sequence order
+	 */
+	static List<Path> segments(Path directory) throws IOException {
+		List<Path> segments = new ArrayList<>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			stream.forEach(segments::add);
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+	
+	/**
+	 * map the whole segment - creating it with the given number of records if it does not exist
+	 */
+	static MappedByteBuffer map(Path segment, int records, boolean write) throws IOException {
+		if(write) {
+			try(FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, 
+														StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long)records * RECORD_SIZE);
+			}
+		}
+		try(FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+}
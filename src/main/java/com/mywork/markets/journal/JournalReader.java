@@ -0,0 +1,127 @@
+package com.mywork.markets.journal;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.Side;
+
+/**
+ * Reads a journal written by {@link JournalWriter JournalWriter} in sequence order.
+ * Segments are memory-mapped and each record is decoded straight from the mapping into
+ * an update given by the caller, so reading does not copy through buffers or allocate.
+ * 
+ * NOT thread-safe.
+ */
+public class JournalReader {
+
+	private static final Side[] SIDES = Side.values();
+
+	private final List<Path> segments;
+	
+	//index of the mapped segment in segments
+	private int segmentIndex = -1;
+	
+	private MappedByteBuffer segment;
+	
+	private int position;
+	
+	private long sequence;
+	
+	private long timestamp;
+	
+	/**
+	 * reads from the start of the journal
+	 */
+	public JournalReader(Path directory) throws IOException {
+		this(directory, 1);
+	}
+
+	/**
+	 * @param fromSequence - sequence of the first record to read
+	 */
+	public JournalReader(Path directory, long fromSequence) throws IOException {
+		segments = Journal.segments(directory);
+		
+		//segments are named by their first sequence and records are fixed width - no need to scan
+		int index = 0;
+		while(index + 1 < segments.size() && Journal.firstSequence(segments.get(index + 1)) <= fromSequence) {
+			index++;
+		}
+		if(!segments.isEmpty()) {
+			open(index);
+			position = (int)Math.max(0, Math.min(fromSequence - Journal.firstSequence(segments.get(index)), 
+												segment.capacity() / Journal.RECORD_SIZE));
+		}
+	}
+	
+	private void open(int index) throws IOException {
+		segmentIndex = index;
+		segment = Journal.map(segments.get(index), 0, false);
+		segment.order(ByteOrder.LITTLE_ENDIAN);
+		position = 0;
+	}
+	
+	/**
+	 * decodes the next record into the given update
+	 * @return false if there are no more records
+	 */
+	public boolean read(DefaultMarketUpdate update) throws IOException {
+		if(null == segment) {
+			return false;
+		}
+		if(position == segment.capacity() / Journal.RECORD_SIZE) {
+			if(segmentIndex + 1 == segments.size()) {
+				return false;
+			}
+			open(segmentIndex + 1);
+		}
+		
+		int offset = position * Journal.RECORD_SIZE;
+		long next = segment.getLong(offset + Journal.SEQUENCE);
+		if(next == 0) {
+			return false;
+		}
+		
+		sequence = next;
+		timestamp = segment.getLong(offset + Journal.TIMESTAMP);
+		int side = segment.getInt(offset + Journal.SIDE);
+		if(segment.getInt(offset + Journal.FORMAT) == Journal.FIXED_POINT) {
+			update.setScaled(segment.getInt(offset + Journal.MARKET), 
+						segment.getInt(offset + Journal.INSTRUMENT), 
+						side >= 0 && side < SIDES.length ? SIDES[side] : null, 
+						segment.getLong(offset + Journal.BID_PRICE), 
+						segment.getLong(offset + Journal.BID_AMOUNT), 
+						segment.getLong(offset + Journal.OFFER_PRICE), 
+						segment.getLong(offset + Journal.OFFER_AMOUNT));
+		} else {
+			update.set(segment.getInt(offset + Journal.MARKET), 
+						segment.getInt(offset + Journal.INSTRUMENT), 
+						side >= 0 && side < SIDES.length ? SIDES[side] : null, 
+						segment.getDouble(offset + Journal.BID_PRICE), 
+						segment.getDouble(offset + Journal.BID_AMOUNT), 
+						segment.getDouble(offset + Journal.OFFER_PRICE), 
+						segment.getDouble(offset + Journal.OFFER_AMOUNT));
+		}
+		update.setSequence(next);
+		position++;
+		return true;
+	}
+	
+	/**
+	 * @return sequence of the last record read
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return writer's timestamp of the last record read
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+}
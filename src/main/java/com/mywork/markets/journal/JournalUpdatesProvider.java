@@ -0,0 +1,74 @@
+package com.mywork.markets.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.utils.UpdatesProvider;
+
+/**
+ * Replays a journal to the consumer instead of creating random updates, 
+ * eg to reproduce a day's VWAPs. Stops at the end of the journal.
+ * 
+ * Plugs into a provider in place of the random {@link UpdatesProvider UpdatesProvider}, eg
+ * <code>new SimpleProvider(consumer -> new JournalUpdatesProvider(consumer, dir, Pacing.RECORDED), update -> {})</code>
+ */
+public class JournalUpdatesProvider extends UpdatesProvider {
+
+	/**
+	 * How fast the journal is replayed
+	 */
+	public enum Pacing {
+		/** as fast as the consumer takes updates */
+		FULL_SPEED,
+		/** with the same gaps between updates as when they were written */
+		RECORDED
+	}
+	
+	private final Path directory;
+	
+	private final Pacing pacing;
+	
+	//reused for every update - consumers copy what they need before returning
+	private final DefaultMarketUpdate update = new DefaultMarketUpdate();
+	
+	public JournalUpdatesProvider(Consumer<MarketUpdate> consumer, Path directory, Pacing pacing) {
+		super(consumer);
+		this.directory = directory;
+		this.pacing = pacing;
+	}
+
+	@Override
+	public void run() {
+		try {
+			JournalReader reader = new JournalReader(directory);
+			long start = System.nanoTime();
+			long firstTimestamp = 0;
+			boolean first = true;
+			
+			while(!stop && !Thread.currentThread().isInterrupted() && reader.read(update)) {
+				if(pacing == Pacing.RECORDED) {
+					if(first) {
+						firstTimestamp = reader.getTimestamp();
+						first = false;
+					}
+					long due = start + (reader.getTimestamp() - firstTimestamp);
+					for(long wait = due - System.nanoTime(); wait > 0 && !stop; wait = due - System.nanoTime()) {
+						LockSupport.parkNanos(wait);
+					}
+				}
+				update.setIngressNanos(System.nanoTime());
+				consumer.accept(update);
+			}
+		} catch (IOException e) {
+			System.err.println("Could not replay journal, quitting - " + e);
+		} catch(Exception ex) {
+			System.err.println("Caught exception, quitting - " + ex);
+		}
+		stop = true;
+		System.out.println("Updates Provider shut down");
+	}
+}
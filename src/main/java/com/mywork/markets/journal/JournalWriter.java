@@ -0,0 +1,151 @@
+package com.mywork.markets.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Tick;
+
+/**
+ * Appends every update it is given to a journal - see {@link Journal Journal} for the format.
+ * Records are written straight into memory-mapped segments of a fixed number of records,
+ * and a new segment is mapped when one is full. Writing a record does not allocate, a 
+ * system call is only made when rolling to a new segment or on {@link #flush() flush}.
+ * 
+ * Opening an existing journal carries on after its last record. The sequence of each record
+ * is also set on the update, so stages after the journal can tell how far they have got.
+ * 
+ * NOT thread-safe - meant to be called from the feed thread, eg as the journal of a provider.
+ */
+public class JournalWriter implements Consumer<MarketUpdate>, AutoCloseable {
+
+	private final Path directory;
+	
+	private final int recordsPerSegment;
+	
+	private final LongSupplier clock;
+	
+	private MappedByteBuffer segment;
+	
+	//record index in the current segment to write next
+	private int position;
+	
+	//sequence of the last record written
+	private long sequence;
+	
+	/**
+	 * @param directory - the journal's directory, created if needed
+	 * @param recordsPerSegment - size of each segment file in records
+	 * @param clock - time in nanos stamped on each record, eg System::nanoTime
+	 * @throws IllegalArgumentException if a segment would be more than 2GB
+	 */
+	public JournalWriter(Path directory, int recordsPerSegment, LongSupplier clock) throws IOException {
+		if(recordsPerSegment <= 0 || recordsPerSegment > Integer.MAX_VALUE / Journal.RECORD_SIZE) {
+			throw new IllegalArgumentException("Invalid segment size of [" + recordsPerSegment + "] records");
+		}
+		this.directory = directory;
+		this.recordsPerSegment = recordsPerSegment;
+		this.clock = clock;
+		
+		Files.createDirectories(directory);
+		List<Path> segments = Journal.segments(directory);
+		if(segments.isEmpty()) {
+			open(1);
+		} else {
+			resume(segments.get(segments.size() - 1));
+		}
+	}
+	
+	/**
+	 * find the first unwritten record of the last segment - records are written in order, 
+	 * so a binary search on the sequence being 0
+	 */
+	private void resume(Path last) throws IOException {
+		long first = Journal.firstSequence(last);
+		segment = map(last);
+		int capacity = segment.capacity() / Journal.RECORD_SIZE;
+		int low = 0;
+		int high = capacity;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(segment.getLong(mid * Journal.RECORD_SIZE + Journal.SEQUENCE) != 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		position = low;
+		sequence = first + low - 1;
+		if(position == capacity) {
+			open(sequence + 1);
+		}
+	}
+	
+	private void open(long firstSequence) throws IOException {
+		segment = map(Journal.segment(directory, firstSequence));
+		position = 0;
+	}
+	
+	private MappedByteBuffer map(Path path) throws IOException {
+		MappedByteBuffer buffer = Journal.map(path, recordsPerSegment, true);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+	
+	/**
+	 * appends the update and sets its sequence
+	 * @throws UncheckedIOException if the next segment cannot be created
+	 */
+	@Override
+	public void accept(MarketUpdate update) {
+		if(position == segment.capacity() / Journal.RECORD_SIZE) {
+			try {
+				open(sequence + 1);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not roll journal segment", e);
+			}
+		}
+		
+		Tick tick = update.getTick();
+		int offset = position * Journal.RECORD_SIZE;
+		segment.putLong(offset + Journal.TIMESTAMP, clock.getAsLong());
+		segment.putInt(offset + Journal.MARKET, update.getMarketId());
+		segment.putInt(offset + Journal.INSTRUMENT, tick.getInstrumentId());
+		segment.putInt(offset + Journal.SIDE, null == tick.getSide() ? -1 : tick.getSide().ordinal());
+		segment.putInt(offset + Journal.FORMAT, Journal.FIXED_POINT);
+		segment.putLong(offset + Journal.BID_PRICE, tick.getScaledBidPrice());
+		segment.putLong(offset + Journal.BID_AMOUNT, tick.getScaledBidAmount());
+		segment.putLong(offset + Journal.OFFER_PRICE, tick.getScaledOfferPrice());
+		segment.putLong(offset + Journal.OFFER_AMOUNT, tick.getScaledOfferAmount());
+		//sequence last - a non-zero sequence marks the record as written
+		segment.putLong(offset + Journal.SEQUENCE, ++sequence);
+		position++;
+		update.setSequence(sequence);
+	}
+	
+	/**
+	 * @return sequence of the last record written, 0 if none
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+	
+	/**
+	 * forces the current segment to disk
+	 */
+	public void flush() {
+		segment.force();
+	}
+
+	@Override
+	public void close() {
+		flush();
+	}
+}
@@ -0,0 +1,53 @@
+package com.mywork.markets.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latency histogram for one stage.
+ * Recording goes into an HdrHistogram {@link Recorder Recorder} - wait-free and allocation free, 
+ * so it can be called on the hot path. Snapshots swap out the recorded interval and add it to a 
+ * running total, so they see everything recorded since the recorder was created.
+ * 
+ * Values are in nanos, kept to 3 significant digits and capped at 10 seconds.
+ */
+public class LatencyRecorder {
+
+	static final long HIGHEST_NANOS = TimeUnit.SECONDS.toNanos(10);
+	
+	private final Recorder recorder = new Recorder(HIGHEST_NANOS, 3);
+	
+	//only used when taking snapshots
+	private final Histogram total = new Histogram(HIGHEST_NANOS, 3);
+	private Histogram interval;
+	
+	/**
+	 * @param nanos - the latency, capped at 10s
+	 */
+	public void record(long nanos) {
+		recorder.recordValue(Math.min(Math.max(nanos, 0), HIGHEST_NANOS));
+	}
+	
+	/**
+	 * records the time from the given nanoTime until now
+	 * @param startNanos - a System.nanoTime value. 0 means not stamped and nothing is recorded.
+	 */
+	public void recordSince(long startNanos) {
+		if(startNanos != 0) {
+			record(System.nanoTime() - startNanos);
+		}
+	}
+	
+	public synchronized LatencySnapshot snapshot() {
+		interval = recorder.getIntervalHistogram(interval);
+		total.add(interval);
+		return new LatencySnapshot(total.getTotalCount(), 
+									total.getMean(),
+									total.getValueAtPercentile(50.0),
+									total.getValueAtPercentile(99.0),
+									total.getValueAtPercentile(99.9),
+									total.getMaxValue());
+	}
+}
@@ -0,0 +1,97 @@
+package com.mywork.markets.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Named latency recorders and gauges of the market data pipeline.
+ * Recorders and gauges are created when subscribing/starting, not per update - components keep
+ * the {@link LatencyRecorder LatencyRecorder} they are given and record into it directly.
+ * 
+ * {@link #DEFAULT DEFAULT} is used by the providers unless they are given their own. Components that
+ * can be created more than once name their metrics under a {@link #uniqueName(String) uniqueName}
+ * and remove them when they stop, so instances sharing a metrics instance do not mix.
+ * A metrics instance can be exposed over JMX with {@link #register(String) register}.
+ */
+public class Metrics implements MetricsMXBean {
+
+	public static final Metrics DEFAULT = new Metrics();
+	
+	private final Map<String, LatencyRecorder> latencies = new ConcurrentHashMap<>();
+	
+	private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+	
+	private final Map<String, AtomicInteger> names = new ConcurrentHashMap<>();
+	
+	/**
+	 * @return the prefix and a number not given out for it before by this instance, eg provider-0
+	 */
+	public String uniqueName(String prefix) {
+		return prefix + "-" + names.computeIfAbsent(prefix, key -> new AtomicInteger()).getAndIncrement();
+	}
+	
+	/**
+	 * @return the recorder with the name - created if needed
+	 */
+	public LatencyRecorder latency(String name) {
+		return latencies.computeIfAbsent(name, key -> new LatencyRecorder());
+	}
+	
+	/**
+	 * adds or replaces a recorder - eg one a component kept recording into while it was removed
+	 */
+	public void latency(String name, LatencyRecorder recorder) {
+		latencies.put(name, recorder);
+	}
+	
+	/**
+	 * adds or replaces a gauge. The supplier is called when a snapshot is taken, from any thread.
+	 */
+	public void gauge(String name, LongSupplier value) {
+		gauges.put(name, value);
+	}
+	
+	public void remove(String name) {
+		latencies.remove(name);
+		gauges.remove(name);
+	}
+	
+	/**
+	 * @return latency per name, sorted by name
+	 */
+	@Override
+	public Map<String, LatencySnapshot> getLatencies() {
+		Map<String, LatencySnapshot> snapshot = new TreeMap<>();
+		latencies.forEach((name, recorder) -> snapshot.put(name, recorder.snapshot()));
+		return snapshot;
+	}
+	
+	/**
+	 * @return gauge values per name, sorted by name
+	 */
+	@Override
+	public Map<String, Long> getGauges() {
+		Map<String, Long> snapshot = new TreeMap<>();
+		gauges.forEach((name, gauge) -> snapshot.put(name, gauge.getAsLong()));
+		return snapshot;
+	}
+	
+	/**
+	 * registers this as an MXBean in the platform MBean server
+	 * @param name - value of the name key of the object name
+	 * @return the object name registered
+	 * @throws JMException if it cannot be registered, eg the name is already taken
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("com.mywork.markets:type=Metrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+}
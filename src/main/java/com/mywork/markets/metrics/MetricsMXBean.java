@@ -0,0 +1,19 @@
+package com.mywork.markets.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link Metrics Metrics}
+ */
+public interface MetricsMXBean {
+
+	/**
+	 * @return latency per stage/subscriber in nanos
+	 */
+	Map<String, LatencySnapshot> getLatencies();
+	
+	/**
+	 * @return current value per gauge, eg queue depths
+	 */
+	Map<String, Long> getGauges();
+}
@@ -0,0 +1,57 @@
+package com.mywork.markets.providers;
+
+import java.util.function.Function;
+
+import com.mywork.markets.MarketUpdate;
+
+/**
+ * A subscriber that is told where batches of updates end.
+ * Providers that hand off through a queue deliver every update that is ready in one go -
+ * a batch - through {@link #onUpdate(MarketUpdate, boolean) onUpdate}, flagging the last one.
+ * The subscriber can then do per-update work as updates arrive and defer the rest, eg publishing,
+ * to the end of the batch.
+ *
+ * Subscribe it like any other function. Providers that call subscribers directly on the feed
+ * thread call {@link #apply(Object) apply}, which must treat the update as a batch of one.
+ *
+ * The update is only valid until onUpdate returns for the end of the batch - it is the provider's
+ * pre-allocated event and is reused once the batch is done.
+ */
+public interface BatchSubscriber<R extends MarketUpdate> extends Function<MarketUpdate, R> {
+
+	/**
+	 * @param update - the next update of the batch
+	 * @param endOfBatch - true for the last update of the batch, ie no more updates are ready
+	 */
+	void onUpdate(MarketUpdate update, boolean endOfBatch);
+
+	/**
+	 * Called on the subscriber's thread, between batches, once woken by {@link Provider#wake(Function) Provider.wake}.
+	 * Lets the subscriber do timed work, eg flush, on the thread that gets its updates even when none arrive.
+	 * Does nothing by default.
+	 */
+	default void onWake() {}
+
+	/**
+	 * @return the function itself if it is a batch subscriber, otherwise a batch subscriber that
+	 *         calls the function for each update and ignores the batches
+	 */
+	@SuppressWarnings("unchecked")
+	static BatchSubscriber<? extends MarketUpdate> of(Function<MarketUpdate, ? extends MarketUpdate> function) {
+		if(function instanceof BatchSubscriber) {
+			return (BatchSubscriber<? extends MarketUpdate>) function;
+		}
+		return new BatchSubscriber<MarketUpdate>() {
+
+			@Override
+			public MarketUpdate apply(MarketUpdate update) {
+				return function.apply(update);
+			}
+
+			@Override
+			public void onUpdate(MarketUpdate update, boolean endOfBatch) {
+				function.apply(update);
+			}
+		};
+	}
+}
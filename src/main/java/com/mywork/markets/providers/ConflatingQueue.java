@@ -0,0 +1,320 @@
+package com.mywork.markets.providers;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.Instruments;
+import com.mywork.markets.Listings;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.Side;
+
+/**
+ * Conflating hand-off from the feed threads to one subscriber thread.
+ * Holds only the latest update per instrument/market plus a bit per instrument/market 
+ * marking it as not yet delivered. A feed thread overwrites the slot and sets the bit - 
+ * it never waits for the subscriber. The subscriber thread clears the bits and delivers the 
+ * latest value of each marked slot, so a slow subscriber skips intermediate quotes but
+ * always sees the freshest one.
+ * 
+ * Each slot is a run of longs guarded by a version (a seqlock):
+ * a writer makes the version odd while writing, the reader retries if the version was odd 
+ * or changed while it read. Writers take the slot by swapping the version from even to odd, 
+ * so several feed threads can offer - a writer only waits for another writer of the same slot.
+ * 
+ * Slots are indexed by the {@link Listings Listings} key. When a feed 
+ * thread sees a key past the end it copies the slots into larger arrays and publishes them with 
+ * new bits, then copies the old bits over. It takes each old slot like a writer before copying it
+ * and never gives it back, so writers of the old slots wait for the new arrays instead of writing
+ * where the copy has already been. A writer that finds the arrays replaced after it wrote writes 
+ * again into the new ones - the subscriber may then deliver an update twice, but never misses the latest one.
+ *
+ * Each drain is a batch for a {@link BatchSubscriber BatchSubscriber} - the end of the batch is
+ * the last marked slot seen. Slots marked while the last one is delivered start the next batch.
+ */
+public class ConflatingQueue implements Runnable {
+
+	//version, market and instrument, sequence, side (-1 for none), bidPrice, bidAmount, offerPrice, offerAmount, ingress
+	private static final int FIELDS = 9;
+	
+	private static final Side[] SIDES = Side.values();
+	
+	//how long an idle subscriber parks before checking again if a wake up was missed
+	private static final long MAX_PARK_NANOS = 1_000_000;
+	
+	//replaced by a feed thread when they grow
+	private volatile Tables tables = new Tables(Instruments.SIZE * Markets.SIZE);
+	
+	private final BatchSubscriber<? extends MarketUpdate> consumer;
+	
+	private final WaitStrategies waitStrategy;
+	
+	//only used by the subscriber thread
+	private final DefaultMarketUpdate update = new DefaultMarketUpdate();
+	
+	private volatile boolean running = true;
+	
+	private volatile boolean parked;
+	
+	//set by wake, cleared by the subscriber thread before it calls onWake
+	private volatile boolean woken;
+	
+	private volatile Thread thread;
+	
+	/**
+	 * @param consumer - the subscriber
+	 * @param waitStrategy - how the subscriber thread waits when there is nothing to deliver.
+	 *        BUSY_SPIN spins, YIELDING yields and the others park until woken by the feed thread.
+	 */
+	public ConflatingQueue(Function<MarketUpdate, ? extends MarketUpdate> consumer, WaitStrategies waitStrategy) {
+		this.consumer = BatchSubscriber.of(consumer);
+		this.waitStrategy = waitStrategy;
+	}
+	
+	/**
+	 * Called by the feed threads. Replaces any undelivered update for the same instrument/market.
+	 * An instrument/market without a {@link Listings Listings} key - ie never 
+	 * subscribed to - is dropped, as the lookup never gives out keys.
+	 */
+	public void offer(MarketUpdate marketUpdate) {
+		
+		int key = Listings.find(marketUpdate.getTick().getInstrumentId(), marketUpdate.getMarketId());
+		if(key < 0) {
+			return;
+		}
+		int base = key * FIELDS;
+		while(true) {
+			Tables tables = this.tables;
+			if(base >= tables.slots.length()) {
+				grow(key);
+			} else if(write(tables, base, marketUpdate)) {
+				markDirty(tables.dirty, key);
+				//grown since - the bit may have been marked after it was copied
+				if(tables == this.tables) {
+					break;
+				}
+			}
+		}
+		
+		if(parked) {
+			LockSupport.unpark(thread);
+		}
+	}
+	
+	/**
+	 * @return false if the slot was taken by {@link #grow(int) grow} - write to the new tables
+	 */
+	private boolean write(Tables tables, int base, MarketUpdate marketUpdate) {
+		AtomicLongArray slots = tables.slots;
+		long version = slots.get(base);
+		while((version & 1) != 0 || !slots.compareAndSet(base, version, version + 1)) {
+			//once replaced, every old slot is held by grow for good
+			if((version & 1) != 0 && tables != this.tables) {
+				return false;
+			}
+			version = slots.get(base);
+		}
+		//ordered stores - they cannot become visible before the odd version above
+		slots.lazySet(base + 1, ((long)marketUpdate.getMarketId() << 32) | (marketUpdate.getTick().getInstrumentId() & 0xFFFFFFFFL));
+		slots.lazySet(base + 2, marketUpdate.getSequence());
+		slots.lazySet(base + 3, null == marketUpdate.getTick().getSide() ? -1 : marketUpdate.getTick().getSide().ordinal());
+		slots.lazySet(base + 4, marketUpdate.getTick().getScaledBidPrice());
+		slots.lazySet(base + 5, marketUpdate.getTick().getScaledBidAmount());
+		slots.lazySet(base + 6, marketUpdate.getTick().getScaledOfferPrice());
+		slots.lazySet(base + 7, marketUpdate.getTick().getScaledOfferAmount());
+		slots.lazySet(base + 8, marketUpdate.getIngressNanos());
+		slots.set(base, version + 2);
+		return true;
+	}
+	
+	/**
+	 * Delivers the latest update of every marked instrument/market to the subscriber. 
+	 * Called by the subscriber thread.
+	 * @return number of updates delivered
+	 */
+	public int drain() {
+		
+		//a bit set in these words always has its slot in the slots read after them
+		AtomicLongArray dirty = this.tables.dirty;
+		int delivered = 0;
+		for(int word = 0; word < dirty.length(); word++) {
+			if(dirty.get(word) == 0) {
+				continue;
+			}
+			//clear before reading, so a write racing with the read marks the slot again
+			long bits = dirty.getAndSet(word, 0);
+			while(bits != 0) {
+				int key = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				read(key);
+				consumer.onUpdate(update, bits == 0 && !hasDirty(word + 1));
+				delivered++;
+			}
+		}
+		return delivered;
+	}
+	
+	/**
+	 * @return number of instrument/markets with an update not yet delivered - the queue depth,
+	 *         can be read from any thread
+	 */
+	public int pending() {
+		AtomicLongArray dirty = this.tables.dirty;
+		int pending = 0;
+		for(int word = 0; word < dirty.length(); word++) {
+			pending += Long.bitCount(dirty.get(word));
+		}
+		return pending;
+	}
+
+	/**
+	 * @return true if an update for the instrument/market of the given update is waiting to be delivered
+	 */
+	public boolean isPending(MarketUpdate marketUpdate) {
+		int key = Listings.find(marketUpdate.getTick().getInstrumentId(), marketUpdate.getMarketId());
+		AtomicLongArray dirty = this.tables.dirty;
+		return key >= 0 && (key >>> 6) < dirty.length() && (dirty.get(key >>> 6) & (1L << key)) != 0;
+	}
+	
+	@Override
+	public void run() {
+		thread = Thread.currentThread();
+		while(running) {
+			if(drain() != 0) {
+				continue;
+			}
+			if(woken) {
+				woken = false;
+				consumer.onWake();
+			} else {
+				idle();
+			}
+		}
+	}
+	
+	/**
+	 * Has the subscriber thread call the subscriber's {@link BatchSubscriber#onWake() onWake} once
+	 * it has delivered the updates pending. Can be called from any thread.
+	 */
+	public void wake() {
+		woken = true;
+		LockSupport.unpark(thread);
+	}
+	
+	public void halt() {
+		running = false;
+		LockSupport.unpark(thread);
+	}
+	
+	private void idle() {
+		switch(waitStrategy) {
+		case BUSY_SPIN:
+			break;
+		case YIELDING:
+			Thread.yield();
+			break;
+		default:
+			parked = true;
+			if(!hasDirty(0) && !woken && running) {
+				LockSupport.parkNanos(this, MAX_PARK_NANOS);
+			}
+			parked = false;
+		}
+	}
+	
+	private boolean hasDirty(int fromWord) {
+		AtomicLongArray dirty = this.tables.dirty;
+		for(int word = fromWord; word < dirty.length(); word++) {
+			if(dirty.get(word) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static void markDirty(AtomicLongArray dirty, int key) {
+		int word = key >>> 6;
+		long bit = 1L << key;
+		long bits = dirty.get(word);
+		while((bits & bit) == 0 && !dirty.compareAndSet(word, bits, bits | bit)) {
+			bits = dirty.get(word);
+		}
+	}
+	
+	/**
+	 * Called by the feed threads, one at a time. Each old slot is taken like a writer takes it - waiting
+	 * for a writer already in it - copied and kept, so no write lands in it after the copy. The old bits 
+	 * are copied once the new tables are published: a bit marked in the old words before then is copied, 
+	 * and its writer marks it again in the new words if it marked it after. Bits the subscriber clears 
+	 * in the old words meanwhile may be delivered again.
+	 */
+	private synchronized void grow(int key) {
+		Tables current = tables;
+		if(key * FIELDS < current.slots.length()) {
+			//another feed thread grew it
+			return;
+		}
+		Tables updated = new Tables(Math.max(key + 1, 2 * (current.slots.length() / FIELDS)));
+		
+		for(int base = 0; base < current.slots.length(); base += FIELDS) {
+			long version = current.slots.get(base);
+			while((version & 1) != 0 || !current.slots.compareAndSet(base, version, version + 1)) {
+				version = current.slots.get(base);
+			}
+			for(int field = 1; field < FIELDS; field++) {
+				updated.slots.lazySet(base + field, current.slots.get(base + field));
+			}
+			updated.slots.lazySet(base, version);
+		}
+		tables = updated;
+		
+		for(int i = 0; i < current.dirty.length(); i++) {
+			long bits = current.dirty.get(i);
+			if(bits != 0) {
+				updated.dirty.getAndAccumulate(i, bits, (marked, copied) -> marked | copied);
+			}
+		}
+	}
+	
+	/**
+	 * copy the slot into the reusable update, retrying while a feed thread is writing it
+	 * or, if the tables have grown since, from the new tables
+	 */
+	private void read(int key) {
+		int base = key * FIELDS;
+		AtomicLongArray slots;
+		long version;
+		do {
+			slots = this.tables.slots;
+			version = slots.get(base);
+			long symbols = slots.get(base + 1);
+			int side = (int)slots.get(base + 3);
+			update.setSequence(slots.get(base + 2));
+			update.setIngressNanos(slots.get(base + 8));
+			update.setScaled((int)(symbols >> 32),
+						(int)symbols,
+						side >= 0 && side < SIDES.length ? SIDES[side] : null,
+						slots.get(base + 4),
+						slots.get(base + 5),
+						slots.get(base + 6),
+						slots.get(base + 7));
+		} while((version & 1) != 0 || version != slots.get(base));
+	}
+	
+	/**
+	 * The slots and their bits, replaced together when they grow
+	 */
+	private static final class Tables {
+		
+		final AtomicLongArray slots;
+		
+		final AtomicLongArray dirty;
+		
+		Tables(int keys) {
+			slots = new AtomicLongArray(keys * FIELDS);
+			dirty = new AtomicLongArray((keys + 63) >>> 6);
+		}
+	}
+}
@@ -3,26 +3,43 @@
  */
 package com.mywork.markets.providers;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
 
-import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.AlertException;
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.BusySpinWaitStrategy;
 import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventPoller;
+import com.lmax.disruptor.EventTranslator;
+import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.SequenceBarrier;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.TimeoutHandler;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
-import com.lmax.disruptor.util.DaemonThreadFactory;
 import com.mywork.markets.DefaultMarketUpdate;
 import com.mywork.markets.Instruments;
+import com.mywork.markets.Listings;
 import com.mywork.markets.MarketUpdate;
 import com.mywork.markets.Markets;
+import com.mywork.markets.SymbolRegistry;
+import com.mywork.markets.metrics.LatencyRecorder;
+import com.mywork.markets.metrics.Metrics;
 import com.mywork.markets.utils.ExecutorUtils;
 import com.mywork.markets.utils.UpdatesProvider;
 
@@ -31,63 +48,283 @@ import com.mywork.markets.utils.UpdatesProvider;
  * Uses one disruptor/hand-off queue per subscriber based on the following:
  * 1. Number of subscribers is expected to be low.
  * 2. Having one hand-off queue per subscriber enables the queue to be customized per subscriber,
- * ie, queue depth, if conflation is required etc can be controlled on a per subscriber basis.
+ * ie, queue depth, if conflation is required etc can be controlled on a per subscriber basis
+ * through {@link SubscriberConfig SubscriberConfig}. A subscriber that cannot keep up can choose 
+ * conflated delivery so it never holds up the feed thread.
  * 3. Each subscriber only gets the data it needs and doesnt need to do any filtering etc.
  * 
- * The other alternative would be to have just one disruptor where each subscriber is a consumer off 
- * that one disruptor.
+ * The other alternative is to have just one disruptor where each subscriber is a consumer off 
+ * that one disruptor - see {@link Topology#SHARED SHARED}. Each update is then published once and every
+ * subscriber's handler skips updates for instruments/markets it has not subscribed to.
+ * The topology is chosen at construction.
+ * 
+ * Updates can come from several feed sources, eg one per venue, each on its own thread - see
+ * {@link Ingestion Ingestion} for how they reach the subscribers' queues.
+ * 
+ * What happens when a subscriber's ring is full is set per subscriber by its 
+ * {@link SubscriberConfig.Overflow Overflow} - by default the feed waits, so one slow subscriber 
+ * holds up all the others. The other policies publish with <code>tryPublishEvent</code> and never
+ * wait on a slow subscriber.
+ * 
+ * Subscribers that implement {@link BatchSubscriber BatchSubscriber} are told where each batch taken
+ * off their queue ends - the disruptor's end of batch, or the end of a conflating queue's drain.
+ * Their threads can be woken with {@link #wake(Function) wake} to do timed work between batches.
+ * 
+ * Subscriptions are held in a copy-on-write {@link SubscriptionTable SubscriptionTable} so 
+ * publishing does not lock - the lock only serializes subscribe/unsubscribe.
+ * 
+ * Latencies are recorded from the update's ingress time into {@link Metrics Metrics}:
+ * <code>&lt;provider&gt;.fanout</code> once the update is handed off to all subscribers, and per subscriber
+ * <code>&lt;name&gt;.handoff</code> when its thread picks the update up and <code>&lt;name&gt;.latency</code>
+ * once its function returns. The subscriber's queue depth is the gauge <code>&lt;name&gt;.depth</code>,
+ * updates that found its ring full are counted by <code>&lt;name&gt;.late</code> and updates it will never 
+ * get by <code>&lt;name&gt;.dropped</code>.
+ * The provider is named by {@link Metrics#uniqueName(String) Metrics.uniqueName}, eg provider-0, see 
+ * {@link #getMetricsName() getMetricsName}. Subscribers are named by {@link SubscriberConfig#getName() SubscriberConfig} 
+ * or numbered in the order they subscribe under the provider's name, eg provider-0.subscriber-1.
+ * A subscriber's metrics are removed once it has no subscriptions left, and the provider's when it stops.
  * 
  *  Note: This class has NOT been tested - and so might have bugs in it. This is just to outline
  *  how a producer-consumer hand-off based implementation using a disruptor will look like.
  */
 public class MultiThreadProvider implements ProviderWithLifecycle, Consumer<MarketUpdate> {
 
+	/**
+	 * How updates are handed off to subscribers
+	 */
+	public enum Topology {
+		/** one disruptor per subscriber, each update is published once per interested subscriber */
+		PER_SUBSCRIBER,
+		/** one disruptor shared by all subscribers, each update is published once */
+		SHARED
+	}
+
+	/**
+	 * How updates from several feed sources reach the subscribers' queues
+	 */
+	public enum Ingestion {
+		/** every source's thread publishes straight to the subscribers' queues, which then take several producers */
+		MULTI_PRODUCER,
+		/** every source's thread publishes to its own single producer ring and one thread merges the rings */
+		MERGED
+	}
+
+	//most updates the merging thread takes from one source's ring before moving on to the next
+	private static final int MERGE_BATCH = 64;
+
+	//how long the merging thread parks when no source has updates, unless it spins or yields
+	private static final long MERGE_PARK_NANOS = 50_000;
+
 //	private Map<Instruments, Map<Markets List<Function>> subscribers;
 
-	private List<Function<? extends MarketUpdate,? extends MarketUpdate>> [][] subscribers = new ArrayList[Instruments.SIZE][Markets.SIZE];
+	//copy-on-write so that publishing does not lock
+	private final SubscriptionTable<Subscriber> subscribers = new SubscriptionTable<>(Subscriber[]::new);
 	
 	//a HashMap is fine here - since synchronization is achieved by the Lock object.
+	//only used when subscribing/unsubscribing
 	private final Map<Function<? extends MarketUpdate, ? extends MarketUpdate>, 
-						Disruptor<? extends MarketUpdate>> subscriberQueues = new HashMap<>();
+						Subscriber> subscriberQueues = new HashMap<>();
+	
+	private final UpdatesProvider[] providers;
+
+	//a thread per source, plus the merging thread
+	private final ExecutorService executor;
+
+	//several source threads publish to the subscribers' queues
+	private final boolean multiProducer;
+
+	//only used with MERGED ingestion from several sources
+	private final FeedMerger merger;
+
+	//serializes subscribe/unsubscribe/stop. Not taken when publishing.
+	private final Lock lock = new ReentrantLock();
 	
-	private final UpdatesProvider provider;
+	//copies the update's primitives into the pre-allocated slot.
+	//a non-capturing translator so publishing does not allocate.
+	private static final EventTranslatorOneArg<MarketUpdate, MarketUpdate> COPY_TRANSLATOR = 
+			(event, sequence, update) -> {
+				event.setMarketId(update.getMarketId());
+				event.setSequence(update.getSequence());
+				event.setIngressNanos(update.getIngressNanos());
+				event.setTick(update.getTick());
+			};
 	
-	private final ExecutorService executor = ExecutorUtils.singleThreadExecutor();
+	//an event with no update - wakes a subscriber that has conflated updates waiting
+	private static final EventTranslator<MarketUpdate> WAKE_TRANSLATOR = (event, sequence) -> event.setMarketId(-1);
+
+	//used for subscribers that do not give their own config, and for the shared ring
+	private final SubscriberConfig defaultConfig;
 	
-	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Topology topology;
 	
+	//only used with the SHARED topology
+	private final RingBuffer<MarketUpdate> sharedRing;
+	
+	//tee of every update, eg a JournalWriter
+	private final Consumer<MarketUpdate> journal;
+
+	private final Metrics metrics;
+
+	//prefix of the provider's metrics, and of its unnamed subscribers'
+	private final String metricsName;
+
+	private final LatencyRecorder fanoutLatency;
+
+	//numbers unnamed subscribers - only used under the lock
+	private int subscriberCount;
+
 	public MultiThreadProvider() {
+		this(SubscriberConfig.DEFAULT);
+	}
 
-		for(int i = 0; i < Instruments.SIZE; i++){
-			for(int j = 0; j < Markets.SIZE; j++) {
-				subscribers[i][j] = new ArrayList<>();
-			}
+	/**
+	 * @param defaultConfig - hand-off settings for subscribers that do not give their own
+	 */
+	public MultiThreadProvider(SubscriberConfig defaultConfig) {
+		this(Topology.PER_SUBSCRIBER, defaultConfig);
+	}
+
+	/**
+	 * @param topology - whether subscribers get their own disruptor or share one
+	 * @param defaultConfig - hand-off settings for subscribers that do not give their own.
+	 *        With the SHARED topology its ring size and wait strategy are used for the shared ring.
+	 */
+	public MultiThreadProvider(Topology topology, SubscriberConfig defaultConfig) {
+		this(topology, defaultConfig, UpdatesProvider::new, update -> {});
+	}
+
+	/**
+	 * @param topology - whether subscribers get their own disruptor or share one
+	 * @param defaultConfig - hand-off settings for subscribers that do not give their own
+	 * @param source - creates the source of updates given this provider as its consumer, 
+	 *        eg a {@link com.mywork.markets.journal.JournalUpdatesProvider JournalUpdatesProvider} to replay a journal
+	 * @param journal - gets every update on the feed thread before it is handed off, 
+	 *        eg a {@link com.mywork.markets.journal.JournalWriter JournalWriter}
+	 */
+	public MultiThreadProvider(Topology topology, SubscriberConfig defaultConfig,
+								Function<Consumer<MarketUpdate>, UpdatesProvider> source, 
+								Consumer<MarketUpdate> journal) {
+		this(topology, defaultConfig, source, journal, Metrics.DEFAULT);
+	}
+
+	/**
+	 * @param metrics - where hand-off latencies and queue depths are recorded
+	 * @see #MultiThreadProvider(Topology, SubscriberConfig, Function, Consumer)
+	 */
+	public MultiThreadProvider(Topology topology, SubscriberConfig defaultConfig,
+								Function<Consumer<MarketUpdate>, UpdatesProvider> source,
+								Consumer<MarketUpdate> journal, Metrics metrics) {
+		this(topology, defaultConfig, Ingestion.MULTI_PRODUCER, 
+				Collections.<Function<Consumer<MarketUpdate>, UpdatesProvider>>singletonList(source), journal, metrics);
+	}
+
+	/**
+	 * Several feed sources, eg one per venue, each run on its own thread.
+	 * A single source hands off on its own thread whatever the ingestion.
+	 * @param ingestion - how updates from the sources reach the subscribers' queues. With MULTI_PRODUCER 
+	 *        the journal is called from every source's thread, so it must be thread-safe. With MERGED 
+	 *        it is only called from the merging thread, and the source rings use the default config's ring size.
+	 * @param sources - each creates a source of updates given the consumer for its updates
+	 * @throws IllegalArgumentException if no sources are given
+	 * @see #MultiThreadProvider(Topology, SubscriberConfig, Function, Consumer, Metrics)
+	 */
+	public MultiThreadProvider(Topology topology, SubscriberConfig defaultConfig, Ingestion ingestion,
+								List<Function<Consumer<MarketUpdate>, UpdatesProvider>> sources,
+								Consumer<MarketUpdate> journal, Metrics metrics) {
+		if(sources.isEmpty()) {
+			throw new IllegalArgumentException("At least one source of updates is required");
 		}
-		
-		provider = new UpdatesProvider(this);
+
+		this.topology = topology;
+		this.journal = journal;
+		this.metrics = metrics;
+		this.metricsName = metrics.uniqueName("provider");
+		this.fanoutLatency = metrics.latency(metricsName + ".fanout");
+		this.defaultConfig = defaultConfig;
+		this.multiProducer = sources.size() > 1 && ingestion == Ingestion.MULTI_PRODUCER;
+		this.merger = sources.size() > 1 && ingestion == Ingestion.MERGED ? new FeedMerger(sources.size()) : null;
+		this.sharedRing = topology == Topology.SHARED 
+							? RingBuffer.create(producerType(), new DefaultMarketUpdateFactory(), 
+									defaultConfig.getRingSize(), defaultConfig.getWaitStrategy().create())
+							: null;
+		if(null != sharedRing) {
+			metrics.gauge(metricsName + ".shared.depth",
+						() -> sharedRing.getBufferSize() - sharedRing.remainingCapacity());
+		}
+
+		providers = new UpdatesProvider[sources.size()];
+		for(int i = 0; i < providers.length; i++) {
+			providers[i] = sources.get(i).apply(null == merger ? this : merger.input(i));
+		}
+		executor = ExecutorUtils.fixedThreadExecutor(metricsName + "-feed", providers.length + (null == merger ? 0 : 1));
 
 	}
 
 	@Override
 	public void subscribe(Instruments instrument, Markets market,
 			Function<? extends MarketUpdate, ? extends MarketUpdate> consumer) throws SubscriptionException {
+		subscribe(instrument, market, consumer, defaultConfig);
+	}
+
+	/**
+	 * subscribe with hand-off settings for this consumer.
+	 * The settings are applied when the consumer first subscribes, and ignored for its
+	 * later subscriptions as all of them share the consumer's queue and thread.
+	 * With the SHARED topology only the thread factory is used.
+	 * @param config - the hand-off settings for this consumer
+	 */
+	public void subscribe(Instruments instrument, Markets market,
+			Function<? extends MarketUpdate, ? extends MarketUpdate> consumer, 
+			SubscriberConfig config) throws SubscriptionException {
+		subscribe(instrument.ordinal(), market.ordinal(), consumer, config);
+	}
+
+	@Override
+	public void subscribe(int instrumentId, int marketId,
+			Function<? extends MarketUpdate, ? extends MarketUpdate> consumer) throws SubscriptionException {
+		subscribe(instrumentId, marketId, consumer, defaultConfig);
+	}
+
+	/**
+	 * subscribe by symbol id with hand-off settings for this consumer, 
+	 * see {@link #subscribe(Instruments, Markets, Function, SubscriberConfig) subscribe}
+	 */
+	public void subscribe(int instrumentId, int marketId,
+			Function<? extends MarketUpdate, ? extends MarketUpdate> consumer, 
+			SubscriberConfig config) throws SubscriptionException {
 		try{
-			lock.writeLock().lock();
+			lock.lock();
 			
-			Disruptor<? extends MarketUpdate> disruptor = subscriberQueues.get(consumer);
-			if(null == disruptor) {
-				disruptor = createSubscriberDisruptor(consumer);
-				disruptor.start();
-				subscriberQueues.put(consumer, disruptor);
+			//before the subscriber's queue and thread are made, so an unknown id leaves none behind
+			int key = SubscriptionTable.subscriptionKey(instrumentId, marketId);
+			Subscriber subscriber = subscriberQueues.get(consumer);
+			if(null == subscriber) {
+				if(topology == Topology.SHARED) {
+					if(config.getDelivery() != SubscriberConfig.Delivery.LOSSLESS) {
+						throw new SubscriptionException(String.format("[%s] delivery needs a queue per subscriber",
+																	config.getDelivery()));
+					}
+					if(config.getOverflow() != SubscriberConfig.Overflow.BLOCK) {
+						throw new SubscriptionException(String.format("[%s] overflow needs a queue per subscriber",
+																	config.getOverflow()));
+					}
+					subscriber = createSharedRingSubscriber(consumer, config);
+				} else if(config.getDelivery() == SubscriberConfig.Delivery.CONFLATED) {
+					subscriber = createConflatingSubscriber(consumer, config);
+				} else {
+					subscriber = createSubscriberDisruptor(consumer, config);
+				}
+				subscriberQueues.put(consumer, subscriber);
 			}
 
-		
-			if(!subscribers[instrument.ordinal()][market.ordinal()].add(consumer)) {
-				throw new SubscriptionException(String.format("Could not register subscription for [%s] for [%s]",
-															instrument, market));
+			subscriber.add(key);
+			subscribers.add(key, subscriber);
+			if(subscriber.subscriptions++ == 0) {
+				subscriber.latencies.forEach(metrics::latency);
+				subscriber.gauges.forEach(metrics::gauge);
 			}
 		}finally {
-			lock.writeLock().unlock();
+			lock.unlock();
 		}
 		
 	}
@@ -95,65 +332,90 @@ public class MultiThreadProvider implements ProviderWithLifecycle, Consumer<Mark
 	@Override
 	public void unsubscribe(Instruments instrument, Markets market,
 			Function<? extends MarketUpdate, ? extends MarketUpdate> consumer) throws SubscriptionException {
+		unsubscribe(instrument.ordinal(), market.ordinal(), consumer);
+	}
+
+	@Override
+	public void unsubscribe(int instrumentId, int marketId,
+			Function<? extends MarketUpdate, ? extends MarketUpdate> consumer) throws SubscriptionException {
 		try{
-			lock.writeLock().lock();
+			lock.lock();
 	
-			if(!subscribers[instrument.ordinal()][market.ordinal()].remove(consumer)) {
+			int key = Listings.find(instrumentId, marketId);
+			Subscriber subscriber = subscriberQueues.get(consumer);
+			if(key < 0 || null == subscriber || !subscribers.remove(key, subscriber)) {
 				throw new SubscriptionException(String.format("Could not unregister subscription for [%s] for [%s]",
-															instrument, market));
+															SymbolRegistry.INSTRUMENTS.getNameOrId(instrumentId), 
+															SymbolRegistry.MARKETS.getNameOrId(marketId)));
+			}
+			
+			//the same consumer may have subscribed more than once
+			if(!subscribers.contains(key, subscriber)) {
+				subscriber.remove(key);
+			}
+			//kept, with its recorders, should the consumer subscribe again
+			if(--subscriber.subscriptions == 0) {
+				removeMetrics(subscriber);
 			}
 		}finally {
-			lock.writeLock().unlock();
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Wakes the consumer's thread, which calls its {@link BatchSubscriber#onWake() onWake} once done with
+	 * the batch it is on. Nothing is done for a consumer that has never subscribed.
+	 */
+	@Override
+	public void wake(Function<? extends MarketUpdate, ? extends MarketUpdate> consumer) {
+		Subscriber subscriber;
+		try {
+			lock.lock();
+			subscriber = subscriberQueues.get(consumer);
+		} finally {
+			lock.unlock();
+		}
+		if(null != subscriber) {
+			subscriber.wake();
 		}
 	}
 
 	@Override
 	public void accept(final MarketUpdate update) {
 		
-		try{
-			lock.readLock().lock();
-	
-			List<Function<? extends MarketUpdate, ? extends MarketUpdate>> subs = 
-								subscribers[update.getTick().getInstrument().ordinal()][update.getMarket().ordinal()];
-			if(null == subs) {
-				return;
-			}
-	
-			for(int i = 0; i < subs.size(); i++){
-				Function<? extends MarketUpdate, ? extends MarketUpdate> consumer = subs.get(i);
-				Disruptor<? extends MarketUpdate> disruptor = subscriberQueues.get(consumer);
-				if(null == disruptor) {
-					System.err.println("Could not find queue for consumer - " + consumer);
-				}else {
-					disruptor.getRingBuffer().publishEvent( (event, seq) -> 
-											{
-												event.setMarket(update.getMarket());
-												event.setTick(update.getTick());
-											});
-				
-				}
+		journal.accept(update);
+		
+		//snapshot of the subscribers - never null and not changed while iterating
+		Subscriber[] subs = subscribers.get(update.getTick().getInstrumentId(), update.getMarketId());
+		if(subs.length == 0) {
+			return;
+		}
+		
+		if(topology == Topology.SHARED) {
+			//published once - the subscribers' handlers filter
+			sharedRing.publishEvent(COPY_TRANSLATOR, update);
+		} else {
+			//subscribers of this topology all hand off
+			for(int i = 0; i < subs.length; i++){
+				((HandOffSubscriber)subs[i]).publish(update);
 			}
-		} finally {
-			lock.readLock().unlock();
 		}
+
+		fanoutLatency.recordSince(update.getIngressNanos());
 	}
 	
 	public int getNumberOfSubscribers(Instruments ins, Markets market) {
-
-		int size = 0;
-		try {
-			lock.readLock().lock();
-			size = subscribers[ins.ordinal()][market.ordinal()].size();
-		} finally {
-			lock.readLock().unlock();
-		}
-		
-		return size;
+		return subscribers.size(ins, market);
 	}
 	
 	@Override
 	public void start() {
-		executor.execute(provider::run);
+		if(null != merger) {
+			executor.execute(merger);
+		}
+		for(UpdatesProvider provider : providers) {
+			executor.execute(provider::run);
+		}
 	}
 
 	@Override
@@ -171,35 +433,623 @@ public class MultiThreadProvider implements ProviderWithLifecycle, Consumer<Mark
 			System.err.println("UpdatesProvider did not shut down");
 		}
 		
-		//sync this
-		subscriberQueues.forEach((consumer, disruptor) -> disruptor.halt());
+		try {
+			lock.lock();
+			subscriberQueues.forEach((consumer, subscriber) -> {
+				subscriber.halt();
+				removeMetrics(subscriber);
+			});
+		} finally {
+			lock.unlock();
+		}
 		
+		metrics.remove(metricsName + ".fanout");
+		metrics.remove(metricsName + ".shared.depth");
+		for(int i = 0; null != merger && i < providers.length; i++) {
+			metrics.remove(metricsName + ".source-" + i + ".depth");
+		}
+	}
+	
+	/**
+	 * @return prefix of this provider's metric names, and of its unnamed subscribers' - unique within its {@link Metrics Metrics}
+	 */
+	public String getMetricsName() {
+		return metricsName;
+	}
+	
+	//called under the lock
+	private void removeMetrics(Subscriber subscriber) {
+		subscriber.latencies.keySet().forEach(metrics::remove);
+		subscriber.gauges.keySet().forEach(metrics::remove);
 	}
 	
 	/**
-	 * Using the following:
-	 * 1. disruptor size of 1024 - keeping it to 1k to try and keep size of disruptor 
-	 * to L3 cache atleast
-	 * 2. Using BlockingWaitStrategy because of laptop configuration. 
-	 * Would use BusySpinStrategy or YieldingWaitStrategy or similar in real-life
-	 * 3. Using DaemonThreadFactory here - would typically use a different pool
-	 * (or ThreadFactory) that returns pinned threads
+	 * Ring size, wait strategy and thread factory come from the config - see 
+	 * {@link SubscriberConfig#DEFAULT SubscriberConfig.DEFAULT} for the defaults used.
+	 * A latency sensitive subscriber would typically use BUSY_SPIN with a thread factory 
+	 * that returns pinned threads.
 	 */
-	private <T extends MarketUpdate, U extends MarketUpdate> Disruptor<? extends MarketUpdate> 
-										createSubscriberDisruptor(final Function<T, U> consumer) {
+	@SuppressWarnings("unchecked")
+	private HandOffSubscriber createSubscriberDisruptor(
+							final Function<? extends MarketUpdate, ? extends MarketUpdate> consumer,
+							final SubscriberConfig config) {
+	
+		final String name = name(config);
+		final Map<String, LatencyRecorder> latencies = new HashMap<>();
+		final BatchSubscriber<? extends MarketUpdate> subscriber =
+				timed((Function<MarketUpdate, ? extends MarketUpdate>) consumer, name, latencies);
+		Disruptor<MarketUpdate> disruptor = new Disruptor<>(new DefaultMarketUpdateFactory(), config.getRingSize(),
+				config.getThreadFactory(), producerType(), config.getWaitStrategy().create());
+		QueueSubscriber queueSubscriber = new QueueSubscriber(name, disruptor, subscriber, config);
+		disruptor.handleEventsWith((ring, sequences) -> {
+			queueSubscriber.barrier = new WakeableBarrier(ring.newBarrier(sequences));
+			return new BatchEventProcessor<>(ring, queueSubscriber.barrier, queueSubscriber);
+		});
+		disruptor.start();
+
+		RingBuffer<MarketUpdate> ring = disruptor.getRingBuffer();
+		queueSubscriber.latencies.putAll(latencies);
+		queueSubscriber.gauges.put(name + ".depth", () -> ring.getBufferSize() - ring.remainingCapacity());
+		queueSubscriber.gauges.put(name + ".late", queueSubscriber::getLate);
+		queueSubscriber.gauges.put(name + ".dropped", queueSubscriber::getDropped);
+		return queueSubscriber;
+	}
+
+	
+	/**
+	 * Adds a consumer to the shared ring while it is running.
+	 * The consumer starts from the current cursor, so it only sees updates published after this call.
+	 */
+	@SuppressWarnings("unchecked")
+	private Subscriber createSharedRingSubscriber(
+							final Function<? extends MarketUpdate, ? extends MarketUpdate> consumer,
+							final SubscriberConfig config) {
+		
+		final String name = name(config);
+		final Map<String, LatencyRecorder> latencies = new HashMap<>();
+		SharedRingSubscriber subscriber = new SharedRingSubscriber(
+				timed((Function<MarketUpdate, ? extends MarketUpdate>) consumer, name, latencies));
+		subscriber.barrier = new WakeableBarrier(sharedRing.newBarrier());
+		BatchEventProcessor<MarketUpdate> processor = new BatchEventProcessor<>(sharedRing, subscriber.barrier, subscriber);
+		processor.getSequence().set(sharedRing.getCursor());
+		sharedRing.addGatingSequences(processor.getSequence());
+		subscriber.latencies.putAll(latencies);
+		subscriber.gauges.put(name + ".depth", () -> sharedRing.getCursor() - processor.getSequence().get());
+		subscriber.processor = processor;
+		config.getThreadFactory().newThread(processor).start();
+		
+		return subscriber;
+	}
 	
-		Disruptor<T> disruptor = new Disruptor<>(new DefaultMarketUpdateFactory(), 1024, DaemonThreadFactory.INSTANCE,
-				ProducerType.SINGLE, new BlockingWaitStrategy());
-		disruptor.handleEventsWith( (event, sequence, batch) -> consumer.apply(event));
+	@SuppressWarnings("unchecked")
+	private HandOffSubscriber createConflatingSubscriber(
+							final Function<? extends MarketUpdate, ? extends MarketUpdate> consumer,
+							final SubscriberConfig config) {
 		
-		return disruptor;
+		final String name = name(config);
+		final Map<String, LatencyRecorder> latencies = new HashMap<>();
+		ConflatingQueue queue = new ConflatingQueue(
+				timed((Function<MarketUpdate, ? extends MarketUpdate>) consumer, name, latencies),
+				config.getWaitStrategy());
+		config.getThreadFactory().newThread(queue).start();
+		ConflatingSubscriber subscriber = new ConflatingSubscriber(queue);
+		subscriber.latencies.putAll(latencies);
+		subscriber.gauges.put(name + ".depth", queue::pending);
+
+		return subscriber;
+	}
+	
+	private ProducerType producerType() {
+		return multiProducer ? ProducerType.MULTI : ProducerType.SINGLE;
+	}
+	
+	/**
+	 * @return name of the subscriber being created - the config's or the next number under the provider's name.
+	 *         Called under the lock.
+	 */
+	private String name(SubscriberConfig config) {
+		return null != config.getName() ? config.getName() : metricsName + ".subscriber-" + subscriberCount++;
+	}
+
+	/**
+	 * Wraps the subscriber's function to record its hand-off and end-to-end latency.
+	 * @param latencies - gets the recorders by name, registered with the subscriber's other metrics
+	 */
+	private static BatchSubscriber<? extends MarketUpdate> timed(
+							final Function<MarketUpdate, ? extends MarketUpdate> function, String name,
+							Map<String, LatencyRecorder> latencies) {
+
+		final BatchSubscriber<? extends MarketUpdate> subscriber = BatchSubscriber.of(function);
+		final LatencyRecorder handoff = new LatencyRecorder();
+		final LatencyRecorder latency = new LatencyRecorder();
+		latencies.put(name + ".handoff", handoff);
+		latencies.put(name + ".latency", latency);
+		return new BatchSubscriber<MarketUpdate>() {
+
+			@Override
+			public MarketUpdate apply(MarketUpdate update) {
+				handoff.recordSince(update.getIngressNanos());
+				MarketUpdate result = subscriber.apply(update);
+				latency.recordSince(update.getIngressNanos());
+				return result;
+			}
+
+			@Override
+			public void onUpdate(MarketUpdate update, boolean endOfBatch) {
+				handoff.recordSince(update.getIngressNanos());
+				subscriber.onUpdate(update, endOfBatch);
+				latency.recordSince(update.getIngressNanos());
+			}
+			
+			@Override
+			public void onWake() {
+				subscriber.onWake();
+			}
+		};
 	}
 
+	/**
+	 * A subscriber as seen by the provider.
+	 */
+	private static abstract class Subscriber {
+		
+		//the subscriber's metrics - registered while it has subscriptions
+		final Map<String, LatencyRecorder> latencies = new HashMap<>();
+		final Map<String, LongSupplier> gauges = new HashMap<>();
+		
+		//only used under the provider's lock
+		int subscriptions;
+		
+		/** called under the provider's lock when the subscriber is added for the instrument/market */
+		void add(int key) {}
+		
+		/** called under the provider's lock when the subscriber is no longer subscribed for the instrument/market */
+		void remove(int key) {}
+		
+		/** has the subscriber's thread call its onWake - can be called from any thread */
+		abstract void wake();
+		
+		abstract void halt();
+	}
+	
+	/**
+	 * A subscriber the publishing thread hands each update off to - every subscriber of the PER_SUBSCRIBER
+	 * topology. Subscribers of the SHARED topology are not, they read the shared ring each update is published to once.
+	 */
+	private static abstract class HandOffSubscriber extends Subscriber {
+		
+		/** hand the update off to the subscriber's thread */
+		abstract void publish(MarketUpdate update);
+	}
+	
+	/**
+	 * Subscriber with its own disruptor
+	 */
+	private static class QueueSubscriber extends HandOffSubscriber implements EventHandler<MarketUpdate>, TimeoutHandler {
+		
+		private final String name;
+		
+		private final Disruptor<MarketUpdate> disruptor;
+		
+		private final RingBuffer<MarketUpdate> ring;
+		
+		private final BatchSubscriber<? extends MarketUpdate> subscriber;
+		
+		private final SubscriberConfig.Overflow overflow;
+		
+		//only with CONFLATE and DROP_OLDEST - updates that found the ring full, delivered by the subscriber's thread
+		private final ConflatingQueue overflowQueue;
+		
+		//with CONFLATE and DROP_OLDEST the ring carries events that are not delivered, so the last
+		//update of a batch is held back until the batch ends - see SharedRingSubscriber
+		private final boolean holdBack;
+		
+		//only used by the subscriber's thread
+		private MarketUpdate held;
+		
+		//with DROP_OLDEST the subscriber skips events up to this sequence
+		private volatile long shedTo = -1;
+		
+		//set when the disruptor creates the processor
+		private WakeableBarrier barrier;
+		
+		//with CONFLATE, a wake event is on the ring
+		private volatile boolean wakePending;
+		
+		private volatile boolean disconnected;
+		
+		//only counted when the ring is full - not on the hot path
+		private final AtomicLong late = new AtomicLong();
+		private final AtomicLong dropped = new AtomicLong();
+		private final AtomicLong drained = new AtomicLong();
+		
+		QueueSubscriber(String name, Disruptor<MarketUpdate> disruptor, 
+						BatchSubscriber<? extends MarketUpdate> subscriber, SubscriberConfig config) {
+			this.name = name;
+			this.disruptor = disruptor;
+			this.ring = disruptor.getRingBuffer();
+			this.subscriber = subscriber;
+			this.overflow = config.getOverflow();
+			this.overflowQueue = overflow == SubscriberConfig.Overflow.CONFLATE 
+									|| overflow == SubscriberConfig.Overflow.DROP_OLDEST
+									? new ConflatingQueue(subscriber, config.getWaitStrategy()) : null;
+			this.holdBack = overflow == SubscriberConfig.Overflow.CONFLATE 
+									|| overflow == SubscriberConfig.Overflow.DROP_OLDEST;
+		}
+		
+		@Override
+		void publish(MarketUpdate update) {
+			if(overflow == SubscriberConfig.Overflow.BLOCK) {
+				ring.publishEvent(COPY_TRANSLATOR, update);
+				return;
+			}
+			if(disconnected) {
+				dropped.incrementAndGet();
+				return;
+			}
+			if(null != overflowQueue && overflowQueue.isPending(update)) {
+				//behind an undelivered update of the same instrument/market - keep them in order
+				conflate(update);
+				return;
+			}
+			if(ring.tryPublishEvent(COPY_TRANSLATOR, update)) {
+				return;
+			}
+			
+			switch(overflow) {
+			case DROP_NEWEST:
+				late.incrementAndGet();
+				dropped.incrementAndGet();
+				break;
+			case DROP_OLDEST:
+				//the subscriber skips the queued events once its current update is done and then gets this one.
+				//it cannot go on the ring, which stays full until then
+				shedTo = ring.getCursor();
+				conflate(update);
+				break;
+			case CONFLATE:
+				conflate(update);
+				break;
+			case DISCONNECT:
+				late.incrementAndGet();
+				dropped.incrementAndGet();
+				disconnected = true;
+				disruptor.halt();
+				System.err.println("Subscriber [" + name + "] cannot keep up, disconnected");
+				break;
+			default:
+				throw new IllegalStateException("Unknown overflow [" + overflow + "]");
+			}
+		}
+		
+		private void conflate(MarketUpdate update) {
+			late.incrementAndGet();
+			overflowQueue.offer(update);
+			//make sure the subscriber's thread gets to the end of a batch to deliver it.
+			//if the ring is full it will anyway.
+			if(!wakePending) {
+				wakePending = true;
+				if(!ring.tryPublishEvent(WAKE_TRANSLATOR)) {
+					wakePending = false;
+				}
+			}
+		}
+		
+		@Override
+		public void onEvent(MarketUpdate event, long sequence, boolean endOfBatch) {
+			if(!holdBack) {
+				subscriber.onUpdate(event, endOfBatch);
+				return;
+			}
+			
+			if(event.getMarketId() < 0) {
+				wakePending = false;
+			} else if(sequence <= shedTo) {
+				dropped.incrementAndGet();
+			} else {
+				if(null != held) {
+					subscriber.onUpdate(held, false);
+				}
+				held = event;
+			}
+			
+			if(endOfBatch) {
+				//conflated updates are newer than anything on the ring, so only once it is empty
+				boolean drain = null != overflowQueue && sequence == ring.getCursor() && overflowQueue.pending() > 0;
+				if(null != held) {
+					subscriber.onUpdate(held, !drain);
+					held = null;
+				}
+				if(drain) {
+					drained.addAndGet(overflowQueue.drain());
+				}
+			}
+		}
+		
+		@Override
+		public void onTimeout(long sequence) {
+			subscriber.onWake();
+		}
+		
+		long getLate() {
+			return late.get();
+		}
+		
+		/**
+		 * @return updates the subscriber will not get - conflated updates that were replaced count as dropped
+		 */
+		long getDropped() {
+			if(null != overflowQueue) {
+				//dropped only counts the events skipped on the ring
+				return dropped.get() + late.get() - drained.get() - overflowQueue.pending();
+			}
+			return dropped.get();
+		}
+
+		@Override
+		void wake() {
+			barrier.wake();
+		}
+
+		@Override
+		void halt() {
+			disruptor.halt();
+		}
+	}
+	
+	/**
+	 * Subscriber that gets the latest update per instrument/market
+	 */
+	private static class ConflatingSubscriber extends HandOffSubscriber {
+		
+		private final ConflatingQueue queue;
+		
+		ConflatingSubscriber(ConflatingQueue queue) {
+			this.queue = queue;
+		}
+		
+		@Override
+		void publish(MarketUpdate update) {
+			queue.offer(update);
+		}
+		
+		@Override
+		void wake() {
+			queue.wake();
+		}
+		
+		@Override
+		void halt() {
+			queue.halt();
+		}
+	}
+	
+	/**
+	 * Consumer of the shared ring for one subscriber.
+	 * Holds a bit per instrument/market the subscriber is interested in.
+	 * Bits are written under the provider's lock and read by the consumer thread. The bitmask
+	 * is replaced by a larger copy when a key past its end is subscribed.
+	 * 
+	 * The last update of a batch on the shared ring may be one the subscriber skips, so each
+	 * update is held back until the next one it wants or the end of the batch. Holding the event
+	 * is safe as the processor only releases the batch's slots once the whole batch is handled.
+	 */
+	private static class SharedRingSubscriber extends Subscriber implements EventHandler<MarketUpdate>, TimeoutHandler {
+		
+		private final BatchSubscriber<? extends MarketUpdate> consumer;
+
+		//only used by the consumer thread
+		private MarketUpdate held;
+
+		private volatile AtomicLongArray keys = new AtomicLongArray(((Instruments.SIZE * Markets.SIZE) + 63) >>> 6);
+		
+		private BatchEventProcessor<MarketUpdate> processor;
+		
+		private WakeableBarrier barrier;
+		
+		SharedRingSubscriber(BatchSubscriber<? extends MarketUpdate> consumer) {
+			this.consumer = consumer;
+		}
+		
+		@Override
+		void add(int key) {
+			AtomicLongArray current = keys;
+			if((key >>> 6) >= current.length()) {
+				AtomicLongArray updated = new AtomicLongArray(Math.max((key >>> 6) + 1, current.length() * 2));
+				for(int i = 0; i < current.length(); i++) {
+					updated.set(i, current.get(i));
+				}
+				keys = current = updated;
+			}
+			current.set(key >>> 6, current.get(key >>> 6) | (1L << key));
+		}
+
+		@Override
+		void remove(int key) {
+			AtomicLongArray current = keys;
+			if((key >>> 6) < current.length()) {
+				current.set(key >>> 6, current.get(key >>> 6) & ~(1L << key));
+			}
+		}
+		
+		@Override
+		void wake() {
+			barrier.wake();
+		}
+		
+		@Override
+		void halt() {
+			processor.halt();
+		}
+
+		@Override
+		public void onEvent(MarketUpdate event, long sequence, boolean endOfBatch) {
+			int key = Listings.find(event.getTick().getInstrumentId(), event.getMarketId());
+			AtomicLongArray current = keys;
+			if(key >= 0 && (key >>> 6) < current.length() && (current.get(key >>> 6) & (1L << key)) != 0) {
+				if(null != held) {
+					consumer.onUpdate(held, false);
+				}
+				held = event;
+			}
+			if(endOfBatch && null != held) {
+				consumer.onUpdate(held, true);
+				held = null;
+			}
+		}
+
+		@Override
+		public void onTimeout(long sequence) {
+			consumer.onWake();
+		}
+	}
+	
+	/**
+	 * Barrier a subscriber's processor waits on that can be woken. Waking alerts the barrier, as halting
+	 * does, so any wait strategy stops waiting - the alert is then cleared and the wait ends in a TimeoutException,
+	 * which the processor hands to its handler's {@link TimeoutHandler#onTimeout(long) onTimeout} on the subscriber's thread.
+	 * The processor only waits once it is done with a batch, so a wake up during a batch is seen after it.
+	 */
+	private static class WakeableBarrier implements SequenceBarrier {
+		
+		private final SequenceBarrier barrier;
+		
+		//an alert once halted stops the processor
+		private volatile boolean halted;
+		
+		WakeableBarrier(SequenceBarrier barrier) {
+			this.barrier = barrier;
+		}
+		
+		void wake() {
+			barrier.alert();
+		}
+
+		@Override
+		public long waitFor(long sequence) throws AlertException, InterruptedException, TimeoutException {
+			try {
+				return barrier.waitFor(sequence);
+			} catch(AlertException ex) {
+				if(halted) {
+					throw ex;
+				}
+				barrier.clearAlert();
+				//halted while the wake up was cleared - the halt's alert may be the one cleared
+				if(halted) {
+					barrier.alert();
+					throw ex;
+				}
+				throw TimeoutException.INSTANCE;
+			}
+		}
+
+		@Override
+		public long getCursor() {
+			return barrier.getCursor();
+		}
+
+		@Override
+		public boolean isAlerted() {
+			return barrier.isAlerted();
+		}
+
+		@Override
+		public void alert() {
+			halted = true;
+			barrier.alert();
+		}
+
+		@Override
+		public void clearAlert() {
+			barrier.clearAlert();
+		}
+
+		@Override
+		public void checkAlert() throws AlertException {
+			barrier.checkAlert();
+		}
+	}
+	
+	/**
+	 * Merges the updates of several sources into the single threaded hand-off.
+	 * Each source publishes to its own single producer ring, so sources never contend with each other.
+	 * The merging thread polls the rings in turn and takes at most {@link #MERGE_BATCH MERGE_BATCH} 
+	 * updates from a ring before moving on, so a busy source cannot hold up the others.
+	 */
+	private class FeedMerger implements Runnable, EventPoller.Handler<MarketUpdate> {
+		
+		private final RingBuffer<MarketUpdate>[] rings;
+		
+		private final EventPoller<MarketUpdate>[] pollers;
+		
+		//updates taken from the ring being polled - only used by the merging thread
+		private int polled;
+		
+		@SuppressWarnings("unchecked")
+		FeedMerger(int sources) {
+			rings = new RingBuffer[sources];
+			pollers = new EventPoller[sources];
+			for(int i = 0; i < sources; i++) {
+				//nothing waits on the rings' barriers, the merging thread polls - so no signalling on publish
+				RingBuffer<MarketUpdate> ring = RingBuffer.createSingleProducer(new DefaultMarketUpdateFactory(), 
+															defaultConfig.getRingSize(), new BusySpinWaitStrategy());
+				rings[i] = ring;
+				pollers[i] = ring.newPoller();
+				ring.addGatingSequences(pollers[i].getSequence());
+				metrics.gauge(metricsName + ".source-" + i + ".depth", () -> ring.getBufferSize() - ring.remainingCapacity());
+			}
+		}
+		
+		/**
+		 * @return the consumer for the source's updates - publishes to its ring on the source's thread
+		 */
+		Consumer<MarketUpdate> input(int source) {
+			RingBuffer<MarketUpdate> ring = rings[source];
+			return update -> ring.publishEvent(COPY_TRANSLATOR, update);
+		}
+		
+		@Override
+		public void run() {
+			while(!Thread.currentThread().isInterrupted()) {
+				boolean idle = true;
+				for(int i = 0; i < pollers.length; i++) {
+					polled = 0;
+					try {
+						idle &= pollers[i].poll(this) != EventPoller.PollState.PROCESSING;
+					} catch(Exception ex) {
+						System.err.println("Caught exception merging sources, quitting - " + ex);
+						return;
+					}
+				}
+				if(idle) {
+					idle();
+				}
+			}
+		}
+		
+		@Override
+		public boolean onEvent(MarketUpdate event, long sequence, boolean endOfBatch) {
+			accept(event);
+			return ++polled < MERGE_BATCH;
+		}
+		
+		private void idle() {
+			switch(defaultConfig.getWaitStrategy()) {
+			case BUSY_SPIN:
+				break;
+			case YIELDING:
+				Thread.yield();
+				break;
+			default:
+				LockSupport.parkNanos(MERGE_PARK_NANOS);
+			}
+		}
+	}
 	
-	private class DefaultMarketUpdateFactory<T extends MarketUpdate> implements EventFactory<DefaultMarketUpdate> {
+	private static class DefaultMarketUpdateFactory implements EventFactory<MarketUpdate> {
 
 		@Override
-		public DefaultMarketUpdate newInstance() {
+		public MarketUpdate newInstance() {
 			return new DefaultMarketUpdate();
 		}
 		
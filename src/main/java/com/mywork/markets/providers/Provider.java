@@ -5,6 +5,7 @@ import java.util.function.Function;
 import com.mywork.markets.Instruments;
 import com.mywork.markets.MarketUpdate;
 import com.mywork.markets.Markets;
+import com.mywork.markets.SymbolRegistry;
 
 /**
  * Market Data Provider interface.
@@ -37,4 +38,33 @@ public interface Provider {
 	void unsubscribe(Instruments instrument, Markets market, 
 			Function<? extends MarketUpdate, ? extends MarketUpdate> consumer) throws SubscriptionException;
 
+	/**
+	 * subscribe to one instrument from one market by symbol id, see {@link SymbolRegistry SymbolRegistry}.
+	 * Providers that support instruments/markets added at runtime override this - by default
+	 * only the ids of the Instruments/Markets enums can be used.
+	 * @throws ArrayIndexOutOfBoundsException if the default is used with an id added at runtime
+	 */
+	default void subscribe(int instrumentId, int marketId, 
+			Function<? extends MarketUpdate, ? extends MarketUpdate> consumer) throws SubscriptionException {
+		subscribe(Instruments.getInstrumentById(instrumentId), Markets.getMarketById(marketId), consumer);
+	}
+
+	/**
+	 * unsubscribe from one instrument from one market by symbol id, see {@link SymbolRegistry SymbolRegistry}.
+	 * @throws ArrayIndexOutOfBoundsException if the default is used with an id added at runtime
+	 */
+	default void unsubscribe(int instrumentId, int marketId, 
+			Function<? extends MarketUpdate, ? extends MarketUpdate> consumer) throws SubscriptionException {
+		unsubscribe(Instruments.getInstrumentById(instrumentId), Markets.getMarketById(marketId), consumer);
+	}
+
+	/**
+	 * Has the thread delivering the consumer's updates call its {@link BatchSubscriber#onWake() onWake}
+	 * once done with the updates already handed to it - whether or not more arrive. Can be called from any thread.
+	 * Providers that call their consumers on the feed thread have no thread of the consumer's to wake,
+	 * so by default nothing is done.
+	 * @param consumer - the callback used to subscribe
+	 */
+	default void wake(Function<? extends MarketUpdate, ? extends MarketUpdate> consumer) {}
+
 }
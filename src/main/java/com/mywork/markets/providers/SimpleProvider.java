@@ -3,18 +3,18 @@
  */
 package com.mywork.markets.providers;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import com.mywork.markets.Instruments;
+import com.mywork.markets.Listings;
 import com.mywork.markets.MarketUpdate;
 import com.mywork.markets.Markets;
+import com.mywork.markets.SymbolRegistry;
+import com.mywork.markets.metrics.LatencyRecorder;
+import com.mywork.markets.metrics.Metrics;
 import com.mywork.markets.utils.ExecutorUtils;
 import com.mywork.markets.utils.UpdatesProvider;
 
@@ -22,90 +22,103 @@ import com.mywork.markets.utils.UpdatesProvider;
  * Simple provider to test end-to-end functionality.
  * This provider calls its MD subscribers in its own thread (potentially pinned to a core)
  * and so it is expected that the subscribers do not hold up the thread.
+ * Subscriptions are held in a copy-on-write {@link SubscriptionTable SubscriptionTable}
+ * so publishing does not lock.
+ * Records the latency from ingress until all subscribers have been called as <code>&lt;provider&gt;.dispatch</code>,
+ * named by {@link Metrics#uniqueName(String) Metrics.uniqueName}, eg provider-0.dispatch, and removed on stop.
  */
 public class SimpleProvider implements ProviderWithLifecycle, Consumer<MarketUpdate> {
 
-	private List<Function> [][] subscribers = new ArrayList[Instruments.SIZE][Markets.SIZE];
+	private final SubscriptionTable<Function> subscribers = new SubscriptionTable<>(Function[]::new);
 	
 	private volatile UpdatesProvider provider;
 	
 	private final ExecutorService executor = ExecutorUtils.singleThreadExecutor();
 	
-	private final ReadWriteLock lock = new ReentrantReadWriteLock();
-	
+	//tee of every update, eg a JournalWriter
+	private final Consumer<MarketUpdate> journal;
+
+	private final Metrics metrics;
+
+	private final String metricsName;
+
+	private final LatencyRecorder dispatchLatency;
+
 	public SimpleProvider() {
+		this(UpdatesProvider::new, update -> {});
+	}
 
-		for(int i = 0; i < Instruments.SIZE; i++){
-			for(int j = 0; j < Markets.SIZE; j++) {
-				subscribers[i][j] = new ArrayList<>();
-			}
-		}
-		
-		provider = new UpdatesProvider(this);
+	/**
+	 * @param source - creates the source of updates given this provider as its consumer, 
+	 *        eg a {@link com.mywork.markets.journal.JournalUpdatesProvider JournalUpdatesProvider} to replay a journal
+	 * @param journal - gets every update on the feed thread before the subscribers, 
+	 *        eg a {@link com.mywork.markets.journal.JournalWriter JournalWriter}
+	 */
+	public SimpleProvider(Function<Consumer<MarketUpdate>, UpdatesProvider> source, Consumer<MarketUpdate> journal) {
+		this(source, journal, Metrics.DEFAULT);
+	}
+
+	/**
+	 * @param metrics - where the dispatch latency is recorded
+	 * @see #SimpleProvider(Function, Consumer)
+	 */
+	public SimpleProvider(Function<Consumer<MarketUpdate>, UpdatesProvider> source, Consumer<MarketUpdate> journal,
+							Metrics metrics) {
+
+		this.journal = journal;
+		this.metrics = metrics;
+		this.metricsName = metrics.uniqueName("provider");
+		this.dispatchLatency = metrics.latency(metricsName + ".dispatch");
+		provider = source.apply(this);
 
 	}
 
 	@Override
 	public void subscribe(Instruments instrument, Markets market,
 			Function<? extends MarketUpdate, ? extends MarketUpdate> consumer) throws SubscriptionException {
-		try{
-			lock.writeLock().lock();
-		
-			if(!subscribers[instrument.ordinal()][market.ordinal()].add(consumer)) {
-				throw new SubscriptionException(String.format("Could not register subscription for [%s] for [%s]",
-															instrument, market));
-			}
-		}finally {
-			lock.writeLock().unlock();
-		}
-		
+		subscribe(instrument.ordinal(), market.ordinal(), consumer);
 	}
 
 	@Override
 	public void unsubscribe(Instruments instrument, Markets market,
 			Function<? extends MarketUpdate, ? extends MarketUpdate> consumer) throws SubscriptionException {
-		try{
-			lock.writeLock().lock();
-	
-			if(!subscribers[instrument.ordinal()][market.ordinal()].remove(consumer)) {
-				throw new SubscriptionException(String.format("Could not unregister subscription for [%s] for [%s]",
-															instrument, market));
-			}
-		}finally {
-			lock.writeLock().unlock();
+		unsubscribe(instrument.ordinal(), market.ordinal(), consumer);
+	}
+
+	@Override
+	public void subscribe(int instrumentId, int marketId,
+			Function<? extends MarketUpdate, ? extends MarketUpdate> consumer) throws SubscriptionException {
+		subscribers.add(SubscriptionTable.subscriptionKey(instrumentId, marketId), consumer);
+	}
+
+	@Override
+	public void unsubscribe(int instrumentId, int marketId,
+			Function<? extends MarketUpdate, ? extends MarketUpdate> consumer) throws SubscriptionException {
+		int key = Listings.find(instrumentId, marketId);
+		if(key < 0 || !subscribers.remove(key, consumer)) {
+			throw new SubscriptionException(String.format("Could not unregister subscription for [%s] for [%s]",
+														SymbolRegistry.INSTRUMENTS.getNameOrId(instrumentId), 
+														SymbolRegistry.MARKETS.getNameOrId(marketId)));
 		}
 	}
 
 	@Override
 	public void accept(MarketUpdate update) {
 		
-		try{
-			lock.readLock().lock();
-	
-			List<Function> subs = subscribers[update.getTick().getInstrument().ordinal()][update.getMarket().ordinal()];
-			if(null == subs) {
-				return;
-			}
-	
-			for(int i = 0; i < subs.size(); i++){
-				subs.get(i).apply(update);
-			}
-		} finally {
-			lock.readLock().unlock();
+		journal.accept(update);
+		
+		//snapshot of the subscribers - never null and not changed while iterating
+		Function[] subs = subscribers.get(update.getTick().getInstrumentId(), update.getMarketId());
+
+		for(int i = 0; i < subs.length; i++){
+			subs[i].apply(update);
 		}
+
+		dispatchLatency.recordSince(update.getIngressNanos());
 	}
 	
 	public int getNumberOfSubscribers(Instruments ins, Markets market) {
-
-		int size = 0;
-		try {
-			lock.readLock().lock();
-			size = subscribers[ins.ordinal()][market.ordinal()].size();
-		} finally {
-			lock.readLock().unlock();
-		}
-		
-		return size;
+		return subscribers.size(ins, market);
 	}
 
 	@Override
@@ -128,5 +141,13 @@ public class SimpleProvider implements ProviderWithLifecycle, Consumer<MarketUpd
 			System.err.println("UpdatesProvider did not shut down");
 		}
 		
+		metrics.remove(metricsName + ".dispatch");
+	}
+	
+	/**
+	 * @return prefix of this provider's metric names - unique within its {@link Metrics Metrics}
+	 */
+	public String getMetricsName() {
+		return metricsName;
 	}
 }
@@ -0,0 +1,152 @@
+package com.mywork.markets.providers;
+
+import java.util.concurrent.ThreadFactory;
+
+import com.lmax.disruptor.util.DaemonThreadFactory;
+
+/**
+ * Per subscriber hand-off settings for {@link MultiThreadProvider MultiThreadProvider}.
+ * Immutable - use the <code>with</code> methods to derive a changed copy.
+ */
+public class SubscriberConfig {
+
+	/**
+	 * How updates reach the subscriber
+	 */
+	public enum Delivery {
+		/** every update through the subscriber's ring - the feed waits if the ring is full */
+		LOSSLESS,
+		/** only the latest update per instrument/market - the feed never waits, see {@link ConflatingQueue ConflatingQueue} */
+		CONFLATED
+	}
+
+	/**
+	 * What happens to an update when a lossless subscriber's ring is full
+	 */
+	public enum Overflow {
+		/** the feed waits for the subscriber - no update is lost but every other subscriber waits too */
+		BLOCK,
+		/** the update is dropped */
+		DROP_NEWEST,
+		/** the subscriber skips the updates queued on its ring once its current update is done, and then gets
+		 *  the latest per instrument/market of those that found the ring full - the feed never waits */
+		DROP_OLDEST,
+		/** the update is held with the latest per instrument/market and delivered once the ring is empty */
+		CONFLATE,
+		/** the subscriber is stopped and gets no more updates */
+		DISCONNECT
+	}
+
+	/**
+	 * 1. disruptor size of 1024 - keeping it to 1k to try and keep size of disruptor 
+	 * to L3 cache atleast
+	 * 2. BlockingWaitStrategy because of laptop configuration. 
+	 * Would use BUSY_SPIN or YIELDING with pinned threads in real-life
+	 */
+	public static final SubscriberConfig DEFAULT = 
+			new SubscriberConfig(WaitStrategies.BLOCKING, 1024, DaemonThreadFactory.INSTANCE);
+	
+	private final WaitStrategies waitStrategy;
+	private final int ringSize;
+	private final ThreadFactory threadFactory;
+	private final Delivery delivery;
+	private final String name;
+	private final Overflow overflow;
+
+	/**
+	 * lossless delivery
+	 * @see #SubscriberConfig(WaitStrategies, int, ThreadFactory, Delivery)
+	 */
+	public SubscriberConfig(WaitStrategies waitStrategy, int ringSize, ThreadFactory threadFactory) {
+		this(waitStrategy, ringSize, threadFactory, Delivery.LOSSLESS);
+	}
+
+	/**
+	 * @param waitStrategy - how the subscriber's thread waits for updates
+	 * @param ringSize - size of the subscriber's ring, must be a power of 2. Not used for conflated delivery.
+	 * @param threadFactory - creates the subscriber's thread, eg a pinned thread from 
+	 *        {@link com.mywork.markets.utils.ExecutorUtils#pinnedThreadFactory(String, int...) ExecutorUtils}
+	 * @param delivery - lossless or conflated delivery
+	 * @throws IllegalArgumentException if the ring size is not a power of 2
+	 * @throws NullPointerException if the wait strategy, thread factory or delivery are null
+	 */
+	public SubscriberConfig(WaitStrategies waitStrategy, int ringSize, ThreadFactory threadFactory, Delivery delivery) {
+		this(waitStrategy, ringSize, threadFactory, delivery, null, Overflow.BLOCK);
+	}
+
+	private SubscriberConfig(WaitStrategies waitStrategy, int ringSize, ThreadFactory threadFactory,
+							Delivery delivery, String name, Overflow overflow) {
+		if(ringSize < 1 || Integer.bitCount(ringSize) != 1) {
+			throw new IllegalArgumentException("Ring size must be a power of 2 - " + ringSize);
+		}
+		if(null == waitStrategy || null == threadFactory || null == delivery || null == overflow) {
+			throw new NullPointerException("Wait strategy, thread factory, delivery and overflow are required");
+		}
+		this.waitStrategy = waitStrategy;
+		this.ringSize = ringSize;
+		this.threadFactory = threadFactory;
+		this.delivery = delivery;
+		this.name = name;
+		this.overflow = overflow;
+	}
+
+	public WaitStrategies getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	public int getRingSize() {
+		return ringSize;
+	}
+
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+	
+	public Delivery getDelivery() {
+		return delivery;
+	}
+
+	/**
+	 * @return what happens when the subscriber's ring is full. Not used for conflated delivery.
+	 */
+	public Overflow getOverflow() {
+		return overflow;
+	}
+	
+	/**
+	 * @return name the subscriber's metrics are recorded under, null to number subscribers in order
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	public SubscriberConfig withWaitStrategy(WaitStrategies waitStrategy) {
+		return new SubscriberConfig(waitStrategy, ringSize, threadFactory, delivery, name, overflow);
+	}
+
+	public SubscriberConfig withRingSize(int ringSize) {
+		return new SubscriberConfig(waitStrategy, ringSize, threadFactory, delivery, name, overflow);
+	}
+
+	public SubscriberConfig withThreadFactory(ThreadFactory threadFactory) {
+		return new SubscriberConfig(waitStrategy, ringSize, threadFactory, delivery, name, overflow);
+	}
+
+	public SubscriberConfig withDelivery(Delivery delivery) {
+		return new SubscriberConfig(waitStrategy, ringSize, threadFactory, delivery, name, overflow);
+	}
+	
+	public SubscriberConfig withName(String name) {
+		return new SubscriberConfig(waitStrategy, ringSize, threadFactory, delivery, name, overflow);
+	}
+
+	public SubscriberConfig withOverflow(Overflow overflow) {
+		return new SubscriberConfig(waitStrategy, ringSize, threadFactory, delivery, name, overflow);
+	}
+	
+	public String toString() {
+		return "WaitStrategy : [" + waitStrategy + "] RingSize : [" + ringSize + "]"
+				+ " ThreadFactory : [" + threadFactory + "] Delivery : [" + delivery + "] Name : [" + name + "]"
+				+ " Overflow : [" + overflow + "]";
+	}
+}
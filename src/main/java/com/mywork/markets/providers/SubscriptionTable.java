@@ -0,0 +1,140 @@
+package com.mywork.markets.providers;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+import com.mywork.markets.Instruments;
+import com.mywork.markets.Listings;
+import com.mywork.markets.Markets;
+import com.mywork.markets.SymbolRegistry;
+
+/**
+ * Copy-on-write table of subscribers per instrument/market.
+ * Each instrument/market holds an immutable array of subscribers which is replaced as a whole 
+ * on subscribe/unsubscribe. Publishing threads only do a volatile read of the current array
+ * and never lock, while subscribe/unsubscribe (rare) are serialized on the table.
+ * 
+ * Entries are indexed by the {@link Listings Listings} key of the instrument/market, and the 
+ * table grows on subscribe as instruments/markets are added at runtime. Keys are only given out
+ * by {@link #subscriptionKey(int, int) subscriptionKey} - looking up the subscribers of an update
+ * never adds a key, an instrument/market without one has no subscribers.
+ * 
+ * Arrays returned by {@link #get(int) get} must not be modified.
+ *
+ * @param <T> type of subscriber stored
+ */
+public class SubscriptionTable<T> {
+
+	//replaced when it grows
+	private volatile AtomicReferenceArray<T[]> table;
+	
+	private final IntFunction<T[]> arrayFactory;
+	
+	//shared by all entries with no subscribers to prevent null checks when publishing
+	private final T[] empty;
+	
+	/**
+	 * @param arrayFactory - creates arrays of the subscriber type, eg Function[]::new
+	 */
+	public SubscriptionTable(IntFunction<T[]> arrayFactory) {
+		this.arrayFactory = arrayFactory;
+		this.empty = arrayFactory.apply(0);
+		this.table = new AtomicReferenceArray<>(0);
+		grow(Instruments.SIZE * Markets.SIZE);
+	}
+	
+	public static int key(Instruments instrument, Markets market) {
+		return Listings.key(instrument.ordinal(), market.ordinal());
+	}
+	
+	/**
+	 * @return the key to subscribe the instrument/market under - adding it if not known yet
+	 * @throws SubscriptionException if either id has not been interned in the {@link SymbolRegistry SymbolRegistry}
+	 */
+	public static int subscriptionKey(int instrumentId, int marketId) throws SubscriptionException {
+		if(instrumentId < 0 || instrumentId >= SymbolRegistry.INSTRUMENTS.size() 
+				|| marketId < 0 || marketId >= SymbolRegistry.MARKETS.size()) {
+			throw new SubscriptionException(String.format("Unknown instrument [%d] or market [%d] id", 
+																instrumentId, marketId));
+		}
+		return Listings.key(instrumentId, marketId);
+	}
+	
+	/**
+	 * @return current subscribers for the key - never null
+	 */
+	public T[] get(int key) {
+		AtomicReferenceArray<T[]> current = table;
+		return key < current.length() ? current.get(key) : empty;
+	}
+
+	public T[] get(Instruments instrument, Markets market) {
+		return get(instrument.ordinal(), market.ordinal());
+	}
+	
+	/**
+	 * @return current subscribers for the instrument/market - empty if it has never been subscribed to
+	 */
+	public T[] get(int instrumentId, int marketId) {
+		int key = Listings.find(instrumentId, marketId);
+		return key < 0 ? empty : get(key);
+	}
+	
+	public int size(Instruments instrument, Markets market) {
+		return get(instrument, market).length;
+	}
+	
+	/**
+	 * adds the subscriber for the key. The same subscriber can be added more than once.
+	 */
+	public synchronized void add(int key, T subscriber) {
+		if(key >= table.length()) {
+			grow(Math.max(key + 1, table.length() * 2));
+		}
+		T[] current = table.get(key);
+		T[] updated = Arrays.copyOf(current, current.length + 1);
+		updated[current.length] = subscriber;
+		table.set(key, updated);
+	}
+	
+	/**
+	 * removes one occurrence of the subscriber for the key
+	 * @return false if the subscriber was not subscribed for the key
+	 */
+	public synchronized boolean remove(int key, T subscriber) {
+		T[] current = get(key);
+		for(int i = 0; i < current.length; i++) {
+			if(current[i].equals(subscriber)) {
+				T[] updated = arrayFactory.apply(current.length - 1);
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+				table.set(key, updated);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public boolean contains(int key, T subscriber) {
+		T[] current = get(key);
+		for(int i = 0; i < current.length; i++) {
+			if(current[i].equals(subscriber)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * copy into a larger table - called with the table's lock held
+	 */
+	private void grow(int size) {
+		AtomicReferenceArray<T[]> current = table;
+		AtomicReferenceArray<T[]> updated = new AtomicReferenceArray<>(size);
+		for(int i = 0; i < size; i++) {
+			updated.set(i, i < current.length() ? current.get(i) : empty);
+		}
+		table = updated;
+	}
+}
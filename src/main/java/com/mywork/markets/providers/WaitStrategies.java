@@ -0,0 +1,56 @@
+package com.mywork.markets.providers;
+
+import java.util.concurrent.TimeUnit;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.PhasedBackoffWaitStrategy;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+
+/**
+ * Wait strategies a subscriber's consumer thread can use, from cheapest on CPU (and slowest to react)
+ * to lowest latency (burning a core).
+ * Each call to {@link #create() create} returns a new instance as strategies hold per-disruptor state.
+ */
+public enum WaitStrategies {
+
+	/** lock and condition - lowest CPU use, highest latency */
+	BLOCKING {
+		@Override
+		public WaitStrategy create() {
+			return new BlockingWaitStrategy();
+		}
+	},
+	/** spins, then yields, then parks for short periods */
+	SLEEPING {
+		@Override
+		public WaitStrategy create() {
+			return new SleepingWaitStrategy();
+		}
+	},
+	/** spins then yields - good latency without a dedicated core */
+	YIELDING {
+		@Override
+		public WaitStrategy create() {
+			return new YieldingWaitStrategy();
+		}
+	},
+	/** spins - lowest latency, needs a dedicated (ideally pinned) core */
+	BUSY_SPIN {
+		@Override
+		public WaitStrategy create() {
+			return new BusySpinWaitStrategy();
+		}
+	},
+	/** spins for 10us, yields for up to 1ms, then blocks */
+	PHASED_BACKOFF {
+		@Override
+		public WaitStrategy create() {
+			return PhasedBackoffWaitStrategy.withLock(10, 1000, TimeUnit.MICROSECONDS);
+		}
+	};
+	
+	public abstract WaitStrategy create();
+}
@@ -1,12 +1,22 @@
 package com.mywork.markets.utils;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Can beused to create different Executors/threads
  * with pinned or normal threads etc.
- *
+ * 
+ * Pinning uses Linux CPU affinity through <code>taskset</code> on the thread's native id,
+ * so it needs no native libraries. Where pinning is not possible (not Linux, no taskset)
+ * the thread runs unpinned and a warning is printed.
  */
 public class ExecutorUtils {
 	
@@ -14,4 +24,128 @@ public class ExecutorUtils {
 		return Executors.newSingleThreadExecutor();
 	}
 
+	public static ExecutorService singleThreadExecutor(ThreadFactory threadFactory) {
+		return Executors.newSingleThreadExecutor(threadFactory);
+	}
+	
+	/**
+	 * executor with one daemon thread for timed tasks, named as by {@link #namedThreadFactory(String) namedThreadFactory}
+	 */
+	public static ScheduledExecutorService scheduledExecutor(String name) {
+		return Executors.newSingleThreadScheduledExecutor(namedThreadFactory(name));
+	}
+	
+	/**
+	 * executor with a daemon thread for each of the given number of long running tasks, 
+	 * named as by {@link #namedThreadFactory(String) namedThreadFactory}
+	 */
+	public static ExecutorService fixedThreadExecutor(String name, int threads) {
+		return fixedThreadExecutor(threads, namedThreadFactory(name));
+	}
+
+	/**
+	 * executor with a thread from the factory, eg a {@link #pinnedThreadFactory(String, int...) pinnedThreadFactory},
+	 * for each of the given number of long running tasks
+	 */
+	public static ExecutorService fixedThreadExecutor(int threads, ThreadFactory threadFactory) {
+		return Executors.newFixedThreadPool(threads, threadFactory);
+	}
+	
+	/**
+	 * single thread executor whose thread is pinned to the given cpu
+	 */
+	public static ExecutorService pinnedSingleThreadExecutor(String name, int cpu) {
+		return Executors.newSingleThreadExecutor(pinnedThreadFactory(name, cpu));
+	}
+	
+	/**
+	 * Creates daemon threads named after the prefix and a count, eg name-0, name-1
+	 * @param name - prefix for the thread names
+	 */
+	public static ThreadFactory namedThreadFactory(String name) {
+		final AtomicInteger count = new AtomicInteger();
+		
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+	
+	/**
+	 * Creates daemon threads pinned to the given cpus. Each new thread is pinned to the next cpu
+	 * in the list, wrapping around - so giving one cpu per expected thread gives each its own core.
+	 * @param name - prefix for the thread names
+	 * @param cpus - cpus to pin threads to
+	 * @throws IllegalArgumentException if no cpus are given
+	 */
+	public static ThreadFactory pinnedThreadFactory(String name, int... cpus) {
+		if(cpus.length == 0) {
+			throw new IllegalArgumentException("At least one cpu is required to pin threads");
+		}
+		final int[] allCpus = cpus.clone();
+		final AtomicInteger count = new AtomicInteger();
+		
+		return runnable -> {
+			int index = count.getAndIncrement();
+			int cpu = allCpus[index % allCpus.length];
+			Thread thread = new Thread(() -> {
+				pinCurrentThread(cpu);
+				runnable.run();
+			}, name + "-" + index + "-cpu" + cpu);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+	
+	/**
+	 * Pins the calling thread to the given cpus.
+	 * @return true if the affinity was set
+	 */
+	public static boolean pinCurrentThread(int... cpus) {
+		
+		long tid = nativeThreadId();
+		if(tid < 0) {
+			System.err.println("Could not find native thread id, not pinning " + Thread.currentThread().getName());
+			return false;
+		}
+		
+		StringBuilder cpuList = new StringBuilder();
+		for(int i = 0; i < cpus.length; i++) {
+			if(i > 0) {
+				cpuList.append(',');
+			}
+			cpuList.append(cpus[i]);
+		}
+		
+		try {
+			Process taskset = new ProcessBuilder("taskset", "-p", "-c", cpuList.toString(), Long.toString(tid))
+										.redirectErrorStream(true)
+										.start();
+			if(taskset.waitFor(5, TimeUnit.SECONDS) && taskset.exitValue() == 0) {
+				return true;
+			}
+			taskset.destroy();
+			System.err.println("taskset failed, not pinning " + Thread.currentThread().getName());
+		} catch (IOException e) {
+			System.err.println("Could not run taskset, not pinning " + Thread.currentThread().getName() + " - " + e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+	
+	/**
+	 * Linux thread id of the calling thread - /proc/thread-self links to /proc/[pid]/task/[tid]
+	 * @return the id or -1 if it cannot be found
+	 */
+	static long nativeThreadId() {
+		try {
+			Path task = Paths.get("/proc/thread-self").toRealPath();
+			return Long.parseLong(task.getFileName().toString());
+		} catch (IOException | NumberFormatException e) {
+			return -1;
+		}
+	}
+
 }
@@ -0,0 +1,67 @@
+package com.mywork.markets.utils;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Array of values indexed by a dense id (see {@link com.mywork.markets.SymbolRegistry SymbolRegistry}) 
+ * that grows when an id past the end is used. New slots are filled from a factory so 
+ * {@link #get(int) get} never returns null, and a get within the table is an array read.
+ * 
+ * Not thread-safe - meant for state owned by one thread.
+ *
+ * @param <T> type of value held per id
+ */
+public class GrowableTable<T> {
+
+	private final IntFunction<T> factory;
+	
+	private Object[] values;
+	
+	/**
+	 * @param initialSize - number of ids to create values for up front
+	 * @param factory - creates the value for an id
+	 */
+	public GrowableTable(int initialSize, IntFunction<T> factory) {
+		this.factory = factory;
+		this.values = new Object[0];
+		grow(initialSize);
+	}
+	
+	/**
+	 * @return the value for the id - created if needed
+	 * @throws ArrayIndexOutOfBoundsException if the id is negative
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int id) {
+		Object[] current = values;
+		if(id < current.length) {
+			return (T)current[id];
+		}
+		grow(Math.max(id + 1, current.length * 2));
+		return (T)values[id];
+	}
+	
+	/**
+	 * replaces the value for the id - growing if needed
+	 * @throws ArrayIndexOutOfBoundsException if the id is negative
+	 */
+	public void set(int id, T value) {
+		if(id >= values.length) {
+			grow(Math.max(id + 1, values.length * 2));
+		}
+		values[id] = value;
+	}
+	
+	public int size() {
+		return values.length;
+	}
+	
+	private void grow(int size) {
+		int from = values.length;
+		values = Arrays.copyOf(values, size);
+		for(int i = from; i < size; i++) {
+			values[i] = factory.apply(i);
+		}
+	}
+}
@@ -8,7 +8,6 @@ import com.mywork.markets.Instruments;
 import com.mywork.markets.MarketUpdate;
 import com.mywork.markets.Markets;
 import com.mywork.markets.Side;
-import com.mywork.markets.Tick;
 
 /**
  * Sample implementation of how this provider
@@ -20,11 +19,14 @@ import com.mywork.markets.Tick;
  */
 public class UpdatesProvider {
 	
-	private volatile boolean stop = false;
+	protected volatile boolean stop = false;
 	
 	private Random random = new Random();
 	
-	private final Consumer<MarketUpdate> consumer;
+	protected final Consumer<MarketUpdate> consumer;
+	
+	//reused for every update - consumers copy what they need before returning
+	private final DefaultMarketUpdate update = new DefaultMarketUpdate();
 	
 	public UpdatesProvider(Consumer<MarketUpdate> consumer){
 		this.consumer = consumer;
@@ -60,11 +62,16 @@ public class UpdatesProvider {
 	}
 	
 
+	/**
+	 * fills and returns the same update instance on every call
+	 * so that no objects are created per quote. The update is stamped with its ingress time.
+	 */
 	public MarketUpdate createRandomUpdate() {
-		return new DefaultMarketUpdate(Markets.getMarketById(random.nextInt(Markets.SIZE-1)), 
-										new Tick(Instruments.getInstrumentById(random.nextInt(Instruments.SIZE-1)), 
-												Side.getSideById(random.nextInt(Side.SIZE)), 
-												random.nextDouble(), random.nextDouble() * 1_00_000, 
-												random.nextDouble(), random.nextDouble() * 1_00_000));
+		update.setIngressNanos(System.nanoTime());
+		return update.set(Markets.getMarketById(random.nextInt(Markets.SIZE-1)), 
+						Instruments.getInstrumentById(random.nextInt(Instruments.SIZE-1)), 
+						Side.getSideById(random.nextInt(Side.SIZE)), 
+						random.nextDouble(), random.nextDouble() * 1_00_000, 
+						random.nextDouble(), random.nextDouble() * 1_00_000);
 	}
 }
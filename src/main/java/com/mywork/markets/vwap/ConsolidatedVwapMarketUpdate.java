@@ -0,0 +1,12 @@
+package com.mywork.markets.vwap;
+
+/**
+ * VWAP price of an instrument across all markets it is subscribed on.
+ * The market is always null as the price is not from any single market.
+ */
+public class ConsolidatedVwapMarketUpdate extends VwapMarketUpdate {
+
+	public String toString() {
+		return "Consolidated Tick : [" + getTick() + "]";
+	}
+}
@@ -0,0 +1,112 @@
+package com.mywork.markets.vwap;
+
+import java.util.concurrent.TimeUnit;
+
+import com.mywork.markets.FixedPoint;
+
+/**
+ * When {@link Vwapper Vwapper} publishes the vwap of an instrument/market or instrument after an update.
+ * {@link #ALWAYS ALWAYS} publishes every update. Otherwise a vwap is only published if its bid or offer
+ * moved from the last one published by at least a threshold - any change if no threshold is set - and,
+ * if a minimum interval is set, that long after the last one published for the same key.
+ * The first vwap of a key is always published.
+ *
+ * Updates that are not published are not lost - if the vwap differs from the last one published, the key
+ * is marked and its latest vwap is published by {@link Vwapper#flushSuppressed() Vwapper.flushSuppressed}.
+ *
+ * Immutable - use the <code>with</code> methods to derive a changed copy.
+ */
+public final class PublicationPolicy {
+
+	public static final PublicationPolicy ALWAYS = new PublicationPolicy(false, 0, 0.0, 0);
+
+	/** publishes only when the bid or offer vwap changed */
+	public static final PublicationPolicy ON_CHANGE = new PublicationPolicy(true, 0, 0.0, 0);
+
+	private final boolean changesOnly;
+
+	//in FixedPoint price units
+	private final long absoluteThreshold;
+
+	private final double relativeThreshold;
+
+	private final long minIntervalNanos;
+
+	private PublicationPolicy(boolean changesOnly, long absoluteThreshold, double relativeThreshold, long minIntervalNanos) {
+		if(absoluteThreshold < 0 || relativeThreshold < 0 || Double.isNaN(relativeThreshold) || minIntervalNanos < 0) {
+			throw new IllegalArgumentException(String.format("Invalid thresholds [%d] [%f] or interval [%d]ns",
+									absoluteThreshold, relativeThreshold, minIntervalNanos));
+		}
+		this.changesOnly = changesOnly;
+		this.absoluteThreshold = absoluteThreshold;
+		this.relativeThreshold = relativeThreshold;
+		this.minIntervalNanos = minIntervalNanos;
+	}
+
+	/**
+	 * @param price - the smallest move published, eg 0.0001 for a pip
+	 * @throws IllegalArgumentException if the price is negative
+	 */
+	public PublicationPolicy withAbsoluteThreshold(double price) {
+		return new PublicationPolicy(true, FixedPoint.toPrice(price), relativeThreshold, minIntervalNanos);
+	}
+
+	/**
+	 * @param fraction - the smallest move published as a fraction of the last price published, eg 0.0001 for 1bp
+	 * @throws IllegalArgumentException if the fraction is negative
+	 */
+	public PublicationPolicy withRelativeThreshold(double fraction) {
+		return new PublicationPolicy(true, absoluteThreshold, fraction, minIntervalNanos);
+	}
+
+	/**
+	 * @param micros - the least time between publications of a key, 0 for none
+	 * @throws IllegalArgumentException if the interval is negative
+	 */
+	public PublicationPolicy withMinIntervalMicros(long micros) {
+		return new PublicationPolicy(changesOnly, absoluteThreshold, relativeThreshold, TimeUnit.MICROSECONDS.toNanos(micros));
+	}
+
+	/**
+	 * @return true if only vwaps that moved are published
+	 */
+	public boolean isChangesOnly() {
+		return changesOnly;
+	}
+
+	/**
+	 * @return the smallest move published in {@link FixedPoint FixedPoint} price units, 0 if none
+	 */
+	public long getAbsoluteThreshold() {
+		return absoluteThreshold;
+	}
+
+	public double getRelativeThreshold() {
+		return relativeThreshold;
+	}
+
+	public long getMinIntervalNanos() {
+		return minIntervalNanos;
+	}
+
+	/**
+	 * @return true if a price moving from the last one published to the current one is published.
+	 *         With both thresholds set, a move of at least either is published.
+	 */
+	boolean isMoved(long last, long current) {
+		long move = Math.abs(current - last);
+		if(!changesOnly) {
+			return true;
+		}
+		if(absoluteThreshold == 0 && relativeThreshold == 0) {
+			return move != 0;
+		}
+		return (absoluteThreshold > 0 && move >= absoluteThreshold)
+				|| (relativeThreshold > 0 && move >= relativeThreshold * last);
+	}
+
+	public String toString() {
+		return "ChangesOnly : [" + changesOnly + "] AbsoluteThreshold : [" + FixedPoint.fromPrice(absoluteThreshold) + "]"
+				+ " RelativeThreshold : [" + relativeThreshold + "] MinIntervalNanos : [" + minIntervalNanos + "]";
+	}
+}
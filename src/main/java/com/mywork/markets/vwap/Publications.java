@@ -0,0 +1,83 @@
+package com.mywork.markets.vwap;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * What {@link Vwapper Vwapper} last published per dense key - the bid and offer vwap and when -
+ * and which keys have a vwap held back by their {@link PublicationPolicy PublicationPolicy}.
+ * Held in primitive arrays and bitsets indexed by key that grow when a key past the end is used.
+ *
+ * Not thread-safe - meant for state owned by one thread.
+ */
+final class Publications {
+
+	//per key, in FixedPoint price units and System.nanoTime
+	private long[] bidVwaps;
+	private long[] offerVwaps;
+	private long[] nanos;
+
+	//keys published at least once
+	private final BitSet published = new BitSet();
+
+	//keys with a vwap held back, that differs from the last one published
+	private final BitSet suppressed = new BitSet();
+
+	/**
+	 * @param size - number of keys to hold up front
+	 */
+	Publications(int size) {
+		bidVwaps = new long[size];
+		offerVwaps = new long[size];
+		nanos = new long[size];
+	}
+
+	/**
+	 * Decides whether the key's vwap is published under the policy - recording it if it is. If it is not,
+	 * the key is marked suppressed while its vwap differs from the last one published, so a vwap that
+	 * has not moved is not published again by a flush.
+	 * @param now - System.nanoTime, only read if the policy has a minimum interval
+	 * @return true if the vwap is to be published
+	 */
+	boolean test(int key, PublicationPolicy policy, long bidVwap, long offerVwap, long now) {
+		if(key >= nanos.length) {
+			grow(Math.max(key + 1, nanos.length * 2));
+		}
+		boolean publish = !published.get(key)
+				|| ((policy.isMoved(bidVwaps[key], bidVwap) || policy.isMoved(offerVwaps[key], offerVwap))
+					&& (policy.getMinIntervalNanos() == 0 || now - nanos[key] >= policy.getMinIntervalNanos()));
+		if(publish) {
+			published(key, bidVwap, offerVwap, now);
+		} else {
+			suppressed.set(key, bidVwap != bidVwaps[key] || offerVwap != offerVwaps[key]);
+		}
+		return publish;
+	}
+
+	/**
+	 * records the key's vwap as published, whatever the policy
+	 */
+	void published(int key, long bidVwap, long offerVwap, long now) {
+		if(key >= nanos.length) {
+			grow(Math.max(key + 1, nanos.length * 2));
+		}
+		bidVwaps[key] = bidVwap;
+		offerVwaps[key] = offerVwap;
+		nanos[key] = now;
+		published.set(key);
+		suppressed.clear(key);
+	}
+
+	/**
+	 * @return the first suppressed key from the given key on, -1 if none
+	 */
+	int nextSuppressed(int from) {
+		return suppressed.nextSetBit(from);
+	}
+
+	private void grow(int size) {
+		bidVwaps = Arrays.copyOf(bidVwaps, size);
+		offerVwaps = Arrays.copyOf(offerVwaps, size);
+		nanos = Arrays.copyOf(nanos, size);
+	}
+}
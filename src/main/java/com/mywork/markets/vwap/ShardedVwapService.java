@@ -0,0 +1,347 @@
+package com.mywork.markets.vwap;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.EventTranslatorThreeArg;
+import com.lmax.disruptor.RingBuffer;
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.Instruments;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.providers.Provider;
+import com.mywork.markets.providers.SubscriberConfig;
+import com.mywork.markets.services.Lifecycle;
+
+/**
+ * Spreads VWAP calculation over several {@link Vwapper Vwapper} shards, each on its own thread
+ * fed by its own ring. Every instrument belongs to one shard - by default instrument id modulo
+ * the number of shards - so its vwaps for all markets are calculated on one thread.
+ *
+ * The service subscribes once to the provider and routes each update to the shard of its instrument.
+ * {@link #apply(MarketUpdate) apply} must be called from one thread - the provider's publishing thread.
+ *
+ * Instruments can be moved between shards while running, see {@link #move(int, int) move} and
+ * {@link #rebalance() rebalance}. A move is done by the routing thread with control events:
+ * 1. the new shard is told to expect the instrument - it keeps calculating but holds back its output
+ * 2. the old shard is told to hand over - it takes the instrument's totals out and sends them to the new shard
+ * 3. updates for the instrument are routed to the new shard
+ * 4. the new shard merges the totals, publishes the merged vwaps and releases its output.
+ * Totals are sums, so updates the new shard calculated before the merge are not lost. Only one move
+ * is in flight at a time, which also keeps shards from blocking on each other's rings.
+ *
+ * Each shard hands its vwapper the updates of a batch taken off its ring as one batch, so an
+ * instrument/market updated several times in a burst is published once - see {@link Vwapper Vwapper}.
+ *
+ * The sinks are called from the shard threads - the vwaps of one instrument always come from one
+ * thread at a time and in order.
+ */
+public class ShardedVwapService implements Function<MarketUpdate, MarketUpdate>, Lifecycle {
+
+	private static final int UPDATE = 0;
+	private static final int EXPECT = 1;
+	private static final int HAND_OVER = 2;
+	private static final int MERGE = 3;
+
+	//copies the update's primitives into the pre-allocated event - does not allocate
+	private static final EventTranslatorOneArg<ShardEvent, MarketUpdate> UPDATE_TRANSLATOR =
+			(event, sequence, update) -> {
+				event.type = UPDATE;
+				event.update.setMarketId(update.getMarketId());
+				event.update.setSequence(update.getSequence());
+				event.update.setIngressNanos(update.getIngressNanos());
+				event.update.setTick(update.getTick());
+			};
+
+	//control events are rare, so boxing the ids is fine
+	private static final EventTranslatorThreeArg<ShardEvent, Integer, Integer, Object[]> CONTROL_TRANSLATOR =
+			(event, sequence, type, instrumentId, args) -> {
+				event.type = type;
+				event.instrumentId = instrumentId;
+				event.shard = (Integer)args[0];
+				event.state = (long[])args[1];
+			};
+
+	private final Shard[] shards;
+
+	private final SubscriberConfig config;
+
+	private final VwapSubscriptions subscriptions;
+
+	//shard per instrument id. Copy-on-write - written by the routing thread, read by anyone.
+	private volatile int[] routes = new int[0];
+
+	//updates per instrument id since the last rebalance - only used by the routing thread
+	private long[] counts = new long[Instruments.SIZE];
+
+	//moves asked for by other threads, done by the routing thread
+	private final ConcurrentLinkedQueue<int[]> moves = new ConcurrentLinkedQueue<>();
+
+	private volatile boolean rebalanceRequested;
+
+	//set by the routing thread when a move starts, cleared by the new shard once merged
+	private volatile boolean moving;
+
+	/**
+	 * @param provider - the provider to subscribe to
+	 * @param shards - number of shards/threads
+	 * @param config - ring size, wait strategy and thread factory of the shards
+	 * @param sink - receives every vwap-ed update
+	 * @param consolidatedSink - receives every consolidated vwap-ed update
+	 * @throws IllegalArgumentException if shards is not positive
+	 */
+	public ShardedVwapService(Provider provider, int shards, SubscriberConfig config,
+							Consumer<? super VwapMarketUpdate> sink,
+							Consumer<? super ConsolidatedVwapMarketUpdate> consolidatedSink) {
+		if(shards <= 0) {
+			throw new IllegalArgumentException("Invalid number of shards [" + shards + "]");
+		}
+		this.config = config;
+		this.subscriptions = new VwapSubscriptions(provider);
+		this.shards = new Shard[shards];
+		for(int i = 0; i < shards; i++) {
+			this.shards[i] = new Shard(i, provider, sink, consolidatedSink);
+		}
+	}
+
+	/**
+	 * start the shard threads and subscribe to MD from all markets
+	 */
+	@Override
+	public void start() {
+		for(Shard shard : shards) {
+			shard.start();
+		}
+		subscriptions.subscribeAll(this);
+	}
+
+	/**
+	 * unsubscribe from MD from all markets and stop the shard threads
+	 */
+	@Override
+	public void stop() {
+		subscriptions.unsubscribeAll(this);
+		for(Shard shard : shards) {
+			shard.processor.halt();
+		}
+	}
+
+	/**
+	 * Routes the update to the shard of its instrument. Called by the provider's publishing thread.
+	 * @return the given update - vwaps are published by the shards
+	 * @throws IllegalArgumentException if the update, market, tick or instrument is null
+	 */
+	@Override
+	public MarketUpdate apply(MarketUpdate update) {
+
+		Vwapper.validate(update);
+
+		if((rebalanceRequested || !moves.isEmpty()) && !moving) {
+			startMove();
+		}
+
+		int instrumentId = update.getTick().getInstrumentId();
+		if(instrumentId >= counts.length) {
+			counts = Arrays.copyOf(counts, Math.max(instrumentId + 1, counts.length * 2));
+		}
+		counts[instrumentId]++;
+
+		shards[getShard(instrumentId)].ring.publishEvent(UPDATE_TRANSLATOR, update);
+		return update;
+	}
+
+	/**
+	 * @return the shard updates of the instrument are currently routed to
+	 */
+	public int getShard(int instrumentId) {
+		int[] current = routes;
+		if(instrumentId < current.length && current[instrumentId] >= 0) {
+			return current[instrumentId];
+		}
+		return instrumentId % shards.length;
+	}
+
+	public int getShards() {
+		return shards.length;
+	}
+
+	/**
+	 * Moves the instrument to the given shard. The move is done by the routing thread
+	 * on its next update, once any move already in flight has finished.
+	 * @throws IllegalArgumentException if there is no such shard
+	 */
+	public void move(int instrumentId, int shard) {
+		if(shard < 0 || shard >= shards.length || instrumentId < 0) {
+			throw new IllegalArgumentException(String.format("Cannot move instrument [%d] to shard [%d]",
+																instrumentId, shard));
+		}
+		moves.add(new int[] {instrumentId, shard});
+	}
+
+	/**
+	 * Asks the routing thread to move load from the busiest shard to the least busy one,
+	 * based on the updates per instrument since the last rebalance.
+	 * Expected to be called periodically, eg from a scheduler.
+	 */
+	public void rebalance() {
+		rebalanceRequested = true;
+	}
+
+	/**
+	 * Called by the routing thread. Starts at most one move.
+	 */
+	private void startMove() {
+		int[] move = moves.poll();
+		if(null == move && rebalanceRequested) {
+			rebalanceRequested = false;
+			move = pickRebalanceMove();
+		}
+		if(null == move) {
+			return;
+		}
+
+		int instrumentId = move[0];
+		int from = getShard(instrumentId);
+		int to = move[1];
+		if(from == to) {
+			return;
+		}
+
+		moving = true;
+		shards[to].ring.publishEvent(CONTROL_TRANSLATOR, EXPECT, instrumentId, new Object[] {from, null});
+		shards[from].ring.publishEvent(CONTROL_TRANSLATOR, HAND_OVER, instrumentId, new Object[] {to, null});
+
+		int[] updated = Arrays.copyOf(routes, Math.max(routes.length, instrumentId + 1));
+		for(int i = routes.length; i < updated.length; i++) {
+			updated[i] = -1;
+		}
+		updated[instrumentId] = to;
+		routes = updated;
+	}
+
+	/**
+	 * Picks the instrument of the busiest shard whose load is closest to half the difference
+	 * with the least busy shard, so that moving it narrows the gap the most. Resets the counts.
+	 * @return instrument id and shard or null if no move narrows the gap
+	 */
+	private int[] pickRebalanceMove() {
+		long[] loads = new long[shards.length];
+		for(int i = 0; i < counts.length; i++) {
+			loads[getShard(i)] += counts[i];
+		}
+		int busiest = 0;
+		int idlest = 0;
+		for(int s = 1; s < shards.length; s++) {
+			busiest = loads[s] > loads[busiest] ? s : busiest;
+			idlest = loads[s] < loads[idlest] ? s : idlest;
+		}
+
+		long target = (loads[busiest] - loads[idlest]) / 2;
+		int best = -1;
+		for(int i = 0; i < counts.length; i++) {
+			if(getShard(i) == busiest && counts[i] > 0 && counts[i] < loads[busiest] - loads[idlest]
+					&& (best < 0 || Math.abs(counts[i] - target) < Math.abs(counts[best] - target))) {
+				best = i;
+			}
+		}
+		Arrays.fill(counts, 0);
+		return best < 0 ? null : new int[] {best, idlest};
+	}
+
+	/**
+	 * Event on a shard's ring - a market update or a control event for a move
+	 */
+	private static class ShardEvent {
+		int type;
+		final DefaultMarketUpdate update = new DefaultMarketUpdate();
+		int instrumentId;
+		//the other shard of a move
+		int shard;
+		//totals of a moved instrument
+		long[] state;
+	}
+
+	/**
+	 * One vwapper and its thread. Only the shard thread uses the vwapper and the pending flags.
+	 */
+	private class Shard implements EventHandler<ShardEvent> {
+
+		private final int index;
+
+		private final RingBuffer<ShardEvent> ring;
+
+		private final Vwapper vwapper;
+
+		private final BatchEventProcessor<ShardEvent> processor;
+
+		//instruments whose totals have not arrived yet - their output is held back
+		private boolean[] pending = new boolean[Instruments.SIZE];
+
+		Shard(int index, Provider provider, Consumer<? super VwapMarketUpdate> sink,
+				Consumer<? super ConsolidatedVwapMarketUpdate> consolidatedSink) {
+			this.index = index;
+			//the routing thread and the shard handing over an instrument publish to the ring
+			this.ring = RingBuffer.createMultiProducer(ShardEvent::new, config.getRingSize(),
+														config.getWaitStrategy().create());
+			this.vwapper = new Vwapper(provider,
+									vwap -> {
+										if(!isPending(vwap.getTick().getInstrumentId())) {
+											sink.accept(vwap);
+										}
+									},
+									vwap -> {
+										if(!isPending(vwap.getTick().getInstrumentId())) {
+											consolidatedSink.accept(vwap);
+										}
+									});
+			this.processor = new BatchEventProcessor<>(ring, ring.newBarrier(), this);
+			ring.addGatingSequences(processor.getSequence());
+		}
+
+		void start() {
+			config.getThreadFactory().newThread(processor).start();
+		}
+
+		private boolean isPending(int instrumentId) {
+			return instrumentId < pending.length && pending[instrumentId];
+		}
+
+		@Override
+		public void onEvent(ShardEvent event, long sequence, boolean endOfBatch) {
+			switch(event.type) {
+			case UPDATE:
+				vwapper.onUpdate(event.update, false);
+				break;
+			case EXPECT:
+				if(event.instrumentId >= pending.length) {
+					pending = Arrays.copyOf(pending, Math.max(event.instrumentId + 1, pending.length * 2));
+				}
+				pending[event.instrumentId] = true;
+				break;
+			case HAND_OVER:
+				//publish what the batch has so far before the totals go
+				vwapper.flush();
+				long[] state = vwapper.removeInstrument(event.instrumentId);
+				shards[event.shard].ring.publishEvent(CONTROL_TRANSLATOR, MERGE, event.instrumentId,
+														new Object[] {index, state});
+				break;
+			case MERGE:
+				vwapper.mergeInstrument(event.instrumentId, event.state);
+				pending[event.instrumentId] = false;
+				vwapper.publish(event.instrumentId);
+				event.state = null;
+				moving = false;
+				break;
+			default:
+				throw new IllegalStateException("Unknown event type [" + event.type + "]");
+			}
+			if(endOfBatch) {
+				vwapper.flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package com.mywork.markets.vwap;
+
+/**
+ * Totals over the last N ticks per key.
+ * Each key has a ring of the last N price * amount and amount values - adding overwrites the 
+ * oldest entry and subtracts it from the totals, so adding is O(1) and memory is fixed per key.
+ * Subtracting leaves rounding behind, so the totals are summed again from the ring each time it wraps - 
+ * O(1) amortised, and the totals never drift further than one pass round the ring.
+ */
+public class TickWindowAccumulator implements VwapAccumulator {
+
+	private final int ticks;
+	
+	//ring of entries, ticks consecutive slots per key
+	private final double[] entryTotals;
+	private final double[] entryAmounts;
+	
+	//sums over the ring per key
+	private final double[] totals;
+	private final double[] amounts;
+	
+	//number of ticks added per key - the next slot is count % ticks
+	private final long[] counts;
+	
+	/**
+	 * @param keys - number of keys
+	 * @param ticks - number of ticks in the window
+	 * @throws IllegalArgumentException if ticks is not positive
+	 */
+	public TickWindowAccumulator(int keys, int ticks) {
+		if(ticks <= 0) {
+			throw new IllegalArgumentException("Invalid window of [" + ticks + "] ticks");
+		}
+		this.ticks = ticks;
+		this.entryTotals = new double[keys * ticks];
+		this.entryAmounts = new double[keys * ticks];
+		this.totals = new double[keys];
+		this.amounts = new double[keys];
+		this.counts = new long[keys];
+	}
+	
+	public int getTicks() {
+		return ticks;
+	}
+
+	@Override
+	public void add(int key, long timestamp, double price, double amount) {
+		
+		int slot = key * ticks + (int)(counts[key] % ticks);
+		double total = price * amount;
+		
+		//slots start at zero, so subtracting before the ring is full is harmless
+		totals[key] += total - entryTotals[slot];
+		amounts[key] += amount - entryAmounts[slot];
+		entryTotals[slot] = total;
+		entryAmounts[slot] = amount;
+		if(++counts[key] % ticks == 0) {
+			recompute(key);
+		}
+	}
+	
+	private void recompute(int key) {
+		double total = 0.0;
+		double amount = 0.0;
+		for(int slot = key * ticks; slot < (key + 1) * ticks; slot++) {
+			total += entryTotals[slot];
+			amount += entryAmounts[slot];
+		}
+		totals[key] = total;
+		amounts[key] = amount;
+	}
+
+	@Override
+	public double getTotal(int key) {
+		return totals[key];
+	}
+
+	@Override
+	public double getAmount(int key) {
+		return amounts[key];
+	}
+}
@@ -0,0 +1,134 @@
+package com.mywork.markets.vwap;
+
+import java.util.Arrays;
+
+/**
+ * Rolling time window of totals per key.
+ * The window is split into a fixed number of buckets held in a ring per key. Adding goes into
+ * the bucket for the current time and moving into a new bucket expires the oldest one by 
+ * subtracting its sums from the window totals - so both are O(1) (amortised when several 
+ * buckets are skipped at once) and nothing is allocated after construction.
+ * 
+ * The window moves in steps of one bucket, so it covers between 
+ * <code>window - window/buckets</code> and <code>window</code> of history.
+ * Updates with a timestamp older than the newest bucket are added to the newest bucket.
+ * Subtracting leaves rounding behind, so the window totals are summed again from the buckets 
+ * each time the ring wraps - they never drift further than one pass round the ring.
+ */
+public class TimeWindowAccumulator implements VwapAccumulator {
+
+	private final int buckets;
+	
+	private final long bucketNanos;
+	
+	private final long windowNanos;
+	
+	//bucket sums, buckets consecutive slots per key
+	private final double[] bucketTotals;
+	private final double[] bucketAmounts;
+	
+	//sums over all buckets per key
+	private final double[] totals;
+	private final double[] amounts;
+	
+	//bucket number (timestamp / bucketNanos) of the newest bucket per key
+	private final long[] newestBucket;
+	
+	/**
+	 * @param keys - number of keys
+	 * @param windowNanos - length of the window
+	 * @param buckets - number of buckets the window is split into. More buckets expire 
+	 *        more smoothly at the cost of memory
+	 * @throws IllegalArgumentException if the window or buckets are not positive or
+	 *         the window is shorter than the number of buckets
+	 */
+	public TimeWindowAccumulator(int keys, long windowNanos, int buckets) {
+		if(windowNanos <= 0 || buckets <= 0 || windowNanos < buckets) {
+			throw new IllegalArgumentException(String.format("Invalid window [%d]ns with [%d] buckets", 
+																windowNanos, buckets));
+		}
+		this.buckets = buckets;
+		this.windowNanos = windowNanos;
+		this.bucketNanos = windowNanos / buckets;
+		this.bucketTotals = new double[keys * buckets];
+		this.bucketAmounts = new double[keys * buckets];
+		this.totals = new double[keys];
+		this.amounts = new double[keys];
+		this.newestBucket = new long[keys];
+		Arrays.fill(newestBucket, Long.MIN_VALUE);
+	}
+	
+	public long getWindowNanos() {
+		return windowNanos;
+	}
+	
+	@Override
+	public void advance(int key, long timestamp) {
+		
+		//floor as nanoTime can be negative
+		long bucket = Math.floorDiv(timestamp, bucketNanos);
+		long newest = newestBucket[key];
+		if(bucket <= newest) {
+			return;
+		}
+		
+		int base = key * buckets;
+		if(newest == Long.MIN_VALUE || bucket - newest >= buckets) {
+			//the whole window has expired
+			for(int i = base; i < base + buckets; i++) {
+				bucketTotals[i] = 0.0;
+				bucketAmounts[i] = 0.0;
+			}
+			totals[key] = 0.0;
+			amounts[key] = 0.0;
+		} else {
+			boolean wrapped = false;
+			for(long expired = newest + 1; expired <= bucket; expired++) {
+				int slot = base + (int)Math.floorMod(expired, (long)buckets);
+				totals[key] -= bucketTotals[slot];
+				amounts[key] -= bucketAmounts[slot];
+				bucketTotals[slot] = 0.0;
+				bucketAmounts[slot] = 0.0;
+				wrapped |= slot == base;
+			}
+			//subtracting can leave rounding noise behind - including once everything has expired
+			if(wrapped || amounts[key] <= 0.0) {
+				recompute(key, base);
+			}
+		}
+		newestBucket[key] = bucket;
+	}
+	
+	private void recompute(int key, int base) {
+		double total = 0.0;
+		double amount = 0.0;
+		for(int slot = base; slot < base + buckets; slot++) {
+			total += bucketTotals[slot];
+			amount += bucketAmounts[slot];
+		}
+		totals[key] = total;
+		amounts[key] = amount;
+	}
+
+	@Override
+	public void add(int key, long timestamp, double price, double amount) {
+		advance(key, timestamp);
+		
+		int slot = key * buckets + (int)Math.floorMod(newestBucket[key], (long)buckets);
+		double total = price * amount;
+		bucketTotals[slot] += total;
+		bucketAmounts[slot] += amount;
+		totals[key] += total;
+		amounts[key] += amount;
+	}
+
+	@Override
+	public double getTotal(int key) {
+		return totals[key];
+	}
+
+	@Override
+	public double getAmount(int key) {
+		return amounts[key];
+	}
+}
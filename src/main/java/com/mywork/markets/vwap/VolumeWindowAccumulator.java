@@ -0,0 +1,120 @@
+package com.mywork.markets.vwap;
+
+/**
+ * Totals over the most recent V units of amount per key (a volume bucket).
+ * Each key has a ring of price/amount entries. Adding appends an entry and then trims 
+ * amount from the oldest entries until the window holds at most V - the oldest entry 
+ * still in the window may be partly trimmed. Each entry is added and removed once, so 
+ * adding is O(1) amortised. Subtracting leaves rounding behind, so the totals are summed again from 
+ * the entries each time the oldest entry wraps round the ring - so they never drift for long.
+ * 
+ * Memory is fixed at <code>maxEntries</code> per key. If V is made up of more than 
+ * maxEntries updates, the oldest entries are dropped whole and the window holds less than V.
+ */
+public class VolumeWindowAccumulator implements VwapAccumulator {
+
+	private final double volume;
+	
+	private final int maxEntries;
+	
+	//ring of entries, maxEntries consecutive slots per key
+	private final double[] prices;
+	private final double[] entryAmounts;
+	
+	//sums over the entries per key
+	private final double[] totals;
+	private final double[] amounts;
+	
+	//ring positions per key - oldest entry and number of entries
+	private final int[] heads;
+	private final int[] sizes;
+	
+	/**
+	 * @param keys - number of keys
+	 * @param volume - amount in the window
+	 * @param maxEntries - most updates held per key
+	 * @throws IllegalArgumentException if volume or maxEntries are not positive
+	 */
+	public VolumeWindowAccumulator(int keys, double volume, int maxEntries) {
+		if(!(volume > 0.0) || maxEntries <= 0) {
+			throw new IllegalArgumentException(String.format("Invalid window of [%f] volume with [%d] entries", 
+																volume, maxEntries));
+		}
+		this.volume = volume;
+		this.maxEntries = maxEntries;
+		this.prices = new double[keys * maxEntries];
+		this.entryAmounts = new double[keys * maxEntries];
+		this.totals = new double[keys];
+		this.amounts = new double[keys];
+		this.heads = new int[keys];
+		this.sizes = new int[keys];
+	}
+	
+	public double getVolume() {
+		return volume;
+	}
+
+	@Override
+	public void add(int key, long timestamp, double price, double amount) {
+		
+		int base = key * maxEntries;
+		if(sizes[key] == maxEntries) {
+			removeOldest(key, base);
+		}
+		
+		int slot = base + ((heads[key] + sizes[key]) % maxEntries);
+		prices[slot] = price;
+		entryAmounts[slot] = amount;
+		sizes[key]++;
+		totals[key] += price * amount;
+		amounts[key] += amount;
+		
+		//trim the oldest entries down to the window's volume
+		while(amounts[key] > volume) {
+			int oldest = base + heads[key];
+			double excess = amounts[key] - volume;
+			if(entryAmounts[oldest] <= excess) {
+				removeOldest(key, base);
+			} else {
+				entryAmounts[oldest] -= excess;
+				totals[key] -= prices[oldest] * excess;
+				amounts[key] = volume;
+			}
+		}
+	}
+	
+	private void removeOldest(int key, int base) {
+		int oldest = base + heads[key];
+		totals[key] -= prices[oldest] * entryAmounts[oldest];
+		amounts[key] -= entryAmounts[oldest];
+		heads[key] = (heads[key] + 1) % maxEntries;
+		sizes[key]--;
+		
+		//subtracting can leave rounding noise behind - including once everything has gone
+		if(heads[key] == 0 || sizes[key] == 0) {
+			recompute(key, base);
+		}
+	}
+	
+	private void recompute(int key, int base) {
+		double total = 0.0;
+		double amount = 0.0;
+		for(int i = 0; i < sizes[key]; i++) {
+			int slot = base + ((heads[key] + i) % maxEntries);
+			total += prices[slot] * entryAmounts[slot];
+			amount += entryAmounts[slot];
+		}
+		totals[key] = total;
+		amounts[key] = amount;
+	}
+
+	@Override
+	public double getTotal(int key) {
+		return totals[key];
+	}
+
+	@Override
+	public double getAmount(int key) {
+		return amounts[key];
+	}
+}
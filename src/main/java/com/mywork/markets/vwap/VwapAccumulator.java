@@ -0,0 +1,40 @@
+package com.mywork.markets.vwap;
+
+/**
+ * Running price * amount and amount totals for a fixed number of keys,
+ * over whatever window the implementation keeps.
+ * Keys are dense integers - see {@link WindowedVwapper#key(int, int, int) WindowedVwapper.key}.
+ * 
+ * Implementations are expected to use fixed memory per key and not allocate when adding,
+ * and are NOT thread-safe.
+ */
+public interface VwapAccumulator {
+
+	/**
+	 * expire whatever has left the window by the given time.
+	 * Does nothing for windows that are not time based.
+	 * @param key - the key to expire
+	 * @param timestamp - current time in nanos
+	 */
+	default void advance(int key, long timestamp) {
+	}
+	
+	/**
+	 * add a price/amount to the key's window
+	 * @param key - the key to add to
+	 * @param timestamp - time of the update in nanos
+	 * @param price - the price
+	 * @param amount - the amount at that price
+	 */
+	void add(int key, long timestamp, double price, double amount);
+	
+	/**
+	 * @return sum of price * amount in the key's window
+	 */
+	double getTotal(int key);
+
+	/**
+	 * @return sum of amount in the key's window
+	 */
+	double getAmount(int key);
+}
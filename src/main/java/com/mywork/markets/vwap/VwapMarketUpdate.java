@@ -12,6 +12,13 @@ import com.mywork.markets.Tick;
  */
 public class VwapMarketUpdate extends DefaultMarketUpdate{
 
+	/**
+	 * creates an empty update so that
+	 * it can be pre-allocated and overwritten for every vwap
+	 */
+	public VwapMarketUpdate() {
+	}
+
 	public VwapMarketUpdate(Markets market, Tick tick) {
 		super(market, tick);
 	}
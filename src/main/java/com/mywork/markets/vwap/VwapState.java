@@ -0,0 +1,206 @@
+package com.mywork.markets.vwap;
+
+import java.util.Arrays;
+
+import com.mywork.markets.FixedPoint;
+import com.mywork.markets.Side;
+import com.mywork.markets.Tick;
+
+/**
+ * Running vwap totals for dense keys - {@link com.mywork.markets.Listings Listings} keys or instrument ids -
+ * held in one long[] rather than an object per key.
+ * Each key has a slot of {@link #STRIDE STRIDE} consecutive longs holding its 128 bit bid and offer
+ * price * amount totals and amounts in {@link FixedPoint FixedPoint} units, and its pending flag.
+ * Slots are packed rather than aligned to cache lines - VwapperBenchmark shows no gain from aligning them,
+ * even with far more keys than fit in the cache. Copying every key is one array copy.
+ *
+ * The array is padded at both ends so the slots of different instances, eg one per shard, never share
+ * a cache line with each other or with other objects.
+ *
+ * Grows when a key past the end is used. Not thread-safe - meant for state owned by one thread.
+ */
+final class VwapState {
+
+	//fields of a slot, the first FIELDS of which are the totals
+	static final int BID_TOTAL_HIGH = 0;
+	static final int BID_TOTAL_LOW = 1;
+	static final int BID_AMOUNT = 2;
+	static final int OFFER_TOTAL_HIGH = 3;
+	static final int OFFER_TOTAL_LOW = 4;
+	static final int OFFER_AMOUNT = 5;
+	private static final int PENDING = 6;
+
+	//number of total fields per key, as copied by get/add
+	static final int FIELDS = 6;
+
+	static final int STRIDE = 7;
+
+	//below this twice the remainder of an estimated vwap fits a long
+	private static final long MAX_ESTIMATED_AMOUNT = 1L << 61;
+
+	//two cache lines - also covers the adjacent line prefetch
+	private static final int PADDING = 16;
+
+	private long[] values;
+
+	private int size;
+
+	/**
+	 * @param size - number of keys to hold up front
+	 */
+	VwapState(int size) {
+		this.size = size;
+		this.values = new long[PADDING + size * STRIDE + PADDING];
+	}
+
+	/**
+	 * @return number of keys held - keys are 0 to size - 1
+	 */
+	int size() {
+		return size;
+	}
+
+	//index of the key's slot, growing if needed
+	private int slot(int key) {
+		if(key >= size) {
+			grow(Math.max(key + 1, size * 2));
+		}
+		return PADDING + key * STRIDE;
+	}
+
+	private void grow(int newSize) {
+		long[] grown = new long[PADDING + newSize * STRIDE + PADDING];
+		System.arraycopy(values, PADDING, grown, PADDING, size * STRIDE);
+		values = grown;
+		size = newSize;
+	}
+
+	/**
+	 * adds to both sides' totals of the key
+	 */
+	void add(int key, long bidTotalHigh, long bidTotalLow, long bidAmount, 
+					long offerTotalHigh, long offerTotalLow, long offerAmount) {
+		int slot = slot(key);
+		long[] values = this.values;
+		values[slot + BID_TOTAL_HIGH] += bidTotalHigh + FixedPoint.carry(values[slot + BID_TOTAL_LOW], bidTotalLow);
+		values[slot + BID_TOTAL_LOW] += bidTotalLow;
+		values[slot + BID_AMOUNT] += bidAmount;
+		values[slot + OFFER_TOTAL_HIGH] += offerTotalHigh + FixedPoint.carry(values[slot + OFFER_TOTAL_LOW], offerTotalLow);
+		values[slot + OFFER_TOTAL_LOW] += offerTotalLow;
+		values[slot + OFFER_AMOUNT] += offerAmount;
+	}
+
+	/**
+	 * adds {@link #FIELDS FIELDS} totals, laid out as in a slot, from the array at the offset
+	 */
+	void add(int key, long[] totals, int offset) {
+		add(key, totals[offset + BID_TOTAL_HIGH], totals[offset + BID_TOTAL_LOW], totals[offset + BID_AMOUNT],
+				totals[offset + OFFER_TOTAL_HIGH], totals[offset + OFFER_TOTAL_LOW], totals[offset + OFFER_AMOUNT]);
+	}
+
+	/**
+	 * copies the key's {@link #FIELDS FIELDS} totals into the array at the offset
+	 */
+	void get(int key, long[] totals, int offset) {
+		System.arraycopy(values, slot(key), totals, offset, FIELDS);
+	}
+
+	long get(int key, int field) {
+		return values[slot(key) + field];
+	}
+
+	/**
+	 * zeroes the key's totals
+	 */
+	void clear(int key) {
+		int slot = slot(key);
+		Arrays.fill(values, slot, slot + FIELDS, 0L);
+	}
+
+	/**
+	 * zeroes the totals of every key
+	 */
+	void clear() {
+		for(int key = 0; key < size; key++) {
+			clear(key);
+		}
+	}
+
+	boolean hasAmount(int key) {
+		int slot = slot(key);
+		return values[slot + BID_AMOUNT] > 0 || values[slot + OFFER_AMOUNT] > 0;
+	}
+
+	long getBidVwap(int key) {
+		return vwap(slot(key) + BID_TOTAL_HIGH);
+	}
+
+	long getOfferVwap(int key) {
+		return vwap(slot(key) + OFFER_TOTAL_HIGH);
+	}
+
+	/**
+	 * writes the key's vwaps and amounts into the tick
+	 */
+	void setVwap(int key, Tick tick, int instrumentId, Side side) {
+		int slot = slot(key);
+		tick.setScaled(instrumentId, side, 
+						vwap(slot + BID_TOTAL_HIGH), values[slot + BID_AMOUNT],
+						vwap(slot + OFFER_TOTAL_HIGH), values[slot + OFFER_AMOUNT]);
+	}
+
+	//vwap of the side whose total high, total low and amount start at the index, exact to the nearest price unit,
+	//rounding half up. Total units are price units * amount units, so the quotient is in price units. For a
+	//quotient below 2^49 - any vwap price - and an amount below 2^61, a floating point estimate is within one of
+	//the rounded quotient and the exact remainder, which fits the low word, corrects it. This keeps setVwap small
+	//enough to inline. Anything else takes the full 128 bit divide
+	private long vwap(int index) {
+		long amount = values[index + 2];
+		if(amount == 0) {
+			return 0;
+		}
+		long high = values[index];
+		long low = values[index + 1];
+		//low converts as signed - a negative low is 2^64 less than its unsigned value, so carry it into high
+		double estimate = ((high + (low >>> 63)) * 0x1p64 + low) / amount;
+		if(estimate >= 0 && estimate < 0x1p49 && amount < MAX_ESTIMATED_AMOUNT) {
+			long quotient = (long)(estimate + 0.5);
+			long twiceRemainder = (low - quotient * amount) << 1;
+			//rounded half up when -amount <= 2 * remainder < amount - corrected without branches, as the
+			//remainder's sign is as likely one way as the other
+			return quotient + ((twiceRemainder + amount) >> 63) - ((amount - 1 - twiceRemainder) >> 63);
+		}
+		return FixedPoint.divide(high, low, amount);
+	}
+
+	/**
+	 * @return true if the key was updated in the current batch and not yet published
+	 */
+	boolean isPending(int key) {
+		return values[slot(key) + PENDING] != 0;
+	}
+
+	void setPending(int key, boolean pending) {
+		values[slot(key) + PENDING] = pending ? 1 : 0;
+	}
+
+	/**
+	 * @return a copy of every key's totals - one array copy
+	 */
+	VwapState copy() {
+		return copyTo(new VwapState(0));
+	}
+
+	/**
+	 * copies every key's totals into the given state, reusing its array unless the sizes differ
+	 * @return the given state
+	 */
+	VwapState copyTo(VwapState copy) {
+		if(copy.values.length != values.length) {
+			copy.values = new long[values.length];
+		}
+		System.arraycopy(values, 0, copy.values, 0, values.length);
+		copy.size = size;
+		return copy;
+	}
+}
@@ -0,0 +1,105 @@
+package com.mywork.markets.vwap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mywork.markets.Instruments;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.providers.Provider;
+import com.mywork.markets.providers.SubscriptionException;
+
+/**
+ * Subscribes a vwap calculator to all instruments from all markets of a provider
+ * and remembers which subscriptions succeeded so that they can be unsubscribed on stop.
+ * Not thread-safe - expected to be used from the start/stop lifecycle methods only.
+ */
+class VwapSubscriptions {
+
+	private final Logger LOG = LoggerFactory.getLogger(VwapSubscriptions.class);	
+	
+	private final Provider provider;
+	
+	private final Map<Instruments, List<Markets>> allSubscriptions = new HashMap<>();
+	
+	VwapSubscriptions(Provider provider) {
+		this.provider = provider;
+	}
+	
+	/**
+	 * subscribe to MD from all markets
+	 * @param subscriber - the callback for all subscriptions
+	 */
+	void subscribeAll(Function<? extends MarketUpdate, ? extends MarketUpdate> subscriber) {
+		Instruments [] allInstruments = Instruments.values();
+		Markets [] allMarkets = Markets.values();
+		
+		for(int i = 0; i < allInstruments.length; i++){
+			for(int j = 0; j < allMarkets.length; j++) {
+				try {
+					LOG.info("Subscribing to [{}] for [{}]", allInstruments[i], allMarkets[j]);
+					provider.subscribe(allInstruments[i], allMarkets[j], subscriber);
+					final Markets currMarket = allMarkets[j];
+					allSubscriptions.compute(allInstruments[i], ((Instruments key, List<Markets> value) -> { 
+														if(null == value) {
+															List<Markets> list = new ArrayList<>();
+															list.add(currMarket);
+															return list;
+														} else {
+															value.add(currMarket);
+															return value;
+														}}));
+				//catch subscription exception only. other exceptions can be propagated up	
+				}catch(SubscriptionException sExc) {
+					//log exception and continue
+					//one specific subscription failed - maybe the provider does not provide MD for a specific instrument/market
+					LOG.warn("Could not subscribe to [{}] for [{}]", allInstruments[i], allMarkets[j], sExc);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return true if the instrument/market is one {@link #subscribeAll(Function) subscribeAll} subscribes to
+	 */
+	static boolean covers(int instrumentId, int marketId) {
+		return instrumentId >= 0 && instrumentId < Instruments.SIZE && marketId >= 0 && marketId < Markets.SIZE;
+	}
+	
+	/**
+	 * has the provider wake the subscriber's update thread, see {@link Provider#wake(Function) Provider.wake}
+	 * @param subscriber - the callback used to subscribe
+	 */
+	void wake(Function<? extends MarketUpdate, ? extends MarketUpdate> subscriber) {
+		provider.wake(subscriber);
+	}
+	
+	/**
+	 * unsubscribe from MD from all markets
+	 * @param subscriber - the callback used to subscribe
+	 */
+	void unsubscribeAll(Function<? extends MarketUpdate, ? extends MarketUpdate> subscriber) {
+
+		//using streams here since this would ideally happen once when the 
+		//application is shutting down. else would use old style iteration
+		allSubscriptions.forEach((Instruments key, List<Markets> markets) -> {
+				markets.forEach(market -> {
+				try {
+					LOG.info("Unsubscribing from [{}] for [{}]", key, market);
+					provider.unsubscribe(key, market, subscriber);
+					
+				//catch subscription exception only. other exceptions can be propagated up
+				}catch(SubscriptionException sExc) { 
+					//log exception and continue
+					LOG.warn("Could not unsubscribe from [{}] for [{}]", key, market, sExc);
+				}
+			});
+		});
+	}
+}
@@ -3,60 +3,179 @@
  */
 package com.mywork.markets.vwap;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.FixedPoint;
 import com.mywork.markets.Instruments;
+import com.mywork.markets.Listings;
 import com.mywork.markets.MarketUpdate;
 import com.mywork.markets.Markets;
+import com.mywork.markets.Side;
+import com.mywork.markets.SymbolRegistry;
 import com.mywork.markets.Tick;
+import com.mywork.markets.providers.BatchSubscriber;
 import com.mywork.markets.providers.Provider;
-import com.mywork.markets.providers.SubscriptionException;
+import com.mywork.markets.journal.JournalReader;
 import com.mywork.markets.services.Lifecycle;
+import com.mywork.markets.utils.ExecutorUtils;
+import com.mywork.markets.utils.GrowableTable;
 
 
 /**This class computes a running vwap of instruments from different markets
  * Assumptions:
  * 1. VWAP is calculated on a per instrument per market basis. 
  * 2. Side is ignored in the calculations at this point.
- * 3. A known number of instruments/markets (as is the case typically in FX) will be used.
- *   Hence the use of Instruments and Markets Enums - and an array to hold VWAPs. 
- *   This can be changed to an EnumMap or HashMap(Instrument as key) of HashMaps(Market as key)
+ * 3. Instruments and markets are identified by their {@link com.mywork.markets.SymbolRegistry SymbolRegistry} 
+ *   ids. Running totals are held in a {@link VwapState VwapState} - flat primitive slots indexed by the
+ *   {@link Listings Listings} key of the instrument/market, or by instrument id for the consolidated totals - 
+ *   and outputs in tables indexed the same way. All start sized for the Instruments and Markets enums
+ *   and grow as instruments/markets are added at runtime.
  * 4. The Function functional interface has been explicitly implemented to show that each update 
  *   can be run through multiple functions where each can implement a standard interface.
+ * 5. No objects are created per update. The vwap is written into a pre-allocated
+ *   {@link VwapMarketUpdate VwapMarketUpdate} per instrument/market (or one supplied by the caller)
+ *   and handed to a sink - which prints to stdout unless another sink is given.
+ * 6. A consolidated vwap per instrument across all its markets is kept alongside, updated with the 
+ *   same amounts as the market vwap rather than re-summing the markets. It is handed to a separate 
+ *   consolidated sink as a {@link ConsolidatedVwapMarketUpdate ConsolidatedVwapMarketUpdate}.
+ * 7. The running totals can be written to a snapshot along with the journal sequence they include,
+ *   periodically if required, and restored on restart - see {@link #recover(Path, Path) recover}.
+ * 8. When the provider delivers batches, see {@link BatchSubscriber BatchSubscriber}, the totals are
+ *   updated per update but the vwaps are only computed and published at the end of the batch - once per 
+ *   instrument/market and instrument updated in the batch, with the latest value.
+ * 9. Totals are exact - prices and amounts are summed in {@link FixedPoint FixedPoint} units, price * amount
+ *   in 128 bits, and the vwap is the total divided exactly by the amount, to the nearest price unit.
+ *   So the vwaps are the same whatever order the updates are added or instruments are merged in.
+ * 10. Publication can be cut down per instrument with a {@link PublicationPolicy PublicationPolicy} - only 
+ *   on a move beyond a threshold and/or at most every so often per key. Vwaps held back that differ from
+ *   the last one published are marked in a bitset and their latest value published by
+ *   {@link #flushSuppressed() flushSuppressed}, eg every 
+ *   {@link #flushSuppressedEvery(long) flushSuppressedEvery} microseconds. By default every vwap is published.
  *   
  *This class is NOT thread-safe intentionally. Prices per instrument are independent and so for scalability,
- *multiple instances on this class can be created, each calculating for a specific set of instruments.
+ *multiple instances on this class can be created, each calculating for a specific set of instruments -
+ *see {@link ShardedVwapService ShardedVwapService}.
  *The class can be made thread-safe by storing the internal state - the current running vwap of instruments in a
  *thread-safe data structure like a ConcurrentHashMap if required.
  */
-public class Vwapper implements Function<MarketUpdate, VwapMarketUpdate>, Lifecycle {
+public class Vwapper implements BatchSubscriber<VwapMarketUpdate>, Lifecycle {
 
-	private final Logger LOG = LoggerFactory.getLogger(Vwapper.class);	
+	private static final int SNAPSHOT_MAGIC = 0x56574150;
+	
+	private static final int SNAPSHOT_VERSION = 2;
 	
-	//stores state of this class - current running vwap per instrument
+	//snapshots before fixed-point totals - read and converted
+	private static final int SNAPSHOT_VERSION_DOUBLES = 1;
+	
+	//stores state of this class - running vwap totals per instrument/market Listings key
 	//not thread-safe
-	private final VwapEntry vwaps[][];
+	private final VwapState totals;
+	
+	//one reusable output event per instrument/market Listings key
+	private final GrowableTable<VwapMarketUpdate> outputs;
+	
+	//running vwap totals per instrument id across all markets
+	private final VwapState consolidated;
+	
+	private final GrowableTable<ConsolidatedVwapMarketUpdate> consolidatedOutputs;
+	
+	private final Consumer<? super VwapMarketUpdate> sink;
+	
+	private final Consumer<? super ConsolidatedVwapMarketUpdate> consolidatedSink;
+	
+	private final VwapSubscriptions subscriptions;
+	
+	//publication policy per instrument id and what was last published per key
+	private final GrowableTable<PublicationPolicy> policies;
+	private final Publications publications;
+	private final Publications consolidatedPublications;
+	
+	//time between flushes of suppressed vwaps on the update thread - off if 0
+	private long suppressedFlushNanos;
+	private long lastSuppressedFlush;
+	
+	//wakes the update thread through the provider so quiet keys are flushed too - none if not flushing
+	private ScheduledExecutorService suppressedFlushTimer;
+	
+	private LongSupplier clock = System::nanoTime;
+	
+	//run once the vwaps of an update or batch have been handed to the sinks - none if null
+	private Runnable endOfBatchAction;
+	
+	//keys and instrument ids updated in the current batch, in the order first updated
+	private int[] batchKeys = new int[Instruments.SIZE * Markets.SIZE];
+	private int[] batchInstruments = new int[Instruments.SIZE * Markets.SIZE];
+	private int batchSize;
+	
+	//journal sequence of the last journaled update added
+	private long sequence;
 	
-	private final Provider provider;
+	//periodic snapshots - off unless a file is given
+	private Path checkpointFile;
+	private int checkpointInterval;
+	private int sinceCheckpoint;
 	
-	private final Map<Instruments, List<Markets>> allSubscriptions = new HashMap<>();
+	//periodic snapshots are written from a reused copy of the totals by their own thread, one at a time.
+	//set by the update thread when it hands a copy over, cleared by the writer once written
+	private ExecutorService checkpointWriter;
+	private final VwapState checkpointTotals = new VwapState(0);
+	private long checkpointSequence;
+	private volatile boolean checkpointing;
+	private final Runnable writeCheckpoint = this::writeCheckpoint;
 	
 	public Vwapper(Provider provider) {
-		//initialize entire array to prevent null/exists checks when getting updates
-		vwaps = new VwapEntry[Instruments.SIZE][Markets.SIZE];
-		for(int i = 0; i < Instruments.SIZE; i++){
-			for(int j = 0; j < Markets.SIZE; j++) {
-				vwaps[i][j] = new VwapEntry();
-			}
-		}
-		this.provider = provider;
+		this(provider, System.out::println);
+	}
+
+	/**
+	 * @param provider - the provider to subscribe to
+	 * @param sink - receives every vwap-ed update. The update is reused, so the sink
+	 *        must copy it if it needs to be kept beyond the call.
+	 */
+	public Vwapper(Provider provider, Consumer<? super VwapMarketUpdate> sink) {
+		this(provider, sink, update -> {});
+	}
+
+	/**
+	 * @param provider - the provider to subscribe to
+	 * @param sink - receives every vwap-ed update. The update is reused, so the sink
+	 *        must copy it if it needs to be kept beyond the call.
+	 * @param consolidatedSink - receives the consolidated vwap of the instrument after every update.
+	 *        The update is reused in the same way.
+	 */
+	public Vwapper(Provider provider, Consumer<? super VwapMarketUpdate> sink, 
+					Consumer<? super ConsolidatedVwapMarketUpdate> consolidatedSink) {
+		//tables fill every slot to prevent null/exists checks when getting updates
+		totals = new VwapState(Instruments.SIZE * Markets.SIZE);
+		outputs = new GrowableTable<>(Instruments.SIZE * Markets.SIZE, key -> new VwapMarketUpdate());
+		consolidated = new VwapState(Instruments.SIZE);
+		consolidatedOutputs = new GrowableTable<>(Instruments.SIZE, instrument -> new ConsolidatedVwapMarketUpdate());
+		this.sink = sink;
+		this.consolidatedSink = consolidatedSink;
+		this.subscriptions = new VwapSubscriptions(provider);
+		policies = new GrowableTable<>(Instruments.SIZE, instrument -> PublicationPolicy.ALWAYS);
+		publications = new Publications(Instruments.SIZE * Markets.SIZE);
+		consolidatedPublications = new Publications(Instruments.SIZE);
 	}
 
 	/**
@@ -64,166 +183,663 @@ public class Vwapper implements Function<MarketUpdate, VwapMarketUpdate>, Lifecy
 	 * subscribe to MD from all markets
 	 */
 	public void start() {
-		Instruments [] allInstruments = Instruments.values();
-		Markets [] allMarkets = Markets.values();
-		
-		for(int i = 0; i < allInstruments.length; i++){
-			for(int j = 0; j < allMarkets.length; j++) {
-				try {
-					LOG.info("Subscribing to [%] for [%]", allInstruments[i], allMarkets[j]);
-					provider.subscribe(allInstruments[i], allMarkets[j], this);
-					final Markets currMarket = allMarkets[j];
-					allSubscriptions.compute(allInstruments[i], ((Instruments key, List<Markets> value) -> { 
-														if(null == value) {
-															List<Markets> list = new ArrayList<>();
-															list.add(currMarket);
-															return list;
-														} else {
-															value.add(currMarket);
-															return value;
-														}}));
-				//catch subscription exception only. other exceptions can be propagated up	
-				}catch(SubscriptionException sExc) {
-					//log exception and continue
-					//one specific subscription failed - maybe the provider does not provide MD for a specific instrument/market
-					LOG.warn("Could not subscribe to [%s] for [%s]", allInstruments[i], allMarkets[i]);
-				}
-			}
-		}
-		
+		subscriptions.subscribeAll(this);
 	}
 
 	/**
 	 * stop the Vwapper service
-	 * unsubscribe from MD from all markets
+	 * unsubscribe from MD from all markets, stop the suppressed vwaps' flush timer and stop the checkpoint
+	 * writer once the snapshot it is writing, if any, is written
 	 */
 	public void stop() {
-
-		//using streams here since this would ideally happen once when the 
-		//application is shutting down. else would use old style iteration
-		allSubscriptions.forEach((Instruments key, List<Markets> markets) -> {
-				markets.forEach(market -> {
-				try {
-					LOG.info("Unsubscribing from [%] for [%]", key, market);
-					provider.unsubscribe(key, market, this);
-					
-				//catch subscription exception only. other exceptions can be propagated up
-				}catch(SubscriptionException sExc) { 
-					//log exception and continue
-					LOG.warn("Could not unsubscribe from [%s] for [%s]", key, market);
-				}
-			});
-		});
+		subscriptions.unsubscribeAll(this);
+		stopSuppressedFlushTimer();
+		if(null != checkpointWriter) {
+			checkpointWriter.shutdown();
+			try {
+				checkpointWriter.awaitTermination(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			checkpointWriter = null;
+		}
 	}
 	
 	/**
 	 * Calculates the VWAP from given update and returns the vwap-ed update for the instrument/market pair
-	 * As of now, creates and returns a new object every time - but typically can return a pooled object
-	 * or update a shared object between this class and the subscriber.
+	 * The returned update is pre-allocated per instrument/market and is overwritten by the 
+	 * next update for the same pair.
 	 * 
 	 * @param update - the update to process
 	 * @return the vwap-ed update for this instrument-market pair. 
 	 *        This class returns instance of {@link VwapMarketUpdate VwapMarketUpdate} to indicate update is vwap-ed
-	 *@throws IllegalArgumentException if the update, market, tick or instrument is null
+	 *@throws IllegalArgumentException if the update, market, tick or instrument is null or unknown,
+	 *        or the instrument/market is not subscribed to
 	 */
 	public VwapMarketUpdate apply(MarketUpdate update) {
 
-		if(null == update) {
-			throw new IllegalArgumentException("Cannot process null market update");
+		validate(update);
+		
+		int key = key(update);
+		return update(update, key, outputs.get(key));
+	}
+
+	/**
+	 * Calculates the VWAP from given update and writes it into the given output update.
+	 * The output is handed to the sink unless the instrument's {@link PublicationPolicy PublicationPolicy}
+	 * holds it back, but is returned either way.
+	 * 
+	 * @param update - the update to process
+	 * @param output - the update to write the vwap into
+	 * @return the output update
+	 *@throws IllegalArgumentException if the update, market, tick or instrument is null or unknown,
+	 *        or the instrument/market is not subscribed to
+	 */
+	public VwapMarketUpdate apply(MarketUpdate update, VwapMarketUpdate output) {
+
+		validate(update);
+		
+		return update(update, key(update), output);
+	}
+	
+	//apply for an update already validated and the Listings key of its instrument/market
+	private VwapMarketUpdate update(MarketUpdate update, int key, VwapMarketUpdate output) {
+		
+		int instrumentIndex	= update.getTick().getInstrumentId();
+		add(update, key);
+		
+		output.setMarketId(update.getMarketId());
+		setVwap(output, update, totals, key);
+		stamp(output, update);
+		
+		ConsolidatedVwapMarketUpdate consolidatedOutput = consolidatedOutputs.get(instrumentIndex);
+		setVwap(consolidatedOutput, update, consolidated, instrumentIndex);
+		stamp(consolidatedOutput, update);
+		
+		//do whatever work is required with the vwap here.
+		if(publishes(publications, key, instrumentIndex, output)) {
+			sink.accept(output);
+		}
+		if(publishes(consolidatedPublications, instrumentIndex, instrumentIndex, consolidatedOutput)) {
+			consolidatedSink.accept(consolidatedOutput);
 		}
 		
-		if(null == update.getMarket()) {
-			throw new IllegalArgumentException("Cannot process update with null market");
+		if(null != checkpointFile && ++sinceCheckpoint >= checkpointInterval) {
+			checkpoint();
 		}
+		flushSuppressedIfDue();
+		endOfBatch();
+		return output;
+	}
+	
+	/**
+	 * Adds the update to the running totals like {@link #apply(MarketUpdate) apply}, but holds back
+	 * publishing its vwaps until the end of the batch. An instrument/market updated several times 
+	 * in the batch is published once, with its latest vwap.
+	 * 
+	 *@throws IllegalArgumentException if the update, market, tick or instrument is null or unknown,
+	 *        or the instrument/market is not subscribed to
+	 */
+	@Override
+	public void onUpdate(MarketUpdate update, boolean endOfBatch) {
 		
-		if(null == update.getTick()) {
-			throw new IllegalArgumentException("Cannot process update with null tick");
+		validate(update);
+		
+		int instrumentIndex	= update.getTick().getInstrumentId();
+		int key 			= key(update);
+		add(update, key);
+		
+		//the vwaps are only computed when published - the side is the latest update's
+		VwapMarketUpdate output = outputs.get(key);
+		output.setMarketId(update.getMarketId());
+		output.getTick().setSide(update.getTick().getSide());
+		stamp(output, update);
+		ConsolidatedVwapMarketUpdate consolidatedOutput = consolidatedOutputs.get(instrumentIndex);
+		consolidatedOutput.getTick().setSide(update.getTick().getSide());
+		stamp(consolidatedOutput, update);
+		
+		if(!totals.isPending(key)) {
+			totals.setPending(key, true);
+			if(batchSize == batchKeys.length) {
+				batchKeys = Arrays.copyOf(batchKeys, batchSize * 2);
+				batchInstruments = Arrays.copyOf(batchInstruments, batchSize * 2);
+			}
+			batchKeys[batchSize] = key;
+			batchInstruments[batchSize++] = instrumentIndex;
 		}
-
-		if(null == update.getTick().getInstrument()) {
-			throw new IllegalArgumentException("Cannot process update with null instrument");
+		consolidated.setPending(instrumentIndex, true);
+		
+		if(null != checkpointFile && ++sinceCheckpoint >= checkpointInterval) {
+			checkpoint();
+		}
+		if(endOfBatch) {
+			flush();
+		}
+	}
+	
+	/**
+	 * Publishes the vwaps held back by {@link #onUpdate(MarketUpdate, boolean) onUpdate} - called at 
+	 * the end of each batch, and by callers that end a batch some other way.
+	 */
+	public void flush() {
+		for(int i = 0; i < batchSize; i++) {
+			int key = batchKeys[i];
+			int instrumentIndex = batchInstruments[i];
+			totals.setPending(key, false);
+			VwapMarketUpdate output = outputs.get(key);
+			setVwap(output, instrumentIndex, totals, key);
+			if(publishes(publications, key, instrumentIndex, output)) {
+				sink.accept(output);
+			}
+			
+			if(consolidated.isPending(instrumentIndex)) {
+				consolidated.setPending(instrumentIndex, false);
+				ConsolidatedVwapMarketUpdate consolidatedOutput = consolidatedOutputs.get(instrumentIndex);
+				setVwap(consolidatedOutput, instrumentIndex, consolidated, instrumentIndex);
+				if(publishes(consolidatedPublications, instrumentIndex, instrumentIndex, consolidatedOutput)) {
+					consolidatedSink.accept(consolidatedOutput);
+				}
+			}
+		}
+		batchSize = 0;
+		flushSuppressedIfDue();
+		endOfBatch();
+	}
+	
+	/**
+	 * Sets when the vwaps of the instrument, per market and consolidated, are published.
+	 * Vwaps already held back stay so until {@link #flushSuppressed() flushSuppressed}.
+	 * @param instrumentId - id from {@link SymbolRegistry#INSTRUMENTS SymbolRegistry.INSTRUMENTS}
+	 * @throws NullPointerException if the policy is null
+	 * @throws IllegalArgumentException if the instrument id is negative
+	 */
+	public void setPublicationPolicy(int instrumentId, PublicationPolicy policy) {
+		if(null == policy) {
+			throw new NullPointerException("Publication policy is required");
+		}
+		if(instrumentId < 0) {
+			throw new IllegalArgumentException("Invalid instrument id [" + instrumentId + "]");
+		}
+		policies.set(instrumentId, policy);
+	}
+	
+	public PublicationPolicy getPublicationPolicy(int instrumentId) {
+		return policies.get(instrumentId);
+	}
+	
+	/**
+	 * Publishes the latest vwap of every instrument/market and instrument held back by its
+	 * {@link PublicationPolicy PublicationPolicy} since it was last published.
+	 * Must be called on the thread updating this vwapper - see {@link #flushSuppressedEvery(long) flushSuppressedEvery}.
+	 */
+	public void flushSuppressed() {
+		lastSuppressedFlush = clock.getAsLong();
+		for(int key = publications.nextSuppressed(0); key >= 0; key = publications.nextSuppressed(key + 1)) {
+			publishKey(key);
+		}
+		for(int i = consolidatedPublications.nextSuppressed(0); i >= 0; i = consolidatedPublications.nextSuppressed(i + 1)) {
+			publishConsolidated(i);
 		}
+		endOfBatch();
+	}
+	
+	/**
+	 * Flushes suppressed vwaps, see {@link #flushSuppressed() flushSuppressed}, on the update thread once 
+	 * the interval has passed since the last flush - checked after each update, or batch for batched updates,
+	 * and when a timer wakes the update thread through the provider's {@link Provider#wake(java.util.function.Function) wake}.
+	 * So a vwap held back while no updates arrive is published within about two intervals.
+	 * Providers that call their subscribers on the feed thread, eg {@link com.mywork.markets.providers.SimpleProvider
+	 * SimpleProvider}, cannot be woken - callers with quiet periods should then call flushSuppressed themselves.
+	 * @param micros - the interval, 0 to stop flushing
+	 * @throws IllegalArgumentException if the interval is negative
+	 */
+	public void flushSuppressedEvery(long micros) {
+		if(micros < 0) {
+			throw new IllegalArgumentException("Invalid flush interval of [" + micros + "] micros");
+		}
+		suppressedFlushNanos = TimeUnit.MICROSECONDS.toNanos(micros);
+		lastSuppressedFlush = clock.getAsLong();
+		stopSuppressedFlushTimer();
+		if(micros > 0) {
+			suppressedFlushTimer = ExecutorUtils.scheduledExecutor("vwap-flush");
+			suppressedFlushTimer.scheduleAtFixedRate(() -> subscriptions.wake(this), micros, micros, TimeUnit.MICROSECONDS);
+		}
+	}
+	
+	/**
+	 * Flushes suppressed vwaps if due, see {@link #flushSuppressedEvery(long) flushSuppressedEvery}
+	 */
+	@Override
+	public void onWake() {
+		flushSuppressedIfDue();
+	}
+	
+	private void stopSuppressedFlushTimer() {
+		if(null != suppressedFlushTimer) {
+			suppressedFlushTimer.shutdownNow();
+			suppressedFlushTimer = null;
+		}
+	}
+	
+	/**
+	 * Sets an action run on the update thread once the vwaps of an update, from {@link #apply(MarketUpdate) apply},
+	 * or of a batch, from {@link #flush() flush}, have been handed to the sinks - and after 
+	 * {@link #flushSuppressed() flushSuppressed} and {@link #recover(Path, Path) recover} publish.
+	 * Lets a sink that batches its output, eg {@link com.mywork.markets.distribution.MulticastVwapPublisher 
+	 * MulticastVwapPublisher}, send it.
+	 * @param action - the action, null for none
+	 */
+	public void setEndOfBatchAction(Runnable action) {
+		this.endOfBatchAction = action;
+	}
+	
+	private void endOfBatch() {
+		if(null != endOfBatchAction) {
+			endOfBatchAction.run();
+		}
+	}
+	
+	/**
+	 * @param clock - time in nanos used for publication intervals, System::nanoTime unless set for tests
+	 */
+	void setClock(LongSupplier clock) {
+		this.clock = clock;
+	}
+	
+	private void flushSuppressedIfDue() {
+		if(suppressedFlushNanos > 0 && clock.getAsLong() - lastSuppressedFlush >= suppressedFlushNanos) {
+			flushSuppressed();
+		}
+	}
+	
+	/**
+	 * @return true if the output just written for the key is to be published under the instrument's policy
+	 */
+	private boolean publishes(Publications publications, int key, int instrumentId, VwapMarketUpdate output) {
+		PublicationPolicy policy = policies.get(instrumentId);
+		if(policy == PublicationPolicy.ALWAYS) {
+			return true;
+		}
+		Tick tick = output.getTick();
+		return publications.test(key, policy, tick.getScaledBidPrice(), tick.getScaledOfferPrice(),
+									policy.getMinIntervalNanos() > 0 ? clock.getAsLong() : 0);
+	}
+	
+	/**
+	 * adds the update to the running totals of its instrument/market, with the given Listings key, and instrument
+	 */
+	private void add(MarketUpdate update, int key) {
 		
-		int instrumentIndex	= update.getTick().getInstrument().ordinal();
-		int marketIndex 	= update.getMarket().ordinal();
-
-		VwapEntry entry 	 = vwaps[instrumentIndex][marketIndex];
+		Tick tick 			 = update.getTick();
+		int instrumentIndex	 = tick.getInstrumentId();
 		
 		//checking to take care of one-sided ticks - checking both amount and price to ensure validity.
-		if((update.getTick().getBidAmount()) > 0.0 && (update.getTick().getBidPrice() > 0.0) ) {
-			entry.setBidTotal(entry.getBidTotal() + (update.getTick().getBidAmount() * update.getTick().getBidPrice()));
-			entry.setBidAmount(entry.getBidAmount() + update.getTick().getBidAmount()); 
+		//a side that is not valid adds zeros
+		long bidPrice = tick.getScaledBidPrice();
+		long bidAmount = tick.getScaledBidAmount();
+		if(bidAmount <= 0 || bidPrice <= 0) {
+			bidPrice = bidAmount = 0;
 		}
-		if((update.getTick().getOfferAmount()) > 0.0 && (update.getTick().getOfferPrice() > 0.0) ) {
-			entry.setOfferTotal(entry.getOfferTotal()+ (update.getTick().getOfferAmount() * update.getTick().getOfferPrice()));
-			entry.setOfferAmount(entry.getOfferAmount() + update.getTick().getOfferAmount()); 
+		long offerPrice = tick.getScaledOfferPrice();
+		long offerAmount = tick.getScaledOfferAmount();
+		if(offerAmount <= 0 || offerPrice <= 0) {
+			offerPrice = offerAmount = 0;
 		}
+		long bidHigh = FixedPoint.multiplyHigh(bidPrice, bidAmount);
+		long bidLow = bidPrice * bidAmount;
+		long offerHigh = FixedPoint.multiplyHigh(offerPrice, offerAmount);
+		long offerLow = offerPrice * offerAmount;
+		totals.add(key, bidHigh, bidLow, bidAmount, offerHigh, offerLow, offerAmount);
+		consolidated.add(instrumentIndex, bidHigh, bidLow, bidAmount, offerHigh, offerLow, offerAmount);
 		
-		//returning a new update each time for now - can be changed to reusing shared/pooled objects
-		VwapMarketUpdate vwapUpdate = new VwapMarketUpdate(update.getMarket(), 
-											new Tick (	update.getTick().getInstrument(),
-														update.getTick().getSide(),
-														computeVwap(entry.getBidTotal(), entry.getBidAmount()),
-														entry.getBidAmount(),
-														computeVwap(entry.getOfferTotal(), entry.getOfferAmount()),
-														entry.getOfferAmount()
-													));
+		//updates that did not go through a journal have no sequence
+		if(update.getSequence() != 0) {
+			sequence = update.getSequence();
+		}
+	}
+	
+	/**
+	 * @return journal sequence of the last journaled update in the running totals, 0 if none
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+	
+	/**
+	 * Writes a {@link #snapshot(Path) snapshot} to the file every given number of updates.
+	 * The totals are copied on the thread calling {@link #apply(MarketUpdate) apply} and written by 
+	 * a background thread, stopped by {@link #stop() stop}. While a snapshot is still being written 
+	 * the next one is put off to the next update.
+	 * @param file - the snapshot file, replaced each time
+	 * @param updates - number of updates between snapshots
+	 * @throws IllegalArgumentException if updates is not positive
+	 */
+	public void checkpointEvery(Path file, int updates) {
+		if(updates <= 0) {
+			throw new IllegalArgumentException("Invalid checkpoint interval of [" + updates + "] updates");
+		}
+		this.checkpointInterval = updates;
+		this.sinceCheckpoint = 0;
+		this.checkpointFile = file;
+		if(null == checkpointWriter) {
+			checkpointWriter = ExecutorUtils.singleThreadExecutor(ExecutorUtils.namedThreadFactory("vwap-checkpoint"));
+		}
+	}
+	
+	private void checkpoint() {
+		if(checkpointing) {
+			return;
+		}
+		sinceCheckpoint = 0;
+		//the copy is only touched by the writer until it clears checkpointing
+		totals.copyTo(checkpointTotals);
+		checkpointSequence = sequence;
+		checkpointing = true;
+		checkpointWriter.execute(writeCheckpoint);
+	}
+	
+	//runs on the checkpoint writer thread
+	private void writeCheckpoint() {
+		try {
+			write(checkpointTotals, checkpointSequence, checkpointFile);
+		} catch (IOException e) {
+			//keep calculating - the next checkpoint may succeed
+			System.err.println("Could not write vwap snapshot - " + e);
+		} finally {
+			checkpointing = false;
+		}
+	}
+	
+	/**
+	 * Writes the running totals and the journal sequence they include to the file.
+	 * Only instrument/markets with an amount are written. The snapshot is written to a 
+	 * temporary file, forced to disk and moved over the file, so the file always holds a whole snapshot.
+	 * The totals are copied in one go first, so the file is written from the copy.
+	 * 
+	 * Format: int magic, int version, long sequence, int entries, then per entry 
+	 * int instrument id, int market id, long bid total high, bid total low, bid amount, 
+	 * offer total high, offer total low, offer amount - in {@link FixedPoint FixedPoint} units.
+	 */
+	public void snapshot(Path file) throws IOException {
+		write(totals.copy(), sequence, file);
+	}
+	
+	private static void write(VwapState copy, long sequence, Path file) throws IOException {
+		int entries = 0;
+		for(int key = 0; key < copy.size(); key++) {
+			if(copy.hasAmount(key)) {
+				entries++;
+			}
+		}
 		
-		//do whatever work is required with the vwap here.
-		System.out.println(vwapUpdate);
-		return vwapUpdate;
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, 
+													StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeLong(sequence);
+			out.writeInt(entries);
+			for(int key = 0; key < copy.size(); key++) {
+				if(copy.hasAmount(key)) {
+					out.writeInt(Listings.instrumentId(key));
+					out.writeInt(Listings.marketId(key));
+					for(int field = 0; field < VwapState.FIELDS; field++) {
+						out.writeLong(copy.get(key, field));
+					}
+				}
+			}
+			out.flush();
+			//on disk before the move, else a crash can leave the file replaced by a partly written snapshot
+			channel.force(true);
+		}
+		Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		syncDirectory(file.toAbsolutePath().getParent());
+	}
+	
+	//makes the move itself durable. Directories cannot be opened on every platform, eg Windows,
+	//where the move is left to the file system
+	private static void syncDirectory(Path directory) {
+		try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			//the snapshot is still whole - only the move may be lost on a crash
+		}
 	}
 	
 	/**
-	 * calculate the vwap.
-	 * @param total total PV
-	 * @param amount total amount
-	 * @return vwap price
+	 * Replaces the running totals with those of a snapshot written by {@link #snapshot(Path) snapshot}.
+	 * Nothing is published. Snapshots with double totals, written before the totals were fixed-point,
+	 * are converted to the nearest units.
+	 * @return journal sequence the snapshot includes - replay the journal after it
+	 * @throws IOException if the file cannot be read or is not a snapshot
 	 */
-	protected double computeVwap(double total, double amount) {
-		if(amount == 0.0) {
-			return 0;
+	public long restore(Path file) throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if(in.readInt() != SNAPSHOT_MAGIC) {
+				throw new IOException("Not a vwap snapshot [" + file + "]");
+			}
+			int version = in.readInt();
+			if(version != SNAPSHOT_VERSION && version != SNAPSHOT_VERSION_DOUBLES) {
+				throw new IOException("Unknown vwap snapshot version [" + version + "] in [" + file + "]");
+			}
+			long snapshotSequence = in.readLong();
+			int entries = in.readInt();
+			
+			totals.clear();
+			consolidated.clear();
+			long[] entry = new long[VwapState.FIELDS];
+			for(int e = 0; e < entries; e++) {
+				int instrumentId = in.readInt();
+				int marketId = in.readInt();
+				if(version == SNAPSHOT_VERSION) {
+					for(int field = 0; field < VwapState.FIELDS; field++) {
+						entry[field] = in.readLong();
+					}
+				} else {
+					BigInteger bidTotal = toTotal(in.readDouble());
+					entry[VwapState.BID_TOTAL_HIGH] = bidTotal.shiftRight(64).longValue();
+					entry[VwapState.BID_TOTAL_LOW] = bidTotal.longValue();
+					entry[VwapState.BID_AMOUNT] = FixedPoint.toAmount(in.readDouble());
+					BigInteger offerTotal = toTotal(in.readDouble());
+					entry[VwapState.OFFER_TOTAL_HIGH] = offerTotal.shiftRight(64).longValue();
+					entry[VwapState.OFFER_TOTAL_LOW] = offerTotal.longValue();
+					entry[VwapState.OFFER_AMOUNT] = FixedPoint.toAmount(in.readDouble());
+				}
+				totals.add(Listings.key(instrumentId, marketId), entry, 0);
+				consolidated.add(instrumentId, entry, 0);
+			}
+			sequence = snapshotSequence;
+			return snapshotSequence;
 		}
-
-		return total/amount;
 	}
-
+	
 	/**
-	 * Holder for running VWAP totals.
-	 * In this case, since each entry is associated with the vwap array,
-	 * we dont need to store additional meta-data like markets, instruments in this class. 
+	 * Warm restart - restores the snapshot if there is one, adds the journal's updates after 
+	 * the snapshot's sequence to the totals and then publishes the vwap of every instrument/market.
+	 * Only updates for instrument/markets {@link #start() start} subscribes to are added, as live, 
+	 * so a journal shared with other services does not give this one totals it would never update.
+	 * Call before subscribing, ie before {@link #start() start}.
+	 * @param snapshot - the snapshot file, need not exist
+	 * @param journal - the journal directory, need not exist
+	 * @return journal sequence of the last update read
 	 */
-	class VwapEntry {
-		private double bidTotal;
-		private double bidAmount;
-		private double offerTotal;
-		private double offerAmount;
+	public long recover(Path snapshot, Path journal) throws IOException {
+		long from = Files.exists(snapshot) ? restore(snapshot) : sequence;
 		
-		public double getBidTotal() {
-			return bidTotal;
+		if(Files.isDirectory(journal)) {
+			JournalReader reader = new JournalReader(journal, from + 1);
+			DefaultMarketUpdate update = new DefaultMarketUpdate();
+			while(reader.read(update)) {
+				if(VwapSubscriptions.covers(update.getTick().getInstrumentId(), update.getMarketId())) {
+					add(update, key(update));
+				} else {
+					//skipped but read - a snapshot taken next need not replay it again
+					sequence = update.getSequence();
+				}
+			}
+		}
+		
+		for(int key = 0; key < totals.size(); key++) {
+			publishKey(key);
+		}
+		for(int i = 0; i < consolidated.size(); i++) {
+			publishConsolidated(i);
+		}
+		endOfBatch();
+		return sequence;
+	}
+	
+	//price * amount total of a version 1 snapshot in units
+	private static BigInteger toTotal(double total) {
+		return new BigDecimal(total).multiply(BigDecimal.valueOf(FixedPoint.PRICE_SCALE * FixedPoint.AMOUNT_SCALE))
+					.setScale(0, RoundingMode.HALF_UP).toBigInteger();
+	}
+	
+	//the output carries the journal sequence and ingress time of the latest update in it
+	private static void stamp(VwapMarketUpdate output, MarketUpdate update) {
+		output.setSequence(update.getSequence());
+		output.setIngressNanos(update.getIngressNanos());
+	}
+	
+	private void setVwap(VwapMarketUpdate output, MarketUpdate update, VwapState state, int key) {
+		state.setVwap(key, output.getTick(), update.getTick().getInstrumentId(), update.getTick().getSide());
+	}
+	
+	/**
+	 * Takes the running totals of an instrument out of this vwapper so they can be merged into another.
+	 * The totals here are zeroed.
+	 * @return the {@link VwapState#FIELDS VwapState.FIELDS} totals for each market id in turn
+	 */
+	long[] removeInstrument(int instrumentId) {
+		int markets = SymbolRegistry.MARKETS.size();
+		long[] state = new long[markets * VwapState.FIELDS];
+		for(int m = 0; m < markets; m++) {
+			int key = keyWithTotals(instrumentId, m);
+			if(key >= 0) {
+				totals.get(key, state, m * VwapState.FIELDS);
+				totals.clear(key);
+			}
+		}
+		consolidated.clear(instrumentId);
+		return state;
+	}
+	
+	/**
+	 * Adds running totals taken from another vwapper by {@link #removeInstrument(int) removeInstrument}.
+	 */
+	void mergeInstrument(int instrumentId, long[] state) {
+		for(int m = 0; m < state.length / VwapState.FIELDS; m++) {
+			int offset = m * VwapState.FIELDS;
+			//markets without totals are skipped so as not to give out keys for them
+			if(state[offset + VwapState.BID_AMOUNT] != 0 || state[offset + VwapState.OFFER_AMOUNT] != 0) {
+				totals.add(Listings.key(instrumentId, m), state, offset);
+				consolidated.add(instrumentId, state, offset);
+			}
+		}
+	}
+	
+	/**
+	 * Publishes the current vwap of the instrument for every market that has one, 
+	 * and the consolidated vwap, to the sinks.
+	 */
+	void publish(int instrumentId) {
+		int markets = SymbolRegistry.MARKETS.size();
+		for(int m = 0; m < markets; m++) {
+			int key = keyWithTotals(instrumentId, m);
+			if(key >= 0) {
+				publishKey(key);
+			}
+		}
+		publishConsolidated(instrumentId);
+	}
+	
+	//Listings key of the instrument/market if it has totals here, else -1. Listings holds the keys
+	//per instrument, so going through an instrument's markets never visits other instruments' keys
+	private int keyWithTotals(int instrumentId, int marketId) {
+		int key = Listings.find(instrumentId, marketId);
+		return key >= 0 && key < totals.size() && totals.hasAmount(key) ? key : -1;
+	}
+	
+	private void publishKey(int key) {
+		if(totals.hasAmount(key)) {
+			VwapMarketUpdate output = outputs.get(key);
+			output.setMarketId(Listings.marketId(key));
+			setVwap(output, Listings.instrumentId(key), totals, key);
+			publications.published(key, output.getTick().getScaledBidPrice(), 
+									output.getTick().getScaledOfferPrice(), clock.getAsLong());
+			sink.accept(output);
+		}
+	}
+	
+	private void publishConsolidated(int instrumentId) {
+		if(consolidated.hasAmount(instrumentId)) {
+			ConsolidatedVwapMarketUpdate output = consolidatedOutputs.get(instrumentId);
+			setVwap(output, instrumentId, consolidated, instrumentId);
+			consolidatedPublications.published(instrumentId, output.getTick().getScaledBidPrice(), 
+									output.getTick().getScaledOfferPrice(), clock.getAsLong());
+			consolidatedSink.accept(output);
 		}
-		public void setBidTotal(double bidTotal) {
-			this.bidTotal = bidTotal;
+	}
+	
+	//side is not part of the vwap - keep whichever side the output last had
+	private void setVwap(VwapMarketUpdate output, int instrumentId, VwapState state, int key) {
+		state.setVwap(key, output.getTick(), instrumentId,
+							null == output.getTick().getSide() ? Side.BID : output.getTick().getSide());
+	}
+	
+	static void validate(MarketUpdate update) {
+		if(null == update) {
+			throw new IllegalArgumentException("Cannot process null market update");
 		}
-		public double getBidAmount() {
-			return bidAmount;
+		
+		if(update.getMarketId() < 0) {
+			throw new IllegalArgumentException("Cannot process update with null market");
 		}
-		public void setBidAmount(double bidAmount) {
-			this.bidAmount = bidAmount;
+		
+		if(update.getMarketId() >= SymbolRegistry.MARKETS.size()) {
+			throw new IllegalArgumentException("Cannot process update with unknown market [" + update.getMarketId() + "]");
 		}
-		public double getOfferTotal() {
-			return offerTotal;
+		
+		if(null == update.getTick()) {
+			throw new IllegalArgumentException("Cannot process update with null tick");
+		}
+
+		if(update.getTick().getInstrumentId() < 0) {
+			throw new IllegalArgumentException("Cannot process update with null instrument");
 		}
-		public void setOfferTotal(double offerTotal) {
-			this.offerTotal = offerTotal;
+		
+		if(update.getTick().getInstrumentId() >= SymbolRegistry.INSTRUMENTS.size()) {
+			throw new IllegalArgumentException("Cannot process update with unknown instrument [" 
+												+ update.getTick().getInstrumentId() + "]");
 		}
-		public double getOfferAmount() {
-			return offerAmount;
+	}
+	
+	//Listings key of a validated update. Keys are given out on subscribe - the lookup never adds one,
+	//so an instrument/market without a key is not subscribed to
+	private static int key(MarketUpdate update) {
+		int key = Listings.find(update.getTick().getInstrumentId(), update.getMarketId());
+		if(key < 0) {
+			throw new IllegalArgumentException(String.format("Cannot process update for [%s] on [%s] - not subscribed", 
+									SymbolRegistry.INSTRUMENTS.getNameOrId(update.getTick().getInstrumentId()),
+									SymbolRegistry.MARKETS.getNameOrId(update.getMarketId())));
 		}
-		public void setOfferAmount(double offerAmount) {
-			this.offerAmount = offerAmount;
+		return key;
+	}
+	
+	/**
+	 * calculate the vwap from double totals - the running totals use {@link FixedPoint#divide(long, long, long) 
+	 * FixedPoint.divide} instead.
+	 * @param total total PV
+	 * @param amount total amount
+	 * @return vwap price
+	 */
+	protected double computeVwap(double total, double amount) {
+		if(amount == 0.0) {
+			return 0;
 		}
 
+		return total/amount;
 	}
 
 }
@@ -0,0 +1,24 @@
+package com.mywork.markets.vwap;
+
+/**
+ * VWAP price over one of the windows of a {@link WindowedVwapper WindowedVwapper}.
+ */
+public class WindowedVwapMarketUpdate extends VwapMarketUpdate {
+
+	private final int window;
+	
+	/**
+	 * @param window - index of the window (accumulator) in the WindowedVwapper
+	 */
+	public WindowedVwapMarketUpdate(int window) {
+		this.window = window;
+	}
+	
+	public int getWindow() {
+		return window;
+	}
+	
+	public String toString() {
+		return "Window : [" + window + "] " + super.toString();
+	}
+}
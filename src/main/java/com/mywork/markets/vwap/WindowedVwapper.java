@@ -0,0 +1,161 @@
+package com.mywork.markets.vwap;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import com.mywork.markets.Instruments;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.Side;
+import com.mywork.markets.Tick;
+import com.mywork.markets.providers.Provider;
+import com.mywork.markets.services.Lifecycle;
+
+/**
+ * Computes VWAPs over several windows per instrument per market per side in one pass over each update.
+ * Each window is a {@link VwapAccumulator VwapAccumulator} sized for {@link #KEYS KEYS} keys, 
+ * and windows of different kinds can be mixed:
+ * 1. {@link TimeWindowAccumulator TimeWindowAccumulator} - the last T nanos
+ * 2. {@link TickWindowAccumulator TickWindowAccumulator} - the last N ticks
+ * 3. {@link VolumeWindowAccumulator VolumeWindowAccumulator} - the last V units of amount
+ * 
+ * For every update one {@link WindowedVwapMarketUpdate WindowedVwapMarketUpdate} per window is
+ * written into pre-allocated events and handed to the sink, so no objects are created per update.
+ * 
+ * Accumulators use fixed memory, so only the instruments/markets of the Instruments and Markets 
+ * enums are supported - not those added at runtime to the {@link com.mywork.markets.SymbolRegistry SymbolRegistry}.
+ * 
+ * Like {@link Vwapper Vwapper} this class is NOT thread-safe.
+ */
+public class WindowedVwapper implements Function<MarketUpdate, VwapMarketUpdate>, Lifecycle {
+
+	/** number of keys an accumulator needs - one per instrument per market per side */
+	public static final int KEYS = Instruments.SIZE * Markets.SIZE * Side.SIZE;
+	
+	private final VwapAccumulator[] windows;
+	
+	//one reusable output event per window/instrument/market
+	private final WindowedVwapMarketUpdate outputs[][][];
+	
+	private final Consumer<? super WindowedVwapMarketUpdate> sink;
+	
+	//time source for time based windows, in nanos
+	private final LongSupplier clock;
+	
+	private final VwapSubscriptions subscriptions;
+	
+	/**
+	 * @param provider - the provider to subscribe to
+	 * @param sink - receives the vwap-ed update for every window. Updates are reused, so the sink
+	 *        must copy them if they need to be kept beyond the call.
+	 * @param clock - current time in nanos, eg System::nanoTime
+	 * @param windows - the windows to calculate, each sized for {@link #KEYS KEYS} keys
+	 * @throws IllegalArgumentException if no windows are given
+	 */
+	public WindowedVwapper(Provider provider, Consumer<? super WindowedVwapMarketUpdate> sink, 
+							LongSupplier clock, VwapAccumulator... windows) {
+		if(windows.length == 0) {
+			throw new IllegalArgumentException("At least one window is required");
+		}
+		this.windows = windows.clone();
+		this.sink = sink;
+		this.clock = clock;
+		this.subscriptions = new VwapSubscriptions(provider);
+		
+		outputs = new WindowedVwapMarketUpdate[windows.length][Instruments.SIZE][Markets.SIZE];
+		for(int w = 0; w < windows.length; w++) {
+			for(int i = 0; i < Instruments.SIZE; i++){
+				for(int j = 0; j < Markets.SIZE; j++) {
+					outputs[w][i][j] = new WindowedVwapMarketUpdate(w);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * dense key for an instrument/market/side
+	 */
+	public static int key(int instrument, int market, int side) {
+		return ((instrument * Markets.SIZE) + market) * Side.SIZE + side;
+	}
+
+	/**
+	 * start the service
+	 * subscribe to MD from all markets
+	 */
+	@Override
+	public void start() {
+		subscriptions.subscribeAll(this);
+	}
+
+	/**
+	 * stop the service
+	 * unsubscribe from MD from all markets
+	 */
+	@Override
+	public void stop() {
+		subscriptions.unsubscribeAll(this);
+	}
+
+	/**
+	 * Adds the update to every window and publishes the vwap of each window to the sink.
+	 * @return the vwap-ed update of the first window - overwritten by the next update 
+	 *         for the same instrument/market
+	 * @throws IllegalArgumentException if the update, market, tick or instrument is null
+	 *         or the instrument/market is not one of the enums
+	 */
+	@Override
+	public VwapMarketUpdate apply(MarketUpdate update) {
+		
+		Vwapper.validate(update);
+		
+		long now = clock.getAsLong();
+		Tick tick = update.getTick();
+		int instrumentIndex = tick.getInstrumentId();
+		int marketIndex = update.getMarketId();
+		if(instrumentIndex >= Instruments.SIZE || marketIndex >= Markets.SIZE) {
+			throw new IllegalArgumentException(String.format("Windows are not kept for instrument [%d] on market [%d]", 
+																instrumentIndex, marketIndex));
+		}
+		int bidKey = key(instrumentIndex, marketIndex, Side.BID.ordinal());
+		int offerKey = key(instrumentIndex, marketIndex, Side.OFFER.ordinal());
+		
+		//checking to take care of one-sided ticks - checking both amount and price to ensure validity.
+		boolean validBid = tick.getBidAmount() > 0.0 && tick.getBidPrice() > 0.0;
+		boolean validOffer = tick.getOfferAmount() > 0.0 && tick.getOfferPrice() > 0.0;
+		
+		for(int w = 0; w < windows.length; w++) {
+			VwapAccumulator window = windows[w];
+			if(validBid) {
+				window.add(bidKey, now, tick.getBidPrice(), tick.getBidAmount());
+			} else {
+				window.advance(bidKey, now);
+			}
+			if(validOffer) {
+				window.add(offerKey, now, tick.getOfferPrice(), tick.getOfferAmount());
+			} else {
+				window.advance(offerKey, now);
+			}
+			
+			WindowedVwapMarketUpdate output = outputs[w][instrumentIndex][marketIndex];
+			output.setMarketId(marketIndex);
+			output.getTick().set(instrumentIndex, 
+								tick.getSide(),
+								computeVwap(window.getTotal(bidKey), window.getAmount(bidKey)),
+								window.getAmount(bidKey),
+								computeVwap(window.getTotal(offerKey), window.getAmount(offerKey)),
+								window.getAmount(offerKey));
+			sink.accept(output);
+		}
+		
+		return outputs[0][instrumentIndex][marketIndex];
+	}
+	
+	private static double computeVwap(double total, double amount) {
+		if(amount <= 0.0) {
+			return 0;
+		}
+		return total/amount;
+	}
+}
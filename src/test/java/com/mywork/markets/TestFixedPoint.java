@@ -0,0 +1,80 @@
+package com.mywork.markets;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestFixedPoint {
+
+	private static final BigInteger TWO_64 = BigInteger.ONE.shiftLeft(64);
+
+	@Test
+	public void testConversionsRoundTrip() {
+		assertEquals(110_000_000L, FixedPoint.toPrice(1.1));
+		assertEquals(1.1, FixedPoint.fromPrice(FixedPoint.toPrice(1.1)), 0.0);
+		assertEquals(1_500_000L, FixedPoint.toAmount(150.0));
+		assertEquals(0.0001, FixedPoint.fromAmount(FixedPoint.toAmount(0.0001)), 0.0);
+	}
+
+	@Test
+	public void testMultiplyHighMatchesBigInteger() {
+		Random random = new Random(42);
+		for(int i = 0; i < 100_000; i++) {
+			long x = random.nextLong();
+			long y = random.nextLong();
+			BigInteger product = unsigned(x).multiply(unsigned(y));
+			assertEquals(product.shiftRight(64).longValue(), FixedPoint.multiplyHigh(x, y));
+			assertEquals(product.longValue(), x * y);
+		}
+		assertEquals(-2L, FixedPoint.multiplyHigh(-1L, -1L));
+	}
+
+	@Test
+	public void testDivideRoundsHalfUp() {
+		Random random = new Random(42);
+		for(int i = 0; i < 100_000; i++) {
+			long divisor = random.nextLong() >>> random.nextInt(63);
+			if(divisor == 0) {
+				continue;
+			}
+			long high = Long.remainderUnsigned(random.nextLong(), divisor);
+			long low = random.nextLong();
+			BigInteger dividend = unsigned(high).shiftLeft(64).or(unsigned(low));
+			BigInteger[] qr = dividend.divideAndRemainder(unsigned(divisor));
+			BigInteger expected = qr[1].shiftLeft(1).compareTo(unsigned(divisor)) >= 0 ? qr[0].add(BigInteger.ONE) : qr[0];
+			assertEquals(expected.longValue(), FixedPoint.divide(high, low, divisor));
+		}
+		//quotients in the range of prices
+		for(int i = 0; i < 100_000; i++) {
+			long divisor = 1 + (random.nextLong() >>> (3 + random.nextInt(60)));
+			BigInteger dividend = unsigned(divisor).multiply(BigInteger.valueOf(random.nextLong() >>> 15))
+										.add(BigInteger.valueOf(random.nextLong() >>> 1).mod(unsigned(divisor)));
+			BigInteger[] qr = dividend.divideAndRemainder(unsigned(divisor));
+			BigInteger expected = qr[1].shiftLeft(1).compareTo(unsigned(divisor)) >= 0 ? qr[0].add(BigInteger.ONE) : qr[0];
+			assertEquals(expected.longValue(), 
+						FixedPoint.divide(dividend.shiftRight(64).longValue(), dividend.longValue(), divisor));
+		}
+		assertEquals(2L, FixedPoint.divide(0, 5, 3));
+		assertEquals(2L, FixedPoint.divide(0, 3, 2));
+		assertEquals(1L, FixedPoint.divide(0, 4, 3));
+	}
+
+	@Test
+	public void testCarry() {
+		assertEquals(1L, FixedPoint.carry(-1L, 1L));
+		assertEquals(0L, FixedPoint.carry(1L, 1L));
+	}
+
+	@Test(expected=ArithmeticException.class)
+	public void testDivideOverflow() {
+		FixedPoint.divide(3, 0, 3);
+	}
+
+	private static BigInteger unsigned(long value) {
+		BigInteger result = BigInteger.valueOf(value);
+		return value < 0 ? result.add(TWO_64) : result;
+	}
+}
@@ -0,0 +1,63 @@
+package com.mywork.markets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestSymbolRegistry {
+
+	@Test
+	public void testSeededFromEnums() {
+		for(Instruments instrument : Instruments.values()) {
+			assertEquals(instrument.ordinal(), SymbolRegistry.INSTRUMENTS.getId(instrument.name()));
+		}
+		for(Markets market : Markets.values()) {
+			assertEquals(market.ordinal(), SymbolRegistry.MARKETS.getId(market.name()));
+		}
+	}
+
+	@Test
+	public void testInternIsDense() {
+		SymbolRegistry registry = new SymbolRegistry();
+		
+		for(int i = 0; i < 100; i++) {
+			assertEquals(i, registry.intern("SYM" + i));
+		}
+		assertEquals(42, registry.intern("SYM42"));
+		assertEquals("SYM99", registry.getName(99));
+		assertEquals(100, registry.size());
+		assertEquals(-1, registry.getId("UNKNOWN"));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnknownId() {
+		new SymbolRegistry().getName(0);
+	}
+
+	@Test
+	public void testUnknownIdPrintedRaw() {
+		assertEquals("2000000000", SymbolRegistry.INSTRUMENTS.getNameOrId(2_000_000_000));
+		assertEquals(Instruments.EURUSD.name(), SymbolRegistry.INSTRUMENTS.getNameOrId(Instruments.EURUSD.ordinal()));
+		
+		DefaultMarketUpdate update = new DefaultMarketUpdate().setScaled(2_000_000_000, 2_000_000_000, Side.BID, 1, 1, 1, 1);
+		assertTrue(update.toString().contains("Market : [2000000000"));
+		assertTrue(update.toString().contains("Instrument : [2000000000]"));
+	}
+
+	@Test
+	public void testListingKeys() {
+		assertEquals(Instruments.EURUSD.ordinal() * Markets.SIZE + Markets.MARKET2.ordinal(), 
+					Listings.key(Instruments.EURUSD.ordinal(), Markets.MARKET2.ordinal()));
+		
+		int instrumentId = SymbolRegistry.INSTRUMENTS.intern("TEST.LISTINGS");
+		int key = Listings.key(instrumentId, 0);
+		assertEquals(key, Listings.key(instrumentId, 0));
+		assertNotEquals(key, Listings.key(instrumentId, 1));
+		assertEquals(instrumentId, Listings.instrumentId(key));
+		assertEquals(0, Listings.marketId(key));
+		assertEquals(Markets.MARKET2.ordinal(), 
+					Listings.marketId(Listings.key(Instruments.EURUSD.ordinal(), Markets.MARKET2.ordinal())));
+	}
+}
@@ -0,0 +1,159 @@
+package com.mywork.markets.book;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.FixedPoint;
+import com.mywork.markets.Instruments;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.Side;
+import com.mywork.markets.Tick;
+import com.mywork.markets.providers.Provider;
+import com.mywork.markets.providers.SubscriptionException;
+
+public class TestAggregatedBook {
+
+	private Provider provider;
+	private List<String> tops;
+	private AggregatedBook book;
+
+	@Before
+	public void setup() {
+		provider = mock(Provider.class);
+		tops = new ArrayList<>();
+		book = new AggregatedBook(provider, Instruments.GBPUSD.ordinal(), top -> tops.add(top.getTick().toString()));
+	}
+
+	@Test
+	public void testStartSubscribesAllMarkets() throws SubscriptionException {
+		doThrow(new SubscriptionException("Test Exception")).when(provider)
+				.subscribe(eq(Instruments.GBPUSD.ordinal()), eq(Markets.MARKET1.ordinal()),
+				ArgumentMatchers.<Function<? extends MarketUpdate, ? extends MarketUpdate>>any());
+		book.start();
+		verify(provider, times(Markets.SIZE)).subscribe(eq(Instruments.GBPUSD.ordinal()), anyInt(),
+				ArgumentMatchers.<Function<? extends MarketUpdate, ? extends MarketUpdate>>any());
+
+		book.stop();
+		verify(provider, times(Markets.SIZE - 1)).unsubscribe(eq(Instruments.GBPUSD.ordinal()), anyInt(),
+				ArgumentMatchers.<Function<? extends MarketUpdate, ? extends MarketUpdate>>any());
+		verify(provider, never()).unsubscribe(anyInt(), eq(Markets.MARKET1.ordinal()),
+				ArgumentMatchers.<Function<? extends MarketUpdate, ? extends MarketUpdate>>any());
+	}
+
+	@Test
+	public void testRanksVenuesAndAggregatesTop() {
+		book.apply(createTestUpdate(Markets.MARKET0, 1.10, 100, 1.20, 100));
+		book.apply(createTestUpdate(Markets.MARKET1, 1.12, 50, 1.19, 10));
+		book.apply(createTestUpdate(Markets.MARKET2, 1.12, 25, 1.21, 10));
+
+		assertEquals(3, book.getBidDepth());
+		assertEquals(Markets.MARKET1.ordinal(), book.getBidVenue(0));
+		assertEquals(Markets.MARKET2.ordinal(), book.getBidVenue(1));
+		assertEquals(Markets.MARKET0.ordinal(), book.getBidVenue(2));
+		assertEquals(Markets.MARKET1.ordinal(), book.getOfferVenue(0));
+		assertEquals(Markets.MARKET0.ordinal(), book.getOfferVenue(1));
+		assertEquals(2, book.getOfferRank(Markets.MARKET2.ordinal()));
+
+		Tick top = book.getTop().getTick();
+		assertEquals(FixedPoint.toPrice(1.12), top.getScaledBidPrice());
+		assertEquals(FixedPoint.toAmount(75), top.getScaledBidAmount());
+		assertEquals(FixedPoint.toPrice(1.19), top.getScaledOfferPrice());
+		assertEquals(FixedPoint.toAmount(10), top.getScaledOfferAmount());
+		assertEquals(null, book.getTop().getMarket());
+
+		//the best venue drops back behind the others
+		book.apply(createTestUpdate(Markets.MARKET1, 1.09, 50, 1.22, 10));
+		assertEquals(Markets.MARKET2.ordinal(), book.getBidVenue(0));
+		assertEquals(Markets.MARKET0.ordinal(), book.getBidVenue(1));
+		assertEquals(Markets.MARKET1.ordinal(), book.getBidVenue(2));
+		assertEquals(FixedPoint.toPrice(1.20), book.getTop().getTick().getScaledOfferPrice());
+	}
+
+	@Test
+	public void testNotifiesOnlyWhenTopChanges() {
+		book.apply(createTestUpdate(Markets.MARKET0, 1.10, 100, 1.20, 100));
+		book.apply(createTestUpdate(Markets.MARKET1, 1.09, 100, 1.21, 100));
+		assertEquals(1, tops.size());
+
+		//below the top
+		book.apply(createTestUpdate(Markets.MARKET1, 1.08, 200, 1.22, 200));
+		assertEquals(1, tops.size());
+
+		//amount at the top
+		book.apply(createTestUpdate(Markets.MARKET0, 1.10, 150, 1.20, 100));
+		assertEquals(2, tops.size());
+
+		//same again
+		book.apply(createTestUpdate(Markets.MARKET0, 1.10, 150, 1.20, 100));
+		assertEquals(2, tops.size());
+	}
+
+	@Test
+	public void testOneSidedVenueLeavesLadder() {
+		book.apply(createTestUpdate(Markets.MARKET0, 1.10, 100, 1.20, 100));
+		book.apply(createTestUpdate(Markets.MARKET1, 1.11, 100, 1.21, 100));
+		book.apply(createTestUpdate(Markets.MARKET1, 0.0, 0, 1.21, 100));
+
+		assertEquals(1, book.getBidDepth());
+		assertEquals(-1, book.getBidRank(Markets.MARKET1.ordinal()));
+		assertEquals(0, book.getBidPrice(Markets.MARKET1.ordinal()));
+		assertEquals(FixedPoint.toPrice(1.10), book.getTop().getTick().getScaledBidPrice());
+		assertEquals(2, book.getOfferDepth());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testOtherInstrumentRejected() {
+		book.apply(new DefaultMarketUpdate(Markets.MARKET0, new Tick(Instruments.EURUSD, Side.BID, 1.1, 1, 1.2, 1)));
+	}
+
+	@Test
+	public void testLadderMatchesSortedVenues() {
+		Random random = new Random(42);
+		VenueLadder ladder = new VenueLadder(2, true);
+		long[] prices = new long[20];
+		for(int i = 0; i < 10_000; i++) {
+			int venue = random.nextInt(prices.length);
+			//a few prices so that ties are common, and some updates that take the venue off
+			long price = random.nextInt(8);
+			ladder.update(venue, price, 1 + random.nextInt(5));
+			prices[venue] = price;
+
+			List<Integer> expected = new ArrayList<>();
+			for(int v = 0; v < prices.length; v++) {
+				if(prices[v] > 0) {
+					expected.add(v);
+				}
+			}
+			expected.sort(Comparator.<Integer>comparingLong(v -> -prices[v]).thenComparing(v -> v));
+			assertEquals(expected.size(), ladder.depth());
+			for(int rank = 0; rank < expected.size(); rank++) {
+				assertEquals(expected.get(rank).intValue(), ladder.venue(rank));
+				assertEquals(rank, ladder.rank(expected.get(rank)));
+			}
+		}
+	}
+
+	private static MarketUpdate createTestUpdate(Markets market, double bidPrice, double bidAmount,
+												double offerPrice, double offerAmount) {
+		return new DefaultMarketUpdate(market,
+					new Tick(Instruments.GBPUSD, Side.BID, bidPrice, bidAmount, offerPrice, offerAmount));
+	}
+}
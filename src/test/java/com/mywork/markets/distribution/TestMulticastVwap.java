@@ -0,0 +1,124 @@
+package com.mywork.markets.distribution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeNotNull;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.FixedPoint;
+import com.mywork.markets.Instruments;
+import com.mywork.markets.Markets;
+import com.mywork.markets.Side;
+import com.mywork.markets.Tick;
+import com.mywork.markets.providers.Provider;
+import com.mywork.markets.vwap.ConsolidatedVwapMarketUpdate;
+import com.mywork.markets.vwap.VwapMarketUpdate;
+import com.mywork.markets.vwap.Vwapper;
+
+public class TestMulticastVwap {
+
+	private static final InetSocketAddress GROUP = new InetSocketAddress("239.255.42.99", 45099);
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testCodecRoundTrip() {
+		ByteBuffer buffer = VwapCodec.allocate(MulticastVwapPublisher.DEFAULT_DATAGRAM_SIZE);
+		assertEquals(22, VwapCodec.maxMessages(MulticastVwapPublisher.DEFAULT_DATAGRAM_SIZE));
+
+		VwapMarketUpdate vwap = new VwapMarketUpdate(Markets.MARKET2, new Tick(Instruments.EURUSD, Side.OFFER, 1.1, 100, 1.2, 50));
+		vwap.setSequence(42);
+		vwap.setIngressNanos(123_456_789L);
+		ConsolidatedVwapMarketUpdate consolidated = new ConsolidatedVwapMarketUpdate();
+		consolidated.getTick().set(Instruments.GBPUSD.ordinal(), null, 1.3, 10, 0, 0);
+		VwapCodec.encode(buffer, 0, vwap);
+		VwapCodec.encode(buffer, 1, consolidated);
+		VwapCodec.encodeHeader(buffer, 7, 2);
+
+		int length = VwapCodec.HEADER_SIZE + 2 * VwapCodec.MESSAGE_SIZE;
+		assertEquals(2, VwapCodec.messages(buffer, length));
+		assertEquals(-1, VwapCodec.messages(buffer, length - 1));
+		assertEquals(7, VwapCodec.sequence(buffer));
+		assertEquals(VwapCodec.VWAP, VwapCodec.template(buffer, 0));
+		assertEquals(VwapCodec.CONSOLIDATED_VWAP, VwapCodec.template(buffer, 1));
+
+		VwapMarketUpdate decoded = new VwapMarketUpdate();
+		VwapCodec.decode(buffer, 0, decoded);
+		assertEquals(vwap.toString(), decoded.toString());
+		assertEquals(42, decoded.getSequence());
+		assertEquals(123_456_789L, decoded.getIngressNanos());
+
+		VwapCodec.decode(buffer, 1, decoded);
+		assertEquals(-1, decoded.getMarketId());
+		assertNull(decoded.getTick().getSide());
+		assertEquals(FixedPoint.toPrice(1.3), decoded.getTick().getScaledBidPrice());
+	}
+
+	@Test
+	public void testLoopbackFromVwapper() throws Exception {
+		NetworkInterface loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+		assumeNotNull(loopback);
+
+		List<String> vwaps = new ArrayList<>();
+		List<String> consolidated = new ArrayList<>();
+		MulticastVwapReceiver receiver = null;
+		try {
+			receiver = new MulticastVwapReceiver(GROUP, loopback, MulticastVwapPublisher.DEFAULT_DATAGRAM_SIZE,
+												vwap -> vwaps.add(vwap.toString()), vwap -> consolidated.add(vwap.toString()));
+		} catch(IOException | UnsupportedOperationException e) {
+			//no multicast on this host
+			assumeNoException(e);
+		}
+
+		try(MulticastVwapPublisher publisher = new MulticastVwapPublisher(GROUP, loopback,
+													MulticastVwapPublisher.DEFAULT_DATAGRAM_SIZE, 0)) {
+			List<String> published = new ArrayList<>();
+			Vwapper vwapper = new Vwapper(mock(Provider.class),
+										vwap -> {
+											published.add(vwap.toString());
+											publisher.accept(vwap);
+										},
+										publisher);
+			vwapper.setEndOfBatchAction(publisher::flush);
+
+			//one batch of 30 updates - 16 market and 4 consolidated vwaps, so one datagram
+			for(int i = 0; i < 30; i++) {
+				vwapper.onUpdate(new DefaultMarketUpdate(Markets.getMarketById(i % Markets.SIZE),
+										new Tick(Instruments.getInstrumentById((i / 4) % 4), Side.BID, 1 + i / 100.0, 100, 2, 100)),
+									i == 29);
+			}
+			assertEquals(1, publisher.getSequence());
+
+			MulticastVwapReceiver receiving = receiver;
+			Future<Integer> received = executor.submit(() -> receiving.receive());
+			assertEquals(16 + 4, received.get(5, TimeUnit.SECONDS).intValue());
+			assertEquals(published, vwaps);
+			assertEquals(4, consolidated.size());
+			assertEquals(0, receiver.getLost());
+		} finally {
+			receiver.close();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.mywork.markets.feed;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Venue stub for the tests - serves one feed connection at a time on a loopback port.
+ * Frames are written in chunks of a given size so they split across the handler's reads.
+ */
+class StubFeedServer implements AutoCloseable {
+
+	private final ServerSocketChannel server;
+
+	private SocketChannel client;
+
+	StubFeedServer() throws IOException {
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+	}
+
+	InetSocketAddress getAddress() throws IOException {
+		return (InetSocketAddress)server.getLocalAddress();
+	}
+
+	/**
+	 * waits for the handler to connect
+	 */
+	void accept() throws IOException {
+		client = server.accept();
+	}
+
+	/**
+	 * writes the frames between the buffer's position and limit, a chunk at a time
+	 */
+	void send(ByteBuffer frames, int chunk) throws IOException, InterruptedException {
+		while(frames.hasRemaining()) {
+			ByteBuffer part = frames.duplicate();
+			part.limit(Math.min(frames.limit(), frames.position() + chunk));
+			while(part.hasRemaining()) {
+				client.write(part);
+			}
+			frames.position(part.position());
+			//lets the handler read each chunk on its own
+			TimeUnit.MILLISECONDS.sleep(1);
+		}
+	}
+
+	/**
+	 * closes the handler's connection - the server still accepts the next one
+	 */
+	void disconnect() throws IOException {
+		client.close();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(null != client) {
+			client.close();
+		}
+		server.close();
+	}
+}
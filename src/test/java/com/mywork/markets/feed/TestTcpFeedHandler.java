@@ -0,0 +1,197 @@
+package com.mywork.markets.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.Instruments;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.Side;
+
+public class TestTcpFeedHandler {
+
+	private static final InetSocketAddress UNUSED = new InetSocketAddress("127.0.0.1", 1);
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testDecodesFramesSplitAnywhere() throws IOException {
+		ByteBuffer frames = QuoteCodec.allocate(1024);
+		QuoteCodec.encodeQuote(frames, createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1));
+		QuoteCodec.encodeHeartbeat(frames);
+		//a template added later - skipped by its length
+		frames.putInt(6).putShort((short)99).putInt(0);
+		QuoteCodec.encodeQuote(frames, createTestUpdate(Markets.MARKET1, Instruments.EURUSD, 1.2));
+		frames.flip();
+
+		for(int split = 0; split <= frames.limit(); split++) {
+			List<String> received = new ArrayList<>();
+			TcpFeedHandler handler = new TcpFeedHandler(update -> received.add(update.toString()), UNUSED);
+			ByteBuffer read = QuoteCodec.allocate(256);
+			int decoded = 0;
+			for(ByteBuffer part : new ByteBuffer[] {slice(frames, 0, split), slice(frames, split, frames.limit())}) {
+				read.put(part);
+				read.flip();
+				decoded += handler.decode(read, 42);
+				read.compact();
+			}
+			assertEquals(2, decoded);
+			assertEquals(0, read.position());
+			assertEquals(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1).toString(), received.get(0));
+			assertEquals(createTestUpdate(Markets.MARKET1, Instruments.EURUSD, 1.2).toString(), received.get(1));
+		}
+	}
+
+	@Test
+	public void testDecodeStampsIngress() throws IOException {
+		ByteBuffer frames = QuoteCodec.allocate(256);
+		QuoteCodec.encodeQuote(frames, createTestUpdate(Markets.MARKET1, Instruments.GBPUSD, 1.4));
+		frames.flip();
+		List<Long> ingress = new ArrayList<>();
+		new TcpFeedHandler(update -> ingress.add(update.getIngressNanos()), UNUSED).decode(frames, 42);
+		assertEquals(Collections.singletonList(42L), ingress);
+	}
+
+	@Test
+	public void testUnknownIdsSkipped() throws IOException {
+		ByteBuffer frames = QuoteCodec.allocate(1024);
+		QuoteCodec.encodeQuote(frames, createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1));
+		int start = frames.position() + QuoteCodec.LENGTH_SIZE;
+		QuoteCodec.encodeQuote(frames, createTestUpdate(Markets.MARKET1, Instruments.EURUSD, 1.2));
+		frames.putInt(start + QuoteCodec.MARKET, Integer.MAX_VALUE);
+		start = frames.position() + QuoteCodec.LENGTH_SIZE;
+		QuoteCodec.encodeQuote(frames, createTestUpdate(Markets.MARKET0, Instruments.EURUSD, 1.3));
+		frames.putInt(start + QuoteCodec.INSTRUMENT, -1);
+		start = frames.position() + QuoteCodec.LENGTH_SIZE;
+		QuoteCodec.encodeQuote(frames, createTestUpdate(Markets.MARKET1, Instruments.GBPUSD, 1.4));
+		frames.putShort(start + QuoteCodec.SIDE, (short)Side.values().length);
+		QuoteCodec.encodeQuote(frames, createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.5));
+		frames.flip();
+
+		List<String> received = new ArrayList<>();
+		TcpFeedHandler handler = new TcpFeedHandler(update -> received.add(update.toString()), UNUSED);
+		assertEquals(2, handler.decode(frames, 42));
+		assertEquals(0, frames.remaining());
+		assertEquals(3, handler.getRejected());
+		assertEquals(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1).toString(), received.get(0));
+		assertEquals(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.5).toString(), received.get(1));
+	}
+
+	@Test
+	public void testConsumerFailureSkipped() throws IOException {
+		ByteBuffer frames = QuoteCodec.allocate(1024);
+		QuoteCodec.encodeQuote(frames, createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1));
+		QuoteCodec.encodeQuote(frames, createTestUpdate(Markets.MARKET1, Instruments.EURUSD, 1.2));
+		QuoteCodec.encodeQuote(frames, createTestUpdate(Markets.MARKET0, Instruments.EURUSD, 1.3));
+		frames.flip();
+
+		List<String> received = new ArrayList<>();
+		TcpFeedHandler handler = new TcpFeedHandler(update -> {
+			if(update.getMarketId() == 1) {
+				throw new IllegalStateException("consumer failed");
+			}
+			received.add(update.toString());
+		}, UNUSED);
+		assertEquals(2, handler.decode(frames, 42));
+		assertEquals(0, frames.remaining());
+		assertEquals(1, handler.getRejected());
+		assertEquals(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1).toString(), received.get(0));
+		assertEquals(createTestUpdate(Markets.MARKET0, Instruments.EURUSD, 1.3).toString(), received.get(1));
+	}
+
+	@Test(expected=IOException.class)
+	public void testFrameLongerThanBufferRejected() throws IOException {
+		ByteBuffer frames = QuoteCodec.allocate(64);
+		frames.putInt(1 << 20).flip();
+		new TcpFeedHandler(update -> {}, UNUSED).decode(frames, 0);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testBufferTooSmallRejected() {
+		new TcpFeedHandler(update -> {}, UNUSED, 16, TcpFeedHandler.DEFAULT_RECONNECT_NANOS);
+	}
+
+	@Test
+	public void testReadsFeedAndReconnects() throws Exception {
+		StubFeedServer server;
+		try {
+			server = new StubFeedServer();
+		} catch(IOException ex) {
+			assumeNoException(ex);
+			return;
+		}
+
+		List<String> received = Collections.synchronizedList(new ArrayList<>());
+		TcpFeedHandler handler = new TcpFeedHandler(update -> received.add(update.toString()), server.getAddress(),
+													TcpFeedHandler.DEFAULT_BUFFER_SIZE, TimeUnit.MILLISECONDS.toNanos(10));
+		try {
+			executor.submit(handler::run);
+			List<String> expected = new ArrayList<>();
+
+			server.accept();
+			server.send(frames(0, 50, expected), 7);
+			awaitSize(received, 50);
+			//lost connection - the handler comes back and carries on
+			server.disconnect();
+			server.accept();
+			server.send(frames(50, 100, expected), 1000);
+			awaitSize(received, 100);
+
+			assertEquals(expected, received);
+			assertEquals(2, handler.getConnections());
+			assertEquals(100, handler.getQuotes());
+		} finally {
+			handler.stop();
+			server.close();
+		}
+	}
+
+	private static ByteBuffer frames(int from, int to, List<String> expected) {
+		ByteBuffer frames = QuoteCodec.allocate((to - from) * (QuoteCodec.LENGTH_SIZE + QuoteCodec.QUOTE_SIZE));
+		for(int i = from; i < to; i++) {
+			MarketUpdate update = createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1 + i / 100.0);
+			QuoteCodec.encodeQuote(frames, update);
+			expected.add(update.toString());
+		}
+		frames.flip();
+		return frames;
+	}
+
+	private static void awaitSize(List<String> received, int size) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while(received.size() < size && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(5);
+		}
+		assertTrue("received " + received.size() + " of " + size, received.size() >= size);
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+		ByteBuffer slice = buffer.duplicate();
+		slice.limit(to).position(from);
+		return slice;
+	}
+
+	private static MarketUpdate createTestUpdate(Markets market, Instruments ins, double bidPrice) {
+		return new DefaultMarketUpdate().set(market, ins, Side.BID, bidPrice, 100.0, bidPrice + 0.1, 200.0);
+	}
+}
@@ -0,0 +1,122 @@
+package com.mywork.markets.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.Instruments;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.Side;
+
+public class TestSharedMemory {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReadsWhatIsPublished() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("ring");
+		SharedMemoryPublisher publisher = new SharedMemoryPublisher(file, 16);
+		SharedMemoryReader reader = new SharedMemoryReader(file);
+		DefaultMarketUpdate read = new DefaultMarketUpdate();
+		assertFalse(reader.read(read));
+
+		for(int i = 0; i < 10; i++) {
+			publisher.accept(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1 + i / 100.0, i));
+		}
+		for(int i = 0; i < 10; i++) {
+			assertTrue(reader.read(read));
+			assertEquals(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1 + i / 100.0, i).toString(), read.toString());
+			assertEquals(i, read.getIngressNanos());
+		}
+		assertFalse(reader.read(read));
+		assertEquals(10, reader.getSequence());
+		assertEquals(0, reader.getLost());
+	}
+
+	@Test
+	public void testLappedReaderSkipsAhead() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("ring");
+		SharedMemoryPublisher publisher = new SharedMemoryPublisher(file, 8);
+		SharedMemoryReader reader = new SharedMemoryReader(file);
+		for(int i = 0; i < 20; i++) {
+			publisher.accept(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1 + i / 100.0, i));
+		}
+
+		DefaultMarketUpdate read = new DefaultMarketUpdate();
+		assertTrue(reader.read(read));
+		assertEquals(12, reader.getLost());
+		assertEquals(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.12, 12).toString(), read.toString());
+		int count = 1;
+		while(reader.read(read)) {
+			count++;
+		}
+		assertEquals(8, count);
+		assertEquals(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.19, 19).toString(), read.toString());
+	}
+
+	@Test
+	public void testReopenedRingCarriesOn() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("ring");
+		SharedMemoryPublisher publisher = new SharedMemoryPublisher(file, 16);
+		publisher.accept(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 0));
+		SharedMemoryReader reader = new SharedMemoryReader(file);
+
+		SharedMemoryPublisher reopened = new SharedMemoryPublisher(file, 16);
+		assertEquals(1, reopened.getSequence());
+		reopened.accept(createTestUpdate(Markets.MARKET1, Instruments.EURUSD, 1.2, 1));
+		DefaultMarketUpdate read = new DefaultMarketUpdate();
+		assertTrue(reader.read(read));
+		assertEquals(createTestUpdate(Markets.MARKET1, Instruments.EURUSD, 1.2, 1).toString(), read.toString());
+		assertEquals(2, reader.getSequence());
+	}
+
+	@Test(expected=IOException.class)
+	public void testOtherCapacityRejected() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("ring");
+		new SharedMemoryPublisher(file, 16);
+		new SharedMemoryPublisher(file, 32);
+	}
+
+	@Test
+	public void testProviderDeliversToSubscribers() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("ring");
+		SharedMemoryPublisher publisher = new SharedMemoryPublisher(file, 1024);
+		SharedMemoryProvider provider = new SharedMemoryProvider(file);
+
+		CountDownLatch received = new CountDownLatch(100);
+		Function<MarketUpdate, MarketUpdate> subscriber = update -> {
+			received.countDown();
+			return update;
+		};
+		provider.subscribe(Instruments.EURUSD, Markets.MARKET1, subscriber);
+		provider.start();
+		try {
+			//a quarter of the updates are subscribed to
+			for(int i = 0; i < 400; i++) {
+				publisher.accept(createTestUpdate(i % 4 == 0 ? Markets.MARKET1 : Markets.MARKET0, Instruments.EURUSD, 1.1, i));
+			}
+			assertTrue(received.await(5, TimeUnit.SECONDS));
+		} finally {
+			provider.stop();
+		}
+	}
+
+	private static MarketUpdate createTestUpdate(Markets market, Instruments ins, double bidPrice, long ingressNanos) {
+		DefaultMarketUpdate update = new DefaultMarketUpdate().set(market, ins, Side.BID, bidPrice, 100.0, bidPrice + 0.1, 200.0);
+		update.setIngressNanos(ingressNanos);
+		return update;
+	}
+}
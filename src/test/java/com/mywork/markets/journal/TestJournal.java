@@ -0,0 +1,155 @@
+package com.mywork.markets.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.Instruments;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.Side;
+
+public class TestJournal {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path directory;
+
+	private long now;
+
+	@Before
+	public void setup() throws IOException {
+		directory = folder.newFolder("journal").toPath();
+	}
+
+	@Test
+	public void testWriteAndReadAcrossSegments() throws IOException {
+		try(JournalWriter writer = new JournalWriter(directory, 4, () -> now)) {
+			write(writer, 10);
+			assertEquals(10, writer.getSequence());
+		}
+		assertEquals(3, Journal.segments(directory).size());
+
+		JournalReader reader = new JournalReader(directory);
+		DefaultMarketUpdate update = new DefaultMarketUpdate();
+		for(int i = 1; i <= 10; i++) {
+			assertTrue(reader.read(update));
+			assertEquals(i, reader.getSequence());
+			assertEquals(i * 1000L, reader.getTimestamp());
+			assertEquals(i, update.getTick().getBidPrice(), 0.0);
+			assertEquals(Instruments.getInstrumentById(i % Instruments.SIZE), update.getTick().getInstrument());
+			assertEquals(Markets.MARKET1, update.getMarket());
+			assertEquals(Side.OFFER, update.getTick().getSide());
+		}
+		assertFalse(reader.read(update));
+	}
+
+	@Test
+	public void testReadFromSequence() throws IOException {
+		try(JournalWriter writer = new JournalWriter(directory, 4, () -> now)) {
+			write(writer, 10);
+		}
+
+		JournalReader reader = new JournalReader(directory, 6);
+		DefaultMarketUpdate update = new DefaultMarketUpdate();
+		assertTrue(reader.read(update));
+		assertEquals(6, reader.getSequence());
+		assertEquals(6.0, update.getTick().getBidPrice(), 0.0);
+	}
+
+	@Test
+	public void testReopenAppends() throws IOException {
+		try(JournalWriter writer = new JournalWriter(directory, 4, () -> now)) {
+			write(writer, 6);
+		}
+		try(JournalWriter writer = new JournalWriter(directory, 4, () -> now)) {
+			assertEquals(6, writer.getSequence());
+			write(writer, 2);
+			assertEquals(8, writer.getSequence());
+		}
+
+		JournalReader reader = new JournalReader(directory, 7);
+		DefaultMarketUpdate update = new DefaultMarketUpdate();
+		assertTrue(reader.read(update));
+		assertEquals(7, reader.getSequence());
+		assertTrue(reader.read(update));
+		assertFalse(reader.read(update));
+	}
+
+	@Test
+	public void testReplayAtFullSpeed() throws IOException {
+		try(JournalWriter writer = new JournalWriter(directory, 4, () -> now)) {
+			write(writer, 10);
+		}
+
+		List<Double> replayed = new ArrayList<>();
+		new JournalUpdatesProvider(update -> replayed.add(update.getTick().getBidPrice()),
+									directory, JournalUpdatesProvider.Pacing.FULL_SPEED).run();
+
+		assertEquals(10, replayed.size());
+		assertEquals(10.0, replayed.get(9), 0.0);
+	}
+
+	@Test
+	public void testReplayAtRecordedPace() throws IOException {
+		try(JournalWriter writer = new JournalWriter(directory, 4, () -> now)) {
+			write(writer, 2);
+			//50ms after the last update
+			now += 50_000_000;
+			write(writer, 1);
+		}
+
+		long start = System.nanoTime();
+		new JournalUpdatesProvider(update -> {}, directory, JournalUpdatesProvider.Pacing.RECORDED).run();
+
+		assertTrue(System.nanoTime() - start >= 50_000_000);
+	}
+
+	@Test
+	public void testSidelessTickRoundTrips() throws IOException {
+		try(JournalWriter writer = new JournalWriter(directory, 4, () -> now)) {
+			DefaultMarketUpdate update = new DefaultMarketUpdate();
+			update.setMarketId(Markets.MARKET2.ordinal());
+			update.getTick().setScaled(Instruments.EURUSD.ordinal(), null, 0, 0, 12_500_000, 300_000_000);
+			writer.accept(update);
+		}
+
+		JournalReader reader = new JournalReader(directory);
+		DefaultMarketUpdate update = new DefaultMarketUpdate();
+		assertTrue(reader.read(update));
+		assertNull(update.getTick().getSide());
+		assertEquals(Markets.MARKET2, update.getMarket());
+		assertEquals(Instruments.EURUSD, update.getTick().getInstrument());
+		assertEquals(12_500_000, update.getTick().getScaledOfferPrice());
+		assertEquals(300_000_000, update.getTick().getScaledOfferAmount());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testSegmentTooLarge() throws IOException {
+		new JournalWriter(directory, Integer.MAX_VALUE, () -> now);
+	}
+
+	private void write(JournalWriter writer, int count) {
+		DefaultMarketUpdate update = new DefaultMarketUpdate();
+		for(int i = 0; i < count; i++) {
+			long sequence = writer.getSequence() + 1;
+			now += 1000;
+			MarketUpdate next = update.set(Markets.MARKET1, Instruments.getInstrumentById((int)(sequence % Instruments.SIZE)),
+											Side.OFFER, sequence, 100.0, sequence + 0.5, 200.0);
+			writer.accept(next);
+		}
+	}
+}
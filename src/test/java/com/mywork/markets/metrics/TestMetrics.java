@@ -0,0 +1,146 @@
+package com.mywork.markets.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Test;
+
+import com.mywork.markets.Instruments;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.providers.MultiThreadProvider;
+import com.mywork.markets.providers.SubscriberConfig;
+import com.mywork.markets.utils.UpdatesProvider;
+
+public class TestMetrics {
+
+	@Test
+	public void testRecorderSnapshotsAccumulate() {
+		LatencyRecorder recorder = new LatencyRecorder();
+		recorder.record(1_000);
+		recorder.record(2_000);
+		assertEquals(2, recorder.snapshot().getCount());
+
+		recorder.record(3_000);
+		LatencySnapshot snapshot = recorder.snapshot();
+		assertEquals(3, snapshot.getCount());
+		assertEquals(3_000, snapshot.getMax(), 3_000 / 1000);
+		assertEquals(2_000, snapshot.getP50(), 2_000 / 1000);
+	}
+
+	@Test
+	public void testRecordSinceSkipsUnstamped() {
+		LatencyRecorder recorder = new LatencyRecorder();
+		recorder.recordSince(0);
+		recorder.recordSince(System.nanoTime());
+		assertEquals(1, recorder.snapshot().getCount());
+	}
+
+	@Test
+	public void testGauge() {
+		Metrics metrics = new Metrics();
+		AtomicLong depth = new AtomicLong(5);
+		metrics.gauge("queue.depth", depth::get);
+		assertEquals(Long.valueOf(5), metrics.getGauges().get("queue.depth"));
+
+		depth.set(7);
+		assertEquals(Long.valueOf(7), metrics.getGauges().get("queue.depth"));
+
+		metrics.remove("queue.depth");
+		assertTrue(metrics.getGauges().isEmpty());
+	}
+
+	@Test
+	public void testRegisteredOverJmx() throws Exception {
+		Metrics metrics = new Metrics();
+		metrics.latency("stage").record(1_000);
+		metrics.gauge("depth", () -> 3);
+
+		ObjectName name = metrics.register("test-" + System.nanoTime());
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			TabularData latencies = (TabularData)server.getAttribute(name, "Latencies");
+			CompositeData stage = (CompositeData)latencies.get(new Object[] {"stage"}).get("value");
+			assertEquals(1L, stage.get("count"));
+
+			TabularData gauges = (TabularData)server.getAttribute(name, "Gauges");
+			assertEquals(3L, gauges.get(new Object[] {"depth"}).get("value"));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+
+	@Test
+	public void testProviderRecordsPerSubscriber() throws Exception {
+		Metrics metrics = new Metrics();
+		CountDownLatch latch = new CountDownLatch(1);
+		MultiThreadProvider provider = new MultiThreadProvider(MultiThreadProvider.Topology.PER_SUBSCRIBER,
+												SubscriberConfig.DEFAULT, UpdatesProvider::new, update -> {}, metrics);
+		provider.subscribe(Instruments.GBPUSD, Markets.MARKET0, (MarketUpdate update) -> {
+								latch.countDown();
+								return update;
+							}, SubscriberConfig.DEFAULT.withName("vwap"));
+		provider.start();
+		try {
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			//recorded once the function returns
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while(metrics.getLatencies().get("vwap.latency").getCount() == 0 && System.nanoTime() < deadline) {
+				TimeUnit.MILLISECONDS.sleep(1);
+			}
+
+			Map<String, LatencySnapshot> latencies = metrics.getLatencies();
+			assertTrue(latencies.get("vwap.latency").getCount() > 0);
+			assertTrue(latencies.get(provider.getMetricsName() + ".fanout").getCount() > 0);
+			assertTrue(metrics.getGauges().containsKey("vwap.depth"));
+		} finally {
+			provider.stop();
+		}
+		//removed when the provider stops
+		assertTrue(metrics.getLatencies().isEmpty());
+		assertTrue(metrics.getGauges().isEmpty());
+	}
+
+	@Test
+	public void testProvidersDoNotShareNames() throws Exception {
+		Metrics metrics = new Metrics();
+		MultiThreadProvider first = new MultiThreadProvider(MultiThreadProvider.Topology.PER_SUBSCRIBER,
+												SubscriberConfig.DEFAULT, UpdatesProvider::new, update -> {}, metrics);
+		MultiThreadProvider second = new MultiThreadProvider(MultiThreadProvider.Topology.PER_SUBSCRIBER,
+												SubscriberConfig.DEFAULT, UpdatesProvider::new, update -> {}, metrics);
+		Function<MarketUpdate, MarketUpdate> subscriber = update -> update;
+		try {
+			first.subscribe(Instruments.GBPUSD, Markets.MARKET0, subscriber);
+			second.subscribe(Instruments.GBPUSD, Markets.MARKET0, subscriber);
+			assertEquals(2, metrics.getGauges().keySet().stream().filter(name -> name.endsWith(".depth")).count());
+			
+			//gone with the subscriber's last subscription
+			first.unsubscribe(Instruments.GBPUSD, Markets.MARKET0, subscriber);
+			assertEquals(1, metrics.getGauges().keySet().stream().filter(name -> name.endsWith(".depth")).count());
+			assertTrue(metrics.getGauges().containsKey(second.getMetricsName() + ".subscriber-0.depth"));
+		} finally {
+			first.stop();
+			second.stop();
+		}
+	}
+	
+	@Test
+	public void testUniqueName() {
+		Metrics metrics = new Metrics();
+		assertEquals("provider-0", metrics.uniqueName("provider"));
+		assertEquals("provider-1", metrics.uniqueName("provider"));
+		assertEquals("book-0", metrics.uniqueName("book"));
+	}
+}
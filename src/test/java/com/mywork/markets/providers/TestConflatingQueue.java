@@ -0,0 +1,208 @@
+package com.mywork.markets.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.Instruments;
+import com.mywork.markets.Listings;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.Side;
+import com.mywork.markets.SymbolRegistry;
+
+public class TestConflatingQueue {
+
+	private ConflatingQueue queue;
+	
+	//copies, as the queue reuses the update it delivers
+	private List<MarketUpdate> delivered;
+	
+	@Before
+	public void setup() {
+		delivered = new ArrayList<>();
+		queue = new ConflatingQueue(update -> {
+			DefaultMarketUpdate copy = new DefaultMarketUpdate();
+			copy.setMarketId(update.getMarketId());
+			copy.setTick(update.getTick());
+			delivered.add(copy);
+			return update;
+		}, WaitStrategies.BLOCKING);
+	}
+	
+	@Test
+	public void testOnlyLatestDelivered() {
+		queue.offer(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1));
+		queue.offer(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.2));
+		queue.offer(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.3));
+		
+		assertEquals(1, queue.drain());
+		assertEquals(1.3, delivered.get(0).getTick().getBidPrice(), 0.0);
+		assertEquals(Instruments.GBPUSD, delivered.get(0).getTick().getInstrument());
+		assertEquals(Markets.MARKET0, delivered.get(0).getMarket());
+	}
+
+	@Test
+	public void testKeysConflatedSeparately() {
+		queue.offer(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1));
+		queue.offer(createTestUpdate(Markets.MARKET3, Instruments.USDJPY, 110.0));
+		queue.offer(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.2));
+		
+		assertEquals(2, queue.drain());
+		assertEquals(1.2, delivered.get(0).getTick().getBidPrice(), 0.0);
+		assertEquals(110.0, delivered.get(1).getTick().getBidPrice(), 0.0);
+		assertEquals(Markets.MARKET3, delivered.get(1).getMarket());
+	}
+
+	@Test
+	public void testSidelessTick() {
+		DefaultMarketUpdate update = new DefaultMarketUpdate();
+		update.setMarketId(Markets.MARKET1.ordinal());
+		update.getTick().setScaled(Instruments.GBPUSD.ordinal(), null, 0, 0, 12_500_000, 300_000_000);
+		queue.offer(update);
+		
+		assertEquals(1, queue.drain());
+		assertNull(delivered.get(0).getTick().getSide());
+		assertEquals(12_500_000, delivered.get(0).getTick().getScaledOfferPrice());
+		assertEquals(Markets.MARKET1, delivered.get(0).getMarket());
+	}
+
+	@Test
+	public void testGrowsForRuntimeSymbols() {
+		int instrumentId = SymbolRegistry.INSTRUMENTS.intern("TEST.CONFLATING");
+		int marketId = SymbolRegistry.MARKETS.intern("TEST.CONFLATING.VENUE");
+		//given a key on subscribe
+		Listings.key(instrumentId, marketId);
+		
+		queue.offer(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1));
+		queue.offer(new DefaultMarketUpdate().set(marketId, instrumentId, Side.BID, 2.1, 100.0, 2.2, 100.0));
+		
+		assertEquals(2, queue.drain());
+		assertEquals(1.1, delivered.get(0).getTick().getBidPrice(), 0.0);
+		assertEquals(2.1, delivered.get(1).getTick().getBidPrice(), 0.0);
+		assertEquals(instrumentId, delivered.get(1).getTick().getInstrumentId());
+		assertEquals(marketId, delivered.get(1).getMarketId());
+	}
+
+	@Test
+	public void testUnsubscribedDropped() {
+		int instrumentId = SymbolRegistry.INSTRUMENTS.intern("TEST.CONFLATING.UNSUBSCRIBED");
+		int keys = Listings.size();
+		MarketUpdate update = new DefaultMarketUpdate().set(Markets.MARKET0.ordinal(), instrumentId, Side.BID, 
+															2.1, 100.0, 2.2, 100.0);
+		
+		assertFalse(queue.isPending(update));
+		queue.offer(update);
+		
+		assertFalse(queue.isPending(update));
+		assertEquals(0, queue.drain());
+		assertEquals(keys, Listings.size());
+		assertEquals(-1, Listings.find(instrumentId, Markets.MARKET0.ordinal()));
+	}
+
+	@Test
+	public void testConcurrentWriters() throws InterruptedException {
+		int instrumentId = SymbolRegistry.INSTRUMENTS.intern("TEST.CONFLATING.WRITERS");
+		Listings.key(instrumentId, 0);
+		Listings.key(instrumentId, 1);
+		
+		//both threads grow the queue for the runtime instrument while the other writes
+		Thread[] writers = new Thread[2];
+		for(int w = 0; w < writers.length; w++) {
+			final int marketId = w;
+			writers[w] = new Thread(() -> {
+				DefaultMarketUpdate update = new DefaultMarketUpdate();
+				for(int i = 1; i <= 10_000; i++) {
+					queue.offer(update.set(marketId, Instruments.GBPUSD.ordinal(), Side.BID, i, 100.0, i, 100.0));
+					queue.offer(update.set(marketId, instrumentId, Side.BID, i, 100.0, i, 100.0));
+				}
+			});
+			writers[w].start();
+		}
+		for(Thread writer : writers) {
+			writer.join();
+		}
+		
+		assertEquals(4, queue.drain());
+		for(MarketUpdate update : delivered) {
+			assertEquals(10_000.0, update.getTick().getBidPrice(), 0.0);
+			assertEquals(10_000.0, update.getTick().getOfferPrice(), 0.0);
+		}
+	}
+
+	@Test
+	public void testLatestKeptWhileGrowing() throws Exception {
+		int instrumentId = SymbolRegistry.INSTRUMENTS.intern("TEST.CONFLATING.GROW");
+		final int updates = 2_000;
+		//keys far past the enum pairs, so growing copies thousands of slots after the ones being written
+		for(int m = 0; m < 4096; m++) {
+			Listings.key(instrumentId, m);
+		}
+		
+		//a fresh queue each round, grown by one writer while the others write to the slots being copied
+		for(int round = 0; round < 200; round++) {
+			ConflatingQueue queue = new ConflatingQueue(update -> {
+				DefaultMarketUpdate copy = new DefaultMarketUpdate();
+				copy.setMarketId(update.getMarketId());
+				copy.setTick(update.getTick());
+				delivered.add(copy);
+				return update;
+			}, WaitStrategies.BLOCKING);
+			queue.offer(new DefaultMarketUpdate().set(2047, instrumentId, Side.BID, 1.0, 100.0, 1.0, 100.0));
+			delivered.clear();
+			
+			CyclicBarrier start = new CyclicBarrier(4);
+			Thread[] writers = new Thread[4];
+			for(int w = 0; w < writers.length; w++) {
+				final int marketId = w;
+				writers[w] = new Thread(() -> {
+					DefaultMarketUpdate update = new DefaultMarketUpdate();
+					try {
+						start.await();
+					} catch (InterruptedException | BrokenBarrierException e) {
+						return;
+					}
+					for(int i = 1; i <= updates; i++) {
+						if(marketId == 0 && i == updates / 2) {
+							queue.offer(update.set(4095, instrumentId, Side.BID, i, 100.0, i, 100.0));
+						}
+						queue.offer(update.set(marketId, Instruments.GBPUSD.ordinal(), Side.BID, i, 100.0, i, 100.0));
+					}
+				});
+				writers[w].start();
+			}
+			for(Thread writer : writers) {
+				writer.join();
+			}
+			
+			assertEquals(6, queue.drain());
+			for(MarketUpdate update : delivered) {
+				if(update.getTick().getInstrumentId() == Instruments.GBPUSD.ordinal()) {
+					assertEquals("round " + round, updates, update.getTick().getBidPrice(), 0.0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testNothingToDrain() {
+		assertEquals(0, queue.drain());
+		
+		queue.offer(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1));
+		assertEquals(1, queue.drain());
+		assertEquals(0, queue.drain());
+	}
+	
+	private MarketUpdate createTestUpdate(Markets market, Instruments ins, double bidPrice) {
+		return new DefaultMarketUpdate().set(market, ins, Side.BID, bidPrice, 100.0, bidPrice + 0.1, 200.0);
+	}
+}
@@ -0,0 +1,473 @@
+package com.mywork.markets.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.lmax.disruptor.util.DaemonThreadFactory;
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.Instruments;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.Side;
+import com.mywork.markets.metrics.Metrics;
+import com.mywork.markets.utils.UpdatesProvider;
+
+public class TestMultiThreadProvider {
+
+	private MultiThreadProvider provider;
+	
+	@After
+	public void tearDown() {
+		if(null != provider) {
+			provider.stop();
+		}
+	}
+	
+	@Test
+	public void testPerSubscriberDelivery() throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.PER_SUBSCRIBER, SubscriberConfig.DEFAULT);
+		checkDelivery();
+	}
+
+	@Test
+	public void testSharedDelivery() throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.SHARED, SubscriberConfig.DEFAULT);
+		checkDelivery();
+	}
+
+	@Test
+	public void testSubscriberConfig() throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.PER_SUBSCRIBER, SubscriberConfig.DEFAULT);
+		
+		SubscriberConfig config = SubscriberConfig.DEFAULT.withRingSize(16).withWaitStrategy(WaitStrategies.YIELDING);
+		CountDownLatch latch = new CountDownLatch(100);
+		provider.subscribe(Instruments.GBPUSD, Markets.MARKET0, (MarketUpdate update) -> {
+			latch.countDown();
+			return update;
+		}, config);
+		
+		//more updates than the ring holds
+		for(int i = 0; i < 100; i++) {
+			provider.accept(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD));
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * a stuck conflated subscriber should not hold up the feed, 
+	 * and should get the latest update once it is free again
+	 */
+	@Test
+	public void testConflatedSubscriberDoesNotBlockFeed() throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.PER_SUBSCRIBER, SubscriberConfig.DEFAULT);
+		
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicReference<Double> lastPrice = new AtomicReference<>();
+		provider.subscribe(Instruments.GBPUSD, Markets.MARKET0, (MarketUpdate update) -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			lastPrice.set(update.getTick().getBidPrice());
+			return update;
+		}, SubscriberConfig.DEFAULT.withRingSize(16).withDelivery(SubscriberConfig.Delivery.CONFLATED));
+		
+		//would block on a 16 slot ring
+		for(int i = 1; i <= 10_000; i++) {
+			provider.accept(new DefaultMarketUpdate().set(Markets.MARKET0, Instruments.GBPUSD, Side.BID, i, 100.0, i, 200.0));
+		}
+		release.countDown();
+		
+		long deadline = System.currentTimeMillis() + 5_000;
+		while(!Double.valueOf(10_000).equals(lastPrice.get()) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(Double.valueOf(10_000), lastPrice.get());
+	}
+
+	@Test(expected=SubscriptionException.class)
+	public void testSharedDoesNotConflate() throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.SHARED, SubscriberConfig.DEFAULT);
+		provider.subscribe(Instruments.GBPUSD, Markets.MARKET0, (MarketUpdate update) -> update, 
+				SubscriberConfig.DEFAULT.withDelivery(SubscriberConfig.Delivery.CONFLATED));
+	}
+
+	/**
+	 * an unknown id is rejected before the subscriber's thread is started
+	 */
+	@Test
+	public void testUnknownIdStartsNoThread() throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.PER_SUBSCRIBER, SubscriberConfig.DEFAULT);
+		
+		AtomicInteger threads = new AtomicInteger();
+		SubscriberConfig config = SubscriberConfig.DEFAULT.withThreadFactory(runnable -> {
+			threads.incrementAndGet();
+			return DaemonThreadFactory.INSTANCE.newThread(runnable);
+		});
+		try {
+			provider.subscribe(Integer.MAX_VALUE, Markets.MARKET0.ordinal(), (MarketUpdate update) -> update, config);
+			fail("subscribed an unknown instrument id");
+		} catch(SubscriptionException e) {
+			assertEquals(0, threads.get());
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testRingSizeMustBePowerOfTwo() {
+		SubscriberConfig.DEFAULT.withRingSize(1000);
+	}
+
+	@Test
+	public void testSharedUnsubscribe() throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.SHARED, SubscriberConfig.DEFAULT);
+		
+		AtomicInteger gbpUpdates = new AtomicInteger();
+		CountDownLatch eurLatch = new CountDownLatch(1);
+		Function<MarketUpdate, MarketUpdate> subscriber = update -> {
+			if(update.getTick().getInstrument() == Instruments.GBPUSD) {
+				gbpUpdates.incrementAndGet();
+			} else {
+				eurLatch.countDown();
+			}
+			return update;
+		};
+		provider.subscribe(Instruments.GBPUSD, Markets.MARKET0, subscriber);
+		provider.subscribe(Instruments.EURUSD, Markets.MARKET0, subscriber);
+		provider.unsubscribe(Instruments.GBPUSD, Markets.MARKET0, subscriber);
+		
+		provider.accept(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD));
+		provider.accept(createTestUpdate(Markets.MARKET0, Instruments.EURUSD));
+		
+		//updates are delivered in order, so GBPUSD would have been seen before EURUSD
+		assertTrue(eurLatch.await(5, TimeUnit.SECONDS));
+		assertEquals(0, gbpUpdates.get());
+	}
+	
+	@Test
+	public void testMultiProducerSources() throws Exception {
+		checkSources(MultiThreadProvider.Ingestion.MULTI_PRODUCER, MultiThreadProvider.Topology.PER_SUBSCRIBER);
+		provider.stop();
+		checkSources(MultiThreadProvider.Ingestion.MULTI_PRODUCER, MultiThreadProvider.Topology.SHARED);
+	}
+
+	@Test
+	public void testMergedSources() throws Exception {
+		checkSources(MultiThreadProvider.Ingestion.MERGED, MultiThreadProvider.Topology.PER_SUBSCRIBER);
+		provider.stop();
+		checkSources(MultiThreadProvider.Ingestion.MERGED, MultiThreadProvider.Topology.SHARED);
+	}
+
+	/**
+	 * a source per market, each on its own thread - every update reaches the subscriber, 
+	 * and each source's updates in the order sent
+	 */
+	private void checkSources(MultiThreadProvider.Ingestion ingestion, MultiThreadProvider.Topology topology) throws Exception {
+		
+		final int updates = 10_000;
+		List<Function<Consumer<MarketUpdate>, UpdatesProvider>> sources = new ArrayList<>();
+		for(int s = 0; s < 3; s++) {
+			final Markets market = Markets.getMarketById(s);
+			sources.add(consumer -> new UpdatesProvider(consumer) {
+				@Override
+				public void run() {
+					DefaultMarketUpdate update = new DefaultMarketUpdate();
+					for(int i = 1; i <= updates; i++) {
+						consumer.accept(update.set(market, Instruments.GBPUSD, Side.BID, i, 100.0, i, 100.0));
+					}
+				}
+			});
+		}
+		provider = new MultiThreadProvider(topology, SubscriberConfig.DEFAULT, ingestion, sources, update -> {}, new Metrics());
+		
+		CountDownLatch latch = new CountDownLatch(3 * updates);
+		AtomicInteger outOfOrder = new AtomicInteger();
+		double[] last = new double[3];
+		for(int s = 0; s < 3; s++) {
+			provider.subscribe(Instruments.GBPUSD, Markets.getMarketById(s), (MarketUpdate update) -> {
+				if(update.getTick().getBidPrice() != last[update.getMarketId()] + 1) {
+					outOfOrder.incrementAndGet();
+				}
+				last[update.getMarketId()] = update.getTick().getBidPrice();
+				latch.countDown();
+				return update;
+			});
+		}
+		provider.start();
+		
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(0, outOfOrder.get());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testSourcesRequired() {
+		new MultiThreadProvider(MultiThreadProvider.Topology.PER_SUBSCRIBER, SubscriberConfig.DEFAULT, 
+								MultiThreadProvider.Ingestion.MERGED, new ArrayList<>(), update -> {}, new Metrics());
+	}
+
+	@Test
+	public void testDropNewest() throws Exception {
+		Metrics metrics = new Metrics();
+		List<Double> prices = checkOverflow(SubscriberConfig.Overflow.DROP_NEWEST, metrics);
+		
+		assertEquals(20, prices.size() + metrics.getGauges().get("slow.dropped"));
+		assertTrue(metrics.getGauges().get("slow.dropped") > 0);
+		assertInOrder(prices);
+	}
+
+	@Test
+	public void testDropOldest() throws Exception {
+		Metrics metrics = new Metrics();
+		List<Double> prices = checkOverflow(SubscriberConfig.Overflow.DROP_OLDEST, metrics);
+		
+		await(() -> prices.size() > 0 && prices.get(prices.size() - 1) == 20.0);
+		assertEquals(20, prices.size() + metrics.getGauges().get("slow.dropped"));
+		assertTrue(metrics.getGauges().get("slow.late") > 0);
+		assertInOrder(prices);
+	}
+
+	@Test
+	public void testConflateOnOverflow() throws Exception {
+		Metrics metrics = new Metrics();
+		List<Double> prices = checkOverflow(SubscriberConfig.Overflow.CONFLATE, metrics);
+		
+		//the latest update always gets through
+		await(() -> prices.size() > 0 && prices.get(prices.size() - 1) == 20.0);
+		assertTrue(metrics.getGauges().get("slow.late") > 0);
+		assertEquals(20, prices.size() + metrics.getGauges().get("slow.dropped"));
+		assertInOrder(prices);
+	}
+
+	@Test
+	public void testDisconnectOnOverflow() throws Exception {
+		Metrics metrics = new Metrics();
+		List<Double> prices = checkOverflow(SubscriberConfig.Overflow.DISCONNECT, metrics);
+		
+		assertTrue(metrics.getGauges().get("slow.dropped") > 0);
+		assertTrue(prices.size() < 20);
+	}
+
+	@Test(expected=SubscriptionException.class)
+	public void testSharedOnlyBlocks() throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.SHARED, SubscriberConfig.DEFAULT);
+		provider.subscribe(Instruments.GBPUSD, Markets.MARKET0, (MarketUpdate update) -> update,
+							SubscriberConfig.DEFAULT.withOverflow(SubscriberConfig.Overflow.DROP_NEWEST));
+	}
+
+	/**
+	 * 20 updates to a subscriber with a ring of 4 that holds on to its first update until all 20
+	 * have been sent - the feed must not wait on it
+	 * @return the bid prices delivered once the subscriber has caught up
+	 */
+	private List<Double> checkOverflow(SubscriberConfig.Overflow overflow, Metrics metrics) throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.PER_SUBSCRIBER, SubscriberConfig.DEFAULT,
+											UpdatesProvider::new, update -> {}, metrics);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Double> prices = new CopyOnWriteArrayList<>();
+		provider.subscribe(Instruments.GBPUSD, Markets.MARKET0, (MarketUpdate update) -> {
+								try {
+									release.await();
+								} catch (InterruptedException e) {
+									Thread.currentThread().interrupt();
+								}
+								prices.add(update.getTick().getBidPrice());
+								return update;
+							}, 
+							SubscriberConfig.DEFAULT.withRingSize(4).withOverflow(overflow).withName("slow"));
+		
+		ScheduledExecutorService releaser = Executors.newSingleThreadScheduledExecutor();
+		try {
+			//lets the subscriber go should the feed wait on it, so that the test fails rather than hangs
+			releaser.schedule(release::countDown, 5, TimeUnit.SECONDS);
+			DefaultMarketUpdate update = new DefaultMarketUpdate();
+			for(int i = 1; i <= 20; i++) {
+				provider.accept(update.set(Markets.MARKET0, Instruments.GBPUSD, Side.BID, i, 100.0, i, 100.0));
+			}
+			//the subscriber still holds its first update
+			assertEquals(1, release.getCount());
+		} finally {
+			release.countDown();
+			releaser.shutdownNow();
+		}
+		
+		//caught up once every update is delivered or dropped - a disconnected subscriber gets no more
+		await(() -> prices.size() + metrics.getGauges().get("slow.dropped") == 20
+					|| overflow == SubscriberConfig.Overflow.DISCONNECT && !prices.isEmpty());
+		return prices;
+	}
+	
+	private static void assertInOrder(List<Double> prices) {
+		for(int i = 1; i < prices.size(); i++) {
+			assertTrue(prices.get(i) > prices.get(i - 1));
+		}
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5_000;
+		while(!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void testBatchSubscriberSeesEndOfBatch() throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.SHARED, SubscriberConfig.DEFAULT);
+		checkEndOfBatch();
+	}
+
+	@Test
+	public void testConflatedBatchSubscriberSeesEndOfBatch() throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.PER_SUBSCRIBER, 
+											SubscriberConfig.DEFAULT.withDelivery(SubscriberConfig.Delivery.CONFLATED));
+		checkEndOfBatch();
+	}
+
+	/**
+	 * the last update seen by a batch subscriber always ends a batch, 
+	 * even when the shared ring's batch ends with an update for another subscriber
+	 */
+	private void checkEndOfBatch() throws Exception {
+		
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicInteger updates = new AtomicInteger();
+		provider.subscribe(Instruments.GBPUSD, Markets.MARKET0, new BatchSubscriber<MarketUpdate>() {
+			@Override
+			public MarketUpdate apply(MarketUpdate update) {
+				onUpdate(update, true);
+				return update;
+			}
+			@Override
+			public void onUpdate(MarketUpdate update, boolean endOfBatch) {
+				updates.incrementAndGet();
+				if(endOfBatch) {
+					latch.countDown();
+				}
+			}
+		});
+		provider.subscribe(Instruments.EURUSD, Markets.MARKET0, (MarketUpdate update) -> update);
+		
+		provider.accept(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD));
+		provider.accept(createTestUpdate(Markets.MARKET0, Instruments.EURUSD));
+		
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(1, updates.get());
+	}
+	
+	@Test
+	public void testWake() throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.PER_SUBSCRIBER, SubscriberConfig.DEFAULT);
+		checkWake();
+	}
+
+	@Test
+	public void testSharedWake() throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.SHARED, SubscriberConfig.DEFAULT);
+		checkWake();
+	}
+
+	@Test
+	public void testConflatedWake() throws Exception {
+		provider = new MultiThreadProvider(MultiThreadProvider.Topology.PER_SUBSCRIBER,
+											SubscriberConfig.DEFAULT.withDelivery(SubscriberConfig.Delivery.CONFLATED));
+		checkWake();
+	}
+
+	/**
+	 * a woken subscriber is called back on its own thread with no update waiting, and still gets updates afterwards
+	 */
+	private void checkWake() throws Exception {
+
+		AtomicInteger updates = new AtomicInteger();
+		AtomicInteger wakes = new AtomicInteger();
+		AtomicReference<Thread> updateThread = new AtomicReference<>();
+		AtomicReference<Thread> wakeThread = new AtomicReference<>();
+		BatchSubscriber<MarketUpdate> subscriber = new BatchSubscriber<MarketUpdate>() {
+			@Override
+			public MarketUpdate apply(MarketUpdate update) {
+				onUpdate(update, true);
+				return update;
+			}
+			@Override
+			public void onUpdate(MarketUpdate update, boolean endOfBatch) {
+				updateThread.set(Thread.currentThread());
+				updates.incrementAndGet();
+			}
+			@Override
+			public void onWake() {
+				wakeThread.set(Thread.currentThread());
+				wakes.incrementAndGet();
+			}
+		};
+		provider.subscribe(Instruments.GBPUSD, Markets.MARKET0, subscriber);
+
+		provider.accept(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD));
+		await(() -> updates.get() == 1);
+		provider.wake(subscriber);
+		await(() -> wakes.get() == 1);
+		assertEquals(1, wakes.get());
+		assertSame(updateThread.get(), wakeThread.get());
+
+		provider.accept(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD));
+		await(() -> updates.get() == 2);
+		assertEquals(2, updates.get());
+		provider.wake(subscriber);
+		await(() -> wakes.get() == 2);
+		assertEquals(2, wakes.get());
+	}
+
+	/**
+	 * two subscribers on different instruments, each should only see its own updates
+	 */
+	private void checkDelivery() throws Exception {
+		
+		CountDownLatch gbpLatch = new CountDownLatch(2);
+		CountDownLatch eurLatch = new CountDownLatch(1);
+		AtomicInteger wrongUpdates = new AtomicInteger();
+		
+		provider.subscribe(Instruments.GBPUSD, Markets.MARKET0, (MarketUpdate update) -> {
+			if(update.getTick().getInstrument() != Instruments.GBPUSD) {
+				wrongUpdates.incrementAndGet();
+			}
+			gbpLatch.countDown();
+			return update;
+		});
+		provider.subscribe(Instruments.EURUSD, Markets.MARKET1, (MarketUpdate update) -> {
+			if(update.getTick().getInstrument() != Instruments.EURUSD) {
+				wrongUpdates.incrementAndGet();
+			}
+			eurLatch.countDown();
+			return update;
+		});
+		
+		provider.accept(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD));
+		provider.accept(createTestUpdate(Markets.MARKET1, Instruments.EURUSD));
+		provider.accept(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD));
+		
+		assertTrue(gbpLatch.await(5, TimeUnit.SECONDS));
+		assertTrue(eurLatch.await(5, TimeUnit.SECONDS));
+		assertEquals(0, wrongUpdates.get());
+		assertEquals(1, provider.getNumberOfSubscribers(Instruments.GBPUSD, Markets.MARKET0));
+	}
+	
+	private MarketUpdate createTestUpdate(Markets market, Instruments ins) {
+		return new DefaultMarketUpdate().set(market, ins, Side.BID, 1.1, 100.0, 1.2, 200.0);
+	}
+}
@@ -0,0 +1,87 @@
+package com.mywork.markets.providers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mywork.markets.Instruments;
+import com.mywork.markets.Listings;
+import com.mywork.markets.Markets;
+import com.mywork.markets.SymbolRegistry;
+
+public class TestSubscriptionTable {
+
+	private SubscriptionTable<String> table;
+	
+	private int key;
+	
+	@Before
+	public void setup() {
+		table = new SubscriptionTable<>(String[]::new);
+		key = SubscriptionTable.key(Instruments.EURUSD, Markets.MARKET2);
+	}
+	
+	@Test
+	public void testEmpty() {
+		assertEquals(0, table.get(key).length);
+		assertEquals(0, table.size(Instruments.EURUSD, Markets.MARKET2));
+		assertFalse(table.remove(key, "a"));
+	}
+
+	@Test
+	public void testAddRemove() {
+		table.add(key, "a");
+		table.add(key, "b");
+		table.add(key, "c");
+		assertArrayEquals(new String[] {"a", "b", "c"}, table.get(Instruments.EURUSD, Markets.MARKET2));
+		
+		assertTrue(table.remove(key, "b"));
+		assertArrayEquals(new String[] {"a", "c"}, table.get(key));
+		assertEquals(0, table.size(Instruments.EURUSD, Markets.MARKET1));
+	}
+
+	@Test
+	public void testSnapshotNotChangedBySubscribe() {
+		table.add(key, "a");
+		String[] snapshot = table.get(key);
+		
+		table.add(key, "b");
+		table.remove(key, "a");
+		
+		assertArrayEquals(new String[] {"a"}, snapshot);
+		assertNotSame(snapshot, table.get(key));
+	}
+
+	@Test
+	public void testUnseenPairHasNoSubscribersAndNoKey() {
+		int instrumentId = SymbolRegistry.INSTRUMENTS.intern("TEST.SUBSCRIPTIONS.UNSEEN");
+		int keys = Listings.size();
+		
+		assertEquals(0, table.get(instrumentId, Markets.MARKET0.ordinal()).length);
+		assertEquals(0, table.get(2_000_000_000, 0).length);
+		assertEquals(0, table.get(-1, 0).length);
+		assertEquals(keys, Listings.size());
+		assertEquals(-1, Listings.find(instrumentId, Markets.MARKET0.ordinal()));
+	}
+
+	@Test(expected=SubscriptionException.class)
+	public void testSubscriptionKeyNeedsInternedIds() throws SubscriptionException {
+		SubscriptionTable.subscriptionKey(2_000_000_000, 0);
+	}
+
+	@Test
+	public void testDuplicateSubscriptions() {
+		table.add(key, "a");
+		table.add(key, "a");
+		
+		assertTrue(table.remove(key, "a"));
+		assertTrue(table.contains(key, "a"));
+		assertTrue(table.remove(key, "a"));
+		assertFalse(table.contains(key, "a"));
+	}
+}
@@ -0,0 +1,52 @@
+package com.mywork.markets.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class TestExecutorUtils {
+
+	@Test
+	public void testPinnedThreadFactoryRunsTask() throws InterruptedException {
+		ThreadFactory factory = ExecutorUtils.pinnedThreadFactory("test", 0);
+		CountDownLatch latch = new CountDownLatch(1);
+		
+		Thread thread = factory.newThread(latch::countDown);
+		thread.start();
+		
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(thread.isDaemon());
+		assertEquals("test-0-cpu0", thread.getName());
+	}
+
+	@Test
+	public void testPinCurrentThread() throws InterruptedException {
+		assumeTrue(new File("/proc/thread-self").exists() && new File("/usr/bin/taskset").exists());
+		//pins a thread of its own - pinning the test runner's thread would confine every later test to cpu 0
+		AtomicBoolean pinned = new AtomicBoolean();
+		AtomicLong tid = new AtomicLong();
+		Thread thread = new Thread(() -> {
+			tid.set(ExecutorUtils.nativeThreadId());
+			pinned.set(ExecutorUtils.pinCurrentThread(0));
+		});
+		thread.start();
+		thread.join(TimeUnit.SECONDS.toMillis(10));
+		
+		assertTrue(tid.get() > 0);
+		assertTrue(pinned.get());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testPinnedThreadFactoryNeedsCpus() {
+		ExecutorUtils.pinnedThreadFactory("test");
+	}
+}
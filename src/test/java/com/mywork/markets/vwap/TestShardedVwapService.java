@@ -0,0 +1,124 @@
+package com.mywork.markets.vwap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.Instruments;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.Side;
+import com.mywork.markets.Tick;
+import com.mywork.markets.providers.Provider;
+import com.mywork.markets.providers.SubscriberConfig;
+
+public class TestShardedVwapService {
+
+	private ShardedVwapService service;
+
+	//latest copies per instrument/market and per instrument
+	private Map<String, MarketUpdate> latest;
+	private Map<Instruments, MarketUpdate> consolidated;
+
+	@Before
+	public void setup() {
+		latest = new ConcurrentHashMap<>();
+		consolidated = new ConcurrentHashMap<>();
+		service = new ShardedVwapService(mock(Provider.class), 2, SubscriberConfig.DEFAULT,
+							vwap -> latest.put(vwap.getTick().getInstrument() + "/" + vwap.getMarket(), copy(vwap)),
+							vwap -> consolidated.put(vwap.getTick().getInstrument(), copy(vwap)));
+		service.start();
+	}
+
+	@After
+	public void tearDown() {
+		service.stop();
+	}
+
+	@Test
+	public void testInstrumentsSpreadOverShards() {
+		assertEquals(0, service.getShard(Instruments.GBPUSD.ordinal()));
+		assertEquals(1, service.getShard(Instruments.EURUSD.ordinal()));
+		assertEquals(0, service.getShard(Instruments.EURSEK.ordinal()));
+	}
+
+	@Test
+	public void testVwapPerShard() throws InterruptedException {
+		service.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 100.0));
+		service.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.3, 100.0));
+		service.apply(createTestUpdate(Markets.MARKET1, Instruments.EURUSD, 1.2, 100.0));
+		//a burst for one instrument/market may be published once with the latest vwap
+		await(() -> latest.containsKey("EURUSD/MARKET1") && latest.containsKey("GBPUSD/MARKET0")
+					&& latest.get("GBPUSD/MARKET0").getTick().getBidAmount() == 200.0);
+
+		assertEquals(1.2, latest.get("GBPUSD/MARKET0").getTick().getBidPrice(), 1e-9);
+		assertEquals(200.0, latest.get("GBPUSD/MARKET0").getTick().getBidAmount(), 0.0);
+		assertEquals(1.2, latest.get("EURUSD/MARKET1").getTick().getBidPrice(), 1e-9);
+	}
+
+	@Test
+	public void testMoveKeepsTotals() throws InterruptedException {
+		service.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 100.0));
+		service.move(Instruments.GBPUSD.ordinal(), 1);
+		service.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.3, 100.0));
+		service.apply(createTestUpdate(Markets.MARKET1, Instruments.GBPUSD, 1.2, 200.0));
+
+		assertEquals(1, service.getShard(Instruments.GBPUSD.ordinal()));
+		await(() -> consolidated.containsKey(Instruments.GBPUSD) 
+					&& consolidated.get(Instruments.GBPUSD).getTick().getBidAmount() == 400.0
+					&& latest.containsKey("GBPUSD/MARKET0")
+					&& latest.get("GBPUSD/MARKET0").getTick().getBidAmount() == 200.0);
+		assertEquals(1.2, latest.get("GBPUSD/MARKET0").getTick().getBidPrice(), 1e-9);
+		assertEquals(200.0, latest.get("GBPUSD/MARKET0").getTick().getBidAmount(), 0.0);
+		assertEquals(1.2, consolidated.get(Instruments.GBPUSD).getTick().getBidPrice(), 1e-9);
+		assertEquals(400.0, consolidated.get(Instruments.GBPUSD).getTick().getBidAmount(), 0.0);
+	}
+
+	@Test
+	public void testRebalanceMovesLoadOffBusiestShard() throws InterruptedException {
+		//GBPUSD and EURSEK are both on shard 0
+		for(int i = 0; i < 10; i++) {
+			service.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 100.0));
+			service.apply(createTestUpdate(Markets.MARKET0, Instruments.EURSEK, 9.1, 100.0));
+		}
+		service.apply(createTestUpdate(Markets.MARKET0, Instruments.EURUSD, 1.2, 100.0));
+
+		service.rebalance();
+		service.apply(createTestUpdate(Markets.MARKET0, Instruments.EURUSD, 1.2, 100.0));
+
+		assertTrue(service.getShard(Instruments.GBPUSD.ordinal()) == 1
+					|| service.getShard(Instruments.EURSEK.ordinal()) == 1);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMoveToUnknownShard() {
+		service.move(Instruments.GBPUSD.ordinal(), 2);
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5_000;
+		while(!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+	}
+
+	private static MarketUpdate copy(MarketUpdate update) {
+		DefaultMarketUpdate copy = new DefaultMarketUpdate();
+		copy.setMarketId(update.getMarketId());
+		copy.setTick(update.getTick());
+		return copy;
+	}
+
+	private static MarketUpdate createTestUpdate(Markets market, Instruments ins, double price, double amount) {
+		return new DefaultMarketUpdate(market, new Tick(ins, Side.BID, price, amount, 0.0, 0.0));
+	}
+}
@@ -0,0 +1,88 @@
+package com.mywork.markets.vwap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestVwapState {
+
+	@Test
+	public void testVwapOfTotals() {
+		VwapState state = new VwapState(4);
+		state.add(1, 0, 110 * 100, 100, 0, 130 * 50, 50);
+		state.add(1, 0, 120 * 100, 100, 0, 0, 0);
+
+		assertEquals(115, state.getBidVwap(1));
+		assertEquals(130, state.getOfferVwap(1));
+		assertEquals(200, state.get(1, VwapState.BID_AMOUNT));
+		assertFalse(state.hasAmount(0));
+		assertFalse(state.hasAmount(2));
+	}
+
+	@Test
+	public void testVwapExactForLargeTotals() {
+		VwapState state = new VwapState(1);
+		//past 2^53 a double cannot hold the total - 3 * 2^58 + 2 over 3 rounds up
+		state.add(0, 0, 3 * (1L << 58) + 2, 3, 0, 0, 0);
+		assertEquals((1L << 58) + 1, state.getBidVwap(0));
+
+		Random random = new Random(42);
+		for(int i = 0; i < 10_000; i++) {
+			long amount = 1 + (random.nextLong() >>> (1 + random.nextInt(63)));
+			long high = random.nextInt(3) == 0 ? 0 : Math.abs(random.nextLong()) % amount;
+			long low = random.nextLong();
+			state.clear(0);
+			state.add(0, high, low, amount, 0, 0, 0);
+			BigInteger total = BigInteger.valueOf(high).shiftLeft(64).add(BigInteger.valueOf(low >>> 1).shiftLeft(1))
+										.add(BigInteger.valueOf(low & 1));
+			BigInteger[] qr = total.divideAndRemainder(BigInteger.valueOf(amount));
+			long expected = qr[0].longValue() + (qr[1].shiftLeft(1).compareTo(BigInteger.valueOf(amount)) >= 0 ? 1 : 0);
+			assertEquals(expected, state.getBidVwap(0));
+		}
+	}
+
+	@Test
+	public void testCarryIntoHighWord() {
+		VwapState state = new VwapState(1);
+		state.add(0, 0, -1L, 1, 0, 0, 0);
+		state.add(0, 0, 1, 1, 0, 0, 0);
+
+		assertEquals(1, state.get(0, VwapState.BID_TOTAL_HIGH));
+		assertEquals(0, state.get(0, VwapState.BID_TOTAL_LOW));
+	}
+
+	@Test
+	public void testGrowKeepsTotals() {
+		VwapState state = new VwapState(2);
+		state.add(1, 0, 0, 0, 0, 10, 1);
+		state.setPending(1, true);
+		state.add(100, 0, 0, 0, 0, 20, 1);
+
+		assertTrue(state.size() > 100);
+		assertEquals(10, state.getOfferVwap(1));
+		assertTrue(state.isPending(1));
+		assertEquals(20, state.getOfferVwap(100));
+	}
+
+	@Test
+	public void testCopyAndTransfer() {
+		VwapState state = new VwapState(2);
+		state.add(0, 0, 300, 3, 0, 0, 0);
+		VwapState copy = state.copy();
+		state.clear(0);
+
+		assertFalse(state.hasAmount(0));
+		assertEquals(100, copy.getBidVwap(0));
+
+		long[] totals = new long[VwapState.FIELDS * 2];
+		copy.get(0, totals, VwapState.FIELDS);
+		state.add(1, totals, VwapState.FIELDS);
+		assertEquals(100, state.getBidVwap(1));
+		assertEquals(3, state.get(1, VwapState.BID_AMOUNT));
+	}
+}
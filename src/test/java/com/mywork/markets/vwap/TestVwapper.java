@@ -1,26 +1,50 @@
 package com.mywork.markets.vwap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
+import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentMatchers;
 
 import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.FixedPoint;
 import com.mywork.markets.Instruments;
+import com.mywork.markets.Listings;
 import com.mywork.markets.MarketUpdate;
 import com.mywork.markets.Markets;
 import com.mywork.markets.Side;
+import com.mywork.markets.SymbolRegistry;
 import com.mywork.markets.Tick;
+import com.mywork.markets.journal.JournalWriter;
+import com.mywork.markets.providers.MultiThreadProvider;
 import com.mywork.markets.providers.Provider;
+import com.mywork.markets.providers.SubscriberConfig;
 import com.mywork.markets.providers.SubscriptionException;
 
 public class TestVwapper {
@@ -28,12 +52,21 @@ public class TestVwapper {
 	private Vwapper vwapper;
 	private Provider provider;
 	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
 	@Before
 	public void setup() {
 		provider = mock(Provider.class);
 		vwapper = new Vwapper(provider);
 	}
 
+	//stops any flush timer a test starts
+	@After
+	public void tearDown() {
+		vwapper.stop();
+	}
+
 	@Test
 	public void testVwapperStartMethod() throws SubscriptionException {
 		doNothing().when(provider).subscribe(any(Instruments.class), any(Markets.class), 
@@ -194,11 +227,489 @@ public class TestVwapper {
 	}
 
 	
+	@Test
+	public void testCallerSuppliedOutput() {
+		
+		VwapMarketUpdate output = new VwapMarketUpdate();
+		MarketUpdate update = createTestUpdate(Markets.MARKET0, Instruments.GBPUSD,
+												1.1, 100.0, 1.2, 200.0);
+		MarketUpdate result = vwapper.apply(update, output);
+		
+		assertSame(output, result);
+		assertEqualMarketUpdates(result, Markets.MARKET0, Instruments.GBPUSD,
+									1.1, 100.0, 1.2, 200.0);
+	}
+
+	@Test
+	public void testUpdateIsPublishedToSink() {
+		
+		VwapMarketUpdate[] published = new VwapMarketUpdate[1];
+		vwapper = new Vwapper(provider, vwap -> published[0] = vwap);
+		MarketUpdate update = createTestUpdate(Markets.MARKET0, Instruments.GBPUSD,
+												1.1, 100.0, 1.2, 200.0);
+		MarketUpdate result = vwapper.apply(update);
+		
+		assertSame(result, published[0]);
+	}
+
+	@Test
+	public void testConsolidatedAcrossMarkets() {
+		
+		ConsolidatedVwapMarketUpdate[] published = new ConsolidatedVwapMarketUpdate[1];
+		vwapper = new Vwapper(provider, vwap -> {}, vwap -> published[0] = vwap);
+		
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD,
+										1.1, 100.0, 1.2, 200.0));
+		assertEqualMarketUpdates(published[0], null, Instruments.GBPUSD,
+									1.1, 100.0, 1.2, 200.0);
+		
+		vwapper.apply(createTestUpdate(Markets.MARKET1, Instruments.GBPUSD,
+										1.2, 100.0, 1.5, 100.0));
+		assertEquals(null, published[0].getMarket());
+		assertEquals(1.15, published[0].getTick().getBidPrice(), 1e-9);
+		assertEquals(200.0, published[0].getTick().getBidAmount(), 0.0);
+		assertEquals(1.3, published[0].getTick().getOfferPrice(), 1e-9);
+		assertEquals(300.0, published[0].getTick().getOfferAmount(), 0.0);
+		
+		//other instruments have their own consolidated vwap
+		vwapper.apply(createTestUpdate(Markets.MARKET1, Instruments.EURUSD,
+										1.3, 100.0, 1.4, 100.0));
+		assertEqualMarketUpdates(published[0], null, Instruments.EURUSD,
+									1.3, 100.0, 1.4, 100.0);
+	}
+
+	@Test
+	public void testBatchPublishesLatestPerKey() {
+		
+		List<Markets> markets = new ArrayList<>();
+		List<Double> prices = new ArrayList<>();
+		int[] consolidatedPublished = new int[1];
+		vwapper = new Vwapper(provider, 
+							vwap -> {
+								markets.add(vwap.getMarket());
+								prices.add(vwap.getTick().getBidPrice());
+							}, 
+							vwap -> consolidatedPublished[0]++);
+		
+		vwapper.onUpdate(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 100.0, 0.0, 0.0), false);
+		vwapper.onUpdate(createTestUpdate(Markets.MARKET1, Instruments.GBPUSD, 1.4, 100.0, 0.0, 0.0), false);
+		vwapper.onUpdate(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.3, 100.0, 0.0, 0.0), false);
+		assertTrue(markets.isEmpty());
+		
+		//one vwap per instrument/market with the latest value
+		vwapper.onUpdate(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.2, 200.0, 0.0, 0.0), true);
+		assertEquals(2, markets.size());
+		assertEquals(Markets.MARKET0, markets.get(0));
+		assertEquals(1.2, prices.get(0), 1e-9);
+		assertEquals(Markets.MARKET1, markets.get(1));
+		assertEquals(1.4, prices.get(1), 1e-9);
+		assertEquals(1, consolidatedPublished[0]);
+		
+		//the next batch starts afresh
+		vwapper.onUpdate(createTestUpdate(Markets.MARKET1, Instruments.GBPUSD, 1.4, 100.0, 0.0, 0.0), true);
+		assertEquals(3, markets.size());
+		assertEquals(2, consolidatedPublished[0]);
+	}
+
+	@Test
+	public void testThresholdSuppressesAndFlushes() {
+		
+		List<Double> prices = new ArrayList<>();
+		int[] consolidatedPublished = new int[1];
+		vwapper = new Vwapper(provider, vwap -> prices.add(vwap.getTick().getBidPrice()), 
+								vwap -> consolidatedPublished[0]++);
+		vwapper.setPublicationPolicy(Instruments.GBPUSD.ordinal(), 
+									PublicationPolicy.ALWAYS.withAbsoluteThreshold(0.0001));
+		
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 100.0, 0.0, 0.0));
+		//vwap moves by 0.00005
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1001, 100.0, 0.0, 0.0));
+		assertEquals(1, prices.size());
+		assertEquals(1, consolidatedPublished[0]);
+		
+		//other instruments publish every update
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.EURUSD, 1.1, 100.0, 0.0, 0.0));
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.EURUSD, 1.1, 100.0, 0.0, 0.0));
+		assertEquals(3, prices.size());
+		
+		//the latest held back vwap is not lost
+		vwapper.flushSuppressed();
+		assertEquals(4, prices.size());
+		assertEquals(1.10005, prices.get(3), 1e-9);
+		//GBPUSD twice and EURUSD twice
+		assertEquals(4, consolidatedPublished[0]);
+		vwapper.flushSuppressed();
+		assertEquals(4, prices.size());
+		
+		//moves of at least the threshold from the last published vwap are published
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1003, 200.0, 0.0, 0.0));
+		assertEquals(5, prices.size());
+	}
+	
+	@Test
+	public void testUnmovedVwapNotFlushed() {
+		
+		List<Double> prices = new ArrayList<>();
+		long[] now = new long[1];
+		vwapper = new Vwapper(provider, vwap -> prices.add(vwap.getTick().getBidPrice()));
+		vwapper.setClock(() -> now[0]);
+		vwapper.setPublicationPolicy(Instruments.GBPUSD.ordinal(), PublicationPolicy.ON_CHANGE);
+		vwapper.flushSuppressedEvery(100);
+		
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 100.0, 0.0, 0.0));
+		for(int i = 1; i <= 3; i++) {
+			now[0] = i * 100_000;
+			vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 100.0, 0.0, 0.0));
+		}
+		assertEquals(1, prices.size());
+		
+		//held back once moved - and not once back where it was last published
+		vwapper.setPublicationPolicy(Instruments.GBPUSD.ordinal(), 
+									PublicationPolicy.ALWAYS.withAbsoluteThreshold(0.01));
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.11, 400.0, 0.0, 0.0));
+		vwapper.flushSuppressed();
+		assertEquals(2, prices.size());
+		assertEquals(1.105, prices.get(1), 1e-9);
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.10, 200.0, 0.0, 0.0));
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.11, 200.0, 0.0, 0.0));
+		vwapper.flushSuppressed();
+		assertEquals(2, prices.size());
+	}
+	
+	@Test
+	public void testMinIntervalPerKey() {
+		
+		List<Markets> markets = new ArrayList<>();
+		long[] now = new long[1];
+		vwapper = new Vwapper(provider, vwap -> markets.add(vwap.getMarket()));
+		vwapper.setClock(() -> now[0]);
+		vwapper.setPublicationPolicy(Instruments.GBPUSD.ordinal(), 
+									PublicationPolicy.ALWAYS.withMinIntervalMicros(10));
+		vwapper.flushSuppressedEvery(100);
+		
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 100.0, 0.0, 0.0));
+		now[0] = 5_000;
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.2, 100.0, 0.0, 0.0));
+		//each key has its own interval
+		vwapper.apply(createTestUpdate(Markets.MARKET1, Instruments.GBPUSD, 1.2, 100.0, 0.0, 0.0));
+		assertEquals(2, markets.size());
+		assertEquals(Markets.MARKET1, markets.get(1));
+		
+		now[0] = 10_000;
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.3, 100.0, 0.0, 0.0));
+		assertEquals(3, markets.size());
+		
+		now[0] = 15_000;
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.4, 100.0, 0.0, 0.0));
+		assertEquals(3, markets.size());
+		
+		//flushed on the update thread once the flush interval has passed
+		now[0] = 100_000;
+		vwapper.apply(createTestUpdate(Markets.MARKET1, Instruments.GBPUSD, 1.2, 100.0, 0.0, 0.0));
+		assertEquals(5, markets.size());
+		assertEquals(Markets.MARKET0, markets.get(4));
+	}
+	
+	/**
+	 * a vwap held back is published by the flush timer, on the subscriber's thread, with no further updates
+	 */
+	@Test
+	public void testSuppressedFlushedWithoutUpdates() throws Exception {
+
+		MultiThreadProvider multiThreadProvider = new MultiThreadProvider(MultiThreadProvider.Topology.PER_SUBSCRIBER,
+																		SubscriberConfig.DEFAULT);
+		List<Double> prices = new CopyOnWriteArrayList<>();
+		vwapper = new Vwapper(multiThreadProvider, vwap -> prices.add(vwap.getTick().getBidPrice()));
+		vwapper.setPublicationPolicy(Instruments.GBPUSD.ordinal(),
+									PublicationPolicy.ALWAYS.withMinIntervalMicros(60_000_000));
+		vwapper.flushSuppressedEvery(200_000);
+		vwapper.start();
+		try {
+			multiThreadProvider.accept(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 100.0, 0.0, 0.0));
+			long deadline = System.currentTimeMillis() + 5_000;
+			while(prices.size() < 1 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+			//held back by the min interval, and not due for a flush until well after the update is added
+			multiThreadProvider.accept(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.2, 100.0, 0.0, 0.0));
+			while(prices.size() < 2 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals(2, prices.size());
+			assertEquals(1.15, prices.get(1), 1e-9);
+		} finally {
+			vwapper.stop();
+			multiThreadProvider.stop();
+		}
+	}
+
+	@Test
+	public void testRuntimeSymbols() {
+		
+		int instrumentId = SymbolRegistry.INSTRUMENTS.intern("TEST.VWAPPER");
+		int marketId = SymbolRegistry.MARKETS.intern("TEST.VWAPPER.VENUE");
+		//given a key on subscribe
+		Listings.key(instrumentId, marketId);
+		
+		vwapper.apply(new DefaultMarketUpdate().set(marketId, instrumentId, Side.BID, 1.1, 100.0, 1.2, 200.0));
+		MarketUpdate result = vwapper.apply(new DefaultMarketUpdate().set(marketId, instrumentId, Side.BID, 
+																			1.3, 100.0, 1.2, 200.0));
+		
+		assertEquals(marketId, result.getMarketId());
+		assertEquals(instrumentId, result.getTick().getInstrumentId());
+		assertEquals(null, result.getTick().getInstrument());
+		assertEquals(1.2, result.getTick().getBidPrice(), 1e-9);
+		assertEquals(200.0, result.getTick().getBidAmount(), 0.0);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnknownInstrumentRejected() {
+		vwapper.apply(new DefaultMarketUpdate().set(Markets.MARKET0.ordinal(), SymbolRegistry.INSTRUMENTS.size(), 
+													Side.BID, 1.1, 100.0, 1.2, 200.0));
+	}
+	
+	@Test
+	public void testUnsubscribedRejected() {
+		int instrumentId = SymbolRegistry.INSTRUMENTS.intern("TEST.VWAPPER.UNSUBSCRIBED");
+		int keys = Listings.size();
+		try {
+			vwapper.apply(new DefaultMarketUpdate().set(Markets.MARKET0.ordinal(), instrumentId, Side.BID, 
+														1.1, 100.0, 1.2, 200.0));
+			fail("applied an update nobody subscribed to");
+		} catch(IllegalArgumentException e) {
+			assertEquals(keys, Listings.size());
+		}
+	}
+
+	@Test
+	public void testMoveInstrument() {
+		
+		int marketId = SymbolRegistry.MARKETS.intern("TEST.VWAPPER.MOVE.VENUE");
+		Listings.key(Instruments.GBPUSD.ordinal(), marketId);
+		List<Tick> published = new ArrayList<>();
+		vwapper = new Vwapper(provider, vwap -> published.add(new Tick().set(vwap.getTick())), vwap -> {});
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 100.0, 1.2, 200.0));
+		vwapper.apply(new DefaultMarketUpdate().set(marketId, Instruments.GBPUSD.ordinal(), Side.BID, 1.3, 100.0, 1.4, 100.0));
+		vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.EURUSD, 1.5, 100.0, 1.6, 100.0));
+		
+		long[] state = vwapper.removeInstrument(Instruments.GBPUSD.ordinal());
+		assertEquals(FixedPoint.toAmount(200.0), state[Markets.MARKET0.ordinal() * VwapState.FIELDS + VwapState.OFFER_AMOUNT]);
+		assertEquals(FixedPoint.toAmount(100.0), state[marketId * VwapState.FIELDS + VwapState.OFFER_AMOUNT]);
+		assertEquals(0L, state[Markets.MARKET1.ordinal() * VwapState.FIELDS + VwapState.OFFER_AMOUNT]);
+		
+		//nothing left to publish for the instrument taken out, the others keep their totals
+		published.clear();
+		vwapper.publish(Instruments.GBPUSD.ordinal());
+		vwapper.publish(Instruments.EURUSD.ordinal());
+		assertEquals(1, published.size());
+		assertEquals(Instruments.EURUSD, published.get(0).getInstrument());
+		
+		List<Integer> markets = new ArrayList<>();
+		Vwapper merged = new Vwapper(provider, vwap -> markets.add(vwap.getMarketId()), vwap -> {});
+		merged.mergeInstrument(Instruments.GBPUSD.ordinal(), state);
+		merged.publish(Instruments.GBPUSD.ordinal());
+		assertEquals(2, markets.size());
+		assertTrue(markets.contains(Markets.MARKET0.ordinal()));
+		assertTrue(markets.contains(marketId));
+	}
+
+	@Test
+	public void testSnapshotAndRestore() throws IOException {
+		
+		MarketUpdate update = createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 100.0, 1.2, 200.0);
+		update.setSequence(42);
+		vwapper.apply(update);
+		vwapper.apply(createTestUpdate(Markets.MARKET2, Instruments.EURUSD, 1.3, 100.0, 1.4, 100.0));
+		Path snapshot = folder.getRoot().toPath().resolve("vwap.snapshot");
+		vwapper.snapshot(snapshot);
+		
+		ConsolidatedVwapMarketUpdate[] published = new ConsolidatedVwapMarketUpdate[1];
+		Vwapper restored = new Vwapper(provider, vwap -> {}, vwap -> published[0] = vwap);
+		assertEquals(42, restored.restore(snapshot));
+		
+		//totals carry on from the snapshot
+		MarketUpdate result = restored.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 
+																1.3, 100.0, 1.2, 200.0));
+		assertEquals(1.2, result.getTick().getBidPrice(), 1e-9);
+		assertEquals(200.0, result.getTick().getBidAmount(), 0.0);
+		assertEquals(400.0, published[0].getTick().getOfferAmount(), 0.0);
+	}
+
+	@Test
+	public void testExactWhateverOrder() {
+		
+		double[] prices = {0.1, 0.2, 0.3, 1.7, 0.07};
+		MarketUpdate forwards = null;
+		for(int i = 0; i < prices.length; i++) {
+			forwards = vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, prices[i], 3.0, 0.0, 0.0));
+		}
+		Vwapper reversed = new Vwapper(provider, vwap -> {});
+		MarketUpdate backwards = null;
+		for(int i = prices.length - 1; i >= 0; i--) {
+			backwards = reversed.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, prices[i], 3.0, 0.0, 0.0));
+		}
+		
+		assertEquals(0.474, forwards.getTick().getBidPrice(), 0.0);
+		assertEquals(forwards.getTick().getScaledBidPrice(), backwards.getTick().getScaledBidPrice());
+	}
+
+	@Test
+	public void testTotalsBeyond64Bits() {
+		
+		//price * amount units of each update are 1e26
+		for(int i = 0; i < 3; i++) {
+			vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 99_999.0, 1e9, 0.0, 0.0));
+		}
+		MarketUpdate result = vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 
+																100_003.0, 1e9, 0.0, 0.0));
+		assertEquals(100_000.0, result.getTick().getBidPrice(), 0.0);
+		assertEquals(4e9, result.getTick().getBidAmount(), 0.0);
+	}
+
+	@Test
+	public void testRestoreDoubleSnapshot() throws IOException {
+		
+		Path snapshot = folder.getRoot().toPath().resolve("vwap.snapshot");
+		try(DataOutputStream out = new DataOutputStream(Files.newOutputStream(snapshot))) {
+			out.writeInt(0x56574150);
+			out.writeInt(1);
+			out.writeLong(7);
+			out.writeInt(1);
+			out.writeInt(Instruments.GBPUSD.ordinal());
+			out.writeInt(Markets.MARKET0.ordinal());
+			out.writeDouble(110.0);
+			out.writeDouble(100.0);
+			out.writeDouble(0.0);
+			out.writeDouble(0.0);
+		}
+		assertEquals(7, vwapper.restore(snapshot));
+		
+		MarketUpdate result = vwapper.apply(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 
+																1.3, 100.0, 0.0, 0.0));
+		assertEquals(1.2, result.getTick().getBidPrice(), 0.0);
+		assertEquals(200.0, result.getTick().getBidAmount(), 0.0);
+	}
+
+	@Test
+	public void testRecoverReplaysJournalTail() throws IOException {
+		
+		Path journal = folder.getRoot().toPath().resolve("journal");
+		Path snapshot = folder.getRoot().toPath().resolve("vwap.snapshot");
+		try(JournalWriter writer = new JournalWriter(journal, 16, System::nanoTime)) {
+			for(int i = 0; i < 5; i++) {
+				MarketUpdate update = createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.0 + i, 100.0, 0.0, 0.0);
+				writer.accept(update);
+				vwapper.apply(update);
+				if(i == 2) {
+					vwapper.snapshot(snapshot);
+				}
+			}
+		}
+		
+		VwapMarketUpdate[] published = new VwapMarketUpdate[1];
+		Vwapper recovered = new Vwapper(provider, vwap -> published[0] = vwap);
+		assertEquals(5, recovered.recover(snapshot, journal));
+		
+		//snapshot had the first 3, the journal tail the last 2
+		assertEqualMarketUpdates(published[0], Markets.MARKET0, Instruments.GBPUSD, 3.0, 500.0, 0.0, 0.0);
+	}
+
+	@Test
+	public void testRecoverSkipsUntrackedPairs() throws IOException {
+		
+		int instrumentId = SymbolRegistry.INSTRUMENTS.intern("TEST.VWAPPER.RECOVER");
+		Path journal = folder.getRoot().toPath().resolve("journal");
+		try(JournalWriter writer = new JournalWriter(journal, 16, System::nanoTime)) {
+			writer.accept(createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 100.0, 0.0, 0.0));
+			writer.accept(new DefaultMarketUpdate().set(Markets.MARKET0.ordinal(), instrumentId, Side.BID, 
+														1.2, 100.0, 0.0, 0.0));
+		}
+		
+		List<MarketUpdate> published = new ArrayList<>();
+		Vwapper recovered = new Vwapper(provider, vwap -> published.add(vwap));
+		assertEquals(2, recovered.recover(folder.getRoot().toPath().resolve("vwap.snapshot"), journal));
+		
+		//the instrument added at runtime is not subscribed to, so has no totals here
+		assertEquals(1, published.size());
+		assertEquals(Instruments.GBPUSD, published.get(0).getTick().getInstrument());
+	}
+
+	@Test
+	public void testCheckpointEvery() throws IOException, InterruptedException {
+		
+		Path snapshot = folder.getRoot().toPath().resolve("vwap.snapshot");
+		vwapper.checkpointEvery(snapshot, 2);
+		
+		MarketUpdate update = createTestUpdate(Markets.MARKET0, Instruments.GBPUSD, 1.1, 100.0, 1.2, 200.0);
+		update.setSequence(7);
+		vwapper.apply(update);
+		assertFalse(Files.exists(snapshot));
+		update.setSequence(8);
+		vwapper.apply(update);
+		
+		//written by the checkpoint thread
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while(!Files.exists(snapshot) && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(5);
+		}
+		vwapper.stop();
+		assertTrue(Files.exists(snapshot));
+		assertEquals(8, new Vwapper(provider).restore(snapshot));
+	}
+
+	/**
+	 * Runs enough updates for the JIT to settle and then checks that
+	 * steady state processing does not allocate.
+	 */
+	@Test
+	public void testNoAllocationPerUpdate() {
+		
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)bean;
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		
+		vwapper = new Vwapper(provider, vwap -> {});
+		MarketUpdate update1 = createTestUpdate(Markets.MARKET0, Instruments.GBPUSD,
+												1.1, 100.0, 1.2, 200.0);
+		MarketUpdate update2 = createTestUpdate(Markets.MARKET1, Instruments.EURUSD,
+												1.2, 150.0, 1.3, 300.0);
+		final int iterations = 1_000_000;
+		for(int i = 0; i < iterations; i++) {
+			vwapper.apply(update1);
+			vwapper.apply(update2);
+		}
+		
+		long threadId = Thread.currentThread().getId();
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		for(int i = 0; i < iterations; i++) {
+			vwapper.apply(update1);
+			vwapper.apply(update2);
+		}
+		long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+		
+		//allow for the bytes allocated by the measurement itself
+		assertEquals(0, allocated / iterations);
+	}
+
 	@Test(expected=IllegalArgumentException.class)
 	public void testNullMarketUpdate() {
 		vwapper.apply(null);
 	}
 	
+	@Test(expected=IllegalArgumentException.class)
+	public void testNullTick() {
+		MarketUpdate update = mock(MarketUpdate.class);
+		when(update.getMarketId()).thenReturn(Markets.MARKET0.ordinal());
+		vwapper.apply(update);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testNullTickRejectedByUpdate() {
+		new DefaultMarketUpdate(Markets.MARKET0, null);
+	}
+	
 	public MarketUpdate createTestUpdate(Markets market, Instruments ins,
 										double bidPrice, double bidAmt, 
 										double offPrice, double offAmt) {
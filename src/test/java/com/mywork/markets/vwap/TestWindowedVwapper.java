@@ -0,0 +1,237 @@
+package com.mywork.markets.vwap;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mywork.markets.DefaultMarketUpdate;
+import com.mywork.markets.FixedPoint;
+import com.mywork.markets.Instruments;
+import com.mywork.markets.MarketUpdate;
+import com.mywork.markets.Markets;
+import com.mywork.markets.Side;
+import com.mywork.markets.providers.Provider;
+
+public class TestWindowedVwapper {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	
+	private long now;
+	
+	private WindowedVwapper vwapper;
+	
+	//copies of the published updates
+	private List<WindowedVwapMarketUpdate> published;
+	
+	@Before
+	public void setup() {
+		now = 0;
+		published = new ArrayList<>();
+		vwapper = new WindowedVwapper(mock(Provider.class), 
+									update -> published.add(copy(update)), 
+									() -> now,
+									new TimeWindowAccumulator(WindowedVwapper.KEYS, SECOND, 10),
+									new TimeWindowAccumulator(WindowedVwapper.KEYS, 60 * SECOND, 60));
+	}
+	
+	@Test
+	public void testTimeWindowExpiry() {
+		TimeWindowAccumulator window = new TimeWindowAccumulator(1, SECOND, 10);
+		
+		window.add(0, 0, 1.1, 100.0);
+		window.add(0, SECOND / 2, 1.2, 100.0);
+		assertEquals(230.0, window.getTotal(0), 1e-9);
+		assertEquals(200.0, window.getAmount(0), 0.0);
+		
+		//first bucket has expired
+		window.advance(0, SECOND);
+		assertEquals(120.0, window.getTotal(0), 1e-9);
+		assertEquals(100.0, window.getAmount(0), 0.0);
+		
+		//everything has expired
+		window.advance(0, 10 * SECOND);
+		assertEquals(0.0, window.getTotal(0), 0.0);
+		assertEquals(0.0, window.getAmount(0), 0.0);
+	}
+
+	@Test
+	public void testNegativeTimestamps() {
+		TimeWindowAccumulator window = new TimeWindowAccumulator(1, SECOND, 10);
+		
+		window.add(0, -SECOND, 1.1, 100.0);
+		window.add(0, -SECOND / 2, 1.2, 100.0);
+		window.advance(0, 0);
+		assertEquals(120.0, window.getTotal(0), 1e-9);
+	}
+
+	@Test
+	public void testTimeWindowDoesNotDrift() {
+		TimeWindowAccumulator window = new TimeWindowAccumulator(1, 2 * SECOND, 2);
+		
+		window.add(0, 0, 1.1, 1e9 / 3);
+		window.add(0, SECOND, 1.3, 0.7);
+		//the big bucket leaves rounding behind when it expires - the sums are recomputed as the ring wraps
+		window.advance(0, 2 * SECOND);
+		assertEquals(1.3 * 0.7, window.getTotal(0), 0.0);
+		assertEquals(0.7, window.getAmount(0), 0.0);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidWindow() {
+		new TimeWindowAccumulator(1, 0, 10);
+	}
+	
+	@Test
+	public void testTickWindow() {
+		TickWindowAccumulator window = new TickWindowAccumulator(2, 2);
+		
+		window.add(0, 0, 1.1, 100.0);
+		window.add(0, 0, 1.2, 100.0);
+		assertEquals(230.0, window.getTotal(0), 1e-9);
+		
+		//first tick drops out
+		window.add(0, 0, 1.3, 200.0);
+		assertEquals(380.0, window.getTotal(0), 1e-9);
+		assertEquals(300.0, window.getAmount(0), 0.0);
+		
+		//keys are independent
+		assertEquals(0.0, window.getAmount(1), 0.0);
+	}
+
+	@Test
+	public void testTickWindowDoesNotDrift() {
+		TickWindowAccumulator window = new TickWindowAccumulator(1, 2);
+		
+		window.add(0, 0, 1.1, 1e9 / 3);
+		window.add(0, 0, 1.3, 0.7);
+		//the big tick leaves rounding behind when it is subtracted - the sums are recomputed as the ring wraps
+		for(int i = 0; i < 2; i++) {
+			window.add(0, 0, 2.0, 0.0);
+		}
+		assertEquals(0.0, window.getTotal(0), 0.0);
+		assertEquals(0.0, window.getAmount(0), 0.0);
+	}
+
+	@Test
+	public void testVolumeWindowDoesNotDrift() {
+		VolumeWindowAccumulator window = new VolumeWindowAccumulator(1, 4.0, 4);
+		
+		window.add(0, 0, 1.1, 1e15 / 3);
+		window.add(0, 0, 1.7, 0.1);
+		window.add(0, 0, 1.3, 0.7);
+		for(int i = 0; i < 8; i++) {
+			window.add(0, 0, 2.0, 1.0);
+		}
+		assertEquals(8.0, window.getTotal(0), 0.0);
+		assertEquals(4.0, window.getAmount(0), 0.0);
+	}
+
+	@Test
+	public void testVolumeWindowTrimsOldest() {
+		VolumeWindowAccumulator window = new VolumeWindowAccumulator(1, 300.0, 16);
+		
+		window.add(0, 0, 1.1, 200.0);
+		window.add(0, 0, 1.2, 200.0);
+		
+		//100 of the first update is left
+		assertEquals(300.0, window.getAmount(0), 1e-9);
+		assertEquals(110.0 + 240.0, window.getTotal(0), 1e-9);
+		
+		//first update dropped whole, 100 of the second is left
+		window.add(0, 0, 1.3, 200.0);
+		assertEquals(300.0, window.getAmount(0), 1e-9);
+		assertEquals(120.0 + 260.0, window.getTotal(0), 1e-9);
+	}
+
+	@Test
+	public void testVolumeWindowMaxEntries() {
+		VolumeWindowAccumulator window = new VolumeWindowAccumulator(1, 1000.0, 2);
+		
+		window.add(0, 0, 1.1, 100.0);
+		window.add(0, 0, 1.2, 100.0);
+		window.add(0, 0, 1.3, 100.0);
+		
+		//only room for two entries
+		assertEquals(200.0, window.getAmount(0), 1e-9);
+		assertEquals(250.0, window.getTotal(0), 1e-9);
+	}
+
+	@Test
+	public void testMixedWindows() {
+		vwapper = new WindowedVwapper(mock(Provider.class), 
+									update -> published.add(copy(update)), 
+									() -> now,
+									new TickWindowAccumulator(WindowedVwapper.KEYS, 1),
+									new VolumeWindowAccumulator(WindowedVwapper.KEYS, 150.0, 16));
+		
+		vwapper.apply(createTestUpdate(1.1, 100.0, 1.2, 200.0));
+		vwapper.apply(createTestUpdate(1.2, 100.0, 1.3, 100.0));
+		
+		assertEqualTick(published.get(2), 1.2, 100.0, 1.3, 100.0);
+		assertEqualTick(published.get(3), (55.0 + 120.0) / 150.0, 150.0, (60.0 + 130.0) / 150.0, 150.0);
+	}
+	
+	@Test
+	public void testAllWindowsInOnePass() {
+		
+		vwapper.apply(createTestUpdate(1.1, 100.0, 1.2, 200.0));
+		
+		assertEquals(2, published.size());
+		assertEquals(0, published.get(0).getWindow());
+		assertEquals(1, published.get(1).getWindow());
+		assertEqualTick(published.get(0), 1.1, 100.0, 1.2, 200.0);
+		assertEqualTick(published.get(1), 1.1, 100.0, 1.2, 200.0);
+	}
+
+	@Test
+	public void testShortWindowForgets() {
+		
+		vwapper.apply(createTestUpdate(1.1, 100.0, 1.2, 200.0));
+		now = 2 * SECOND;
+		vwapper.apply(createTestUpdate(1.2, 100.0, 1.3, 200.0));
+		
+		//1s window only has the second update, 60s window has both
+		assertEqualTick(published.get(2), 1.2, 100.0, 1.3, 200.0);
+		assertEqualTick(published.get(3), 1.15, 200.0, 1.25, 400.0);
+	}
+
+	@Test
+	public void testOneSidedUpdateExpiresOtherSide() {
+		
+		vwapper.apply(createTestUpdate(1.1, 100.0, 1.2, 200.0));
+		now = 2 * SECOND;
+		vwapper.apply(createTestUpdate(1.2, 100.0, 0.0, 0.0));
+		
+		assertEqualTick(published.get(2), 1.2, 100.0, 0.0, 0.0);
+		assertEqualTick(published.get(3), 1.15, 200.0, 1.2, 200.0);
+	}
+	
+	private MarketUpdate createTestUpdate(double bidPrice, double bidAmt, double offPrice, double offAmt) {
+		return new DefaultMarketUpdate().set(Markets.MARKET0, Instruments.GBPUSD, Side.BID, 
+												bidPrice, bidAmt, offPrice, offAmt);
+	}
+	
+	private static WindowedVwapMarketUpdate copy(WindowedVwapMarketUpdate update) {
+		WindowedVwapMarketUpdate copy = new WindowedVwapMarketUpdate(update.getWindow());
+		copy.setMarket(update.getMarket());
+		copy.setTick(update.getTick());
+		return copy;
+	}
+	
+	private static void assertEqualTick(MarketUpdate update, double bidPrice, double bidAmt, 
+											double offPrice, double offAmt) {
+		assertEquals(Markets.MARKET0, update.getMarket());
+		assertEquals(Instruments.GBPUSD, update.getTick().getInstrument());
+		//prices are published rounded to a FixedPoint unit
+		assertEquals(bidPrice, update.getTick().getBidPrice(), 0.5 / FixedPoint.PRICE_SCALE);
+		assertEquals(bidAmt, update.getTick().getBidAmount(), 1e-9);
+		assertEquals(offPrice, update.getTick().getOfferPrice(), 0.5 / FixedPoint.PRICE_SCALE);
+		assertEquals(offAmt, update.getTick().getOfferAmount(), 1e-9);
+	}
+}